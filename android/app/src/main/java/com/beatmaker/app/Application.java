@@ -82,6 +82,7 @@ public class Application extends ApplicationBase {
         p.midiInputThreadPriority = android.os.Process.THREAD_PRIORITY_DEFAULT;
         p.midiInputDispatchThreadPriority = android.os.Process.THREAD_PRIORITY_DEFAULT;
         p.midiOutputThreadPriority = android.os.Process.THREAD_PRIORITY_DEFAULT;
+        p.midiClockThreadPriority = android.os.Process.THREAD_PRIORITY_URGENT_AUDIO;
         p.backgroundThreadPriority = android.os.Process.THREAD_PRIORITY_BACKGROUND;
     }
 }
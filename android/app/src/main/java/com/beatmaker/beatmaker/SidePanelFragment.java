@@ -105,6 +105,7 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
                 ElementConfig config = getOrCreateConfig();
                 if (null != config) {
                     config.setChannel(newVal-1);
+                    commitConfig();
                     updateTitle();
                 }
             }
@@ -117,6 +118,7 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
                 if (null != config && config.hasSingleNote()) {
                     MidiNote note = config.getSingleNote();
                     note.setPitch(ui.configMidiPitch.getValue());
+                    commitConfig();
                     updateTitle();
                 }
             }
@@ -136,6 +138,7 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
                 if (null != config && config.hasSingleNote()) {
                     MidiNote note = config.getSingleNote();
                     note.setVelocity(ui.configMidiVelocity.getValue());
+                    commitConfig();
                     updateTitle();
                 }
             }
@@ -173,6 +176,13 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
         return null;
     }
 
+    private void commitConfig() {
+        // config objects are edited in place, publish a fresh pattern snapshot
+        if (null != currentTrack) {
+            currentTrack.invalidate();
+        }
+    }
+
     private void resetConfig() {
 
         if (null == currentTrack) {
@@ -183,6 +193,7 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
             currentStep.clearConfig();
         } else if (null != currentTrack) {
             currentTrack.getConfig().reset();
+            commitConfig();
         }
 
         loadConfig();
@@ -320,6 +331,7 @@ public class SidePanelFragment extends Fragment implements SequencerListener {
                     } else {
                         config.reset();
                     }
+                    commitConfig();
                 }
 
                 ui.btnCapture.setChecked(false);
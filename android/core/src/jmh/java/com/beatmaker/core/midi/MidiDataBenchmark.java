@@ -0,0 +1,58 @@
+package com.beatmaker.core.midi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MidiDataBenchmark {
+
+    private static final int PACKET_SIZE = 512;
+
+    private final byte[] buffer = new byte[PACKET_SIZE];
+    private final MidiData target = new MidiData();
+    private MidiData event;
+
+    @Setup
+    public void setUp() {
+        event = MidiData.noteOn(3, 60, 100);
+        event.serialize(buffer, 0, PACKET_SIZE);
+    }
+
+    @Benchmark
+    public int serialize() {
+        return event.serialize(buffer, 0, PACKET_SIZE);
+    }
+
+    @Benchmark
+    public int deserialize() {
+        return target.deserialize(buffer, 0, PACKET_SIZE);
+    }
+
+    @Benchmark
+    public int serializePacket() {
+        // fill a full USB packet, 4 bytes per event
+        int ofs = 0;
+        while (ofs < PACKET_SIZE) {
+            ofs += event.serialize(buffer, ofs, PACKET_SIZE);
+        }
+        return ofs;
+    }
+
+    @Benchmark
+    public int deserializePacket() {
+        int ofs = 0;
+        while (ofs < PACKET_SIZE) {
+            ofs += target.deserialize(buffer, ofs, PACKET_SIZE);
+        }
+        return ofs;
+    }
+}
@@ -0,0 +1,50 @@
+package com.beatmaker.core.midi;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MidiDispatcherBenchmark {
+
+    @Param({"noteOn", "noteOff", "controlChange", "programChange", "pitchBend", "clock", "sysex"})
+    public String messageType;
+
+    private MidiDispatcher dispatcher;
+    private MidiData message;
+
+    @Setup
+    public void setUp() {
+        // message logging is off by default, the dispatcher does not log
+        dispatcher = new MidiDispatcher(new MidiClock() {
+            @Override
+            protected void onBpmChanged(int bpm) {
+            }
+        });
+        dispatcher.addInputListener(new MidiInputListener());
+
+        switch (messageType) {
+            case "noteOn": message = new MidiData(0, 0, 0x9, 0x90, 60, 100); break;
+            case "noteOff": message = new MidiData(0, 0, 0x8, 0x80, 60, 0); break;
+            case "controlChange": message = new MidiData(0, 0, 0xb, 0xb0, 7, 100); break;
+            case "programChange": message = new MidiData(0, 0, 0xc, 0xc0, 5, 0); break;
+            case "pitchBend": message = new MidiData(0, 0, 0xe, 0xe0, 0, 64); break;
+            case "clock": message = new MidiData(0, 0, 0xf, 0xf8, 0, 0); break;
+            default: message = new MidiData(0, 0, 0x4, 0xf0, 0x7e, 0x7f); break;
+        }
+    }
+
+    @Benchmark
+    public void dispatch() {
+        dispatcher.dispatch(message);
+    }
+}
@@ -0,0 +1,62 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.core.utils.MutedConsole;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MidiOutputBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int eventsPerFlush;
+
+    private MidiBase midi;
+
+    @Setup
+    public void setUp() {
+        MutedConsole.mute(); // latency logging
+
+        // mock interface with a single output port, send() only counts bytes
+        MidiInterfaceBase intf = new MockMidiInterface("bench.interface.0", "Benchmark Interface");
+        intf.addPort(new MockMidiPort(MidiPortBase.OUTPUT));
+
+        midi = new MidiBase();
+        midi.currentInterface = intf;
+    }
+
+    @TearDown
+    public void tearDown() {
+        midi.currentInterface = null;
+        midi.destroy();
+        MutedConsole.restore();
+    }
+
+    @Benchmark
+    public void enqueueFlush() {
+        for (int i = 0; i < eventsPerFlush; i++) {
+            midi.enqueueMidiOutput(0x9, 0x90 | (i & 0xf), 36 + (i & 0x3f), 100);
+        }
+        midi.flushMidiOutput();
+    }
+
+    @Benchmark
+    public void enqueueClear() {
+        // queueing cost only
+        for (int i = 0; i < eventsPerFlush; i++) {
+            midi.enqueueMidiOutput(0x9, 0x90 | (i & 0xf), 36 + (i & 0x3f), 100);
+        }
+        midi.clearMidiOutput();
+    }
+}
@@ -0,0 +1,70 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.core.utils.MutedConsole;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MidiQueueBenchmark {
+
+    @Param({"1", "16", "128"})
+    public int batchSize;
+
+    private MidiQueue queue;
+    private MidiData event;
+    private List<MidiData> batch;
+
+    @Setup
+    public void setUp() {
+        MutedConsole.mute(); // latency logging
+
+        queue = new MidiQueue(MidiQueue.DEFAULT_SIZE);
+        event = MidiData.noteOn(0, 60, 100);
+        event.setTimestamp(System.nanoTime() / 1000);
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            MidiData m = MidiData.noteOn(i & 0xf, 36 + (i & 0x3f), 100);
+            m.setTimestamp(event.getTimestamp());
+            batch.add(m);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MutedConsole.restore();
+    }
+
+    @Benchmark
+    public void addPoll(Blackhole bh) {
+        for (int i = 0; i < batchSize; i++) {
+            queue.add(event);
+        }
+        for (int i = 0; i < batchSize; i++) {
+            bh.consume(queue.poll());
+        }
+    }
+
+    @Benchmark
+    public void addListPoll(Blackhole bh) {
+        queue.addList(batch);
+        for (int i = 0; i < batchSize; i++) {
+            bh.consume(queue.poll());
+        }
+    }
+}
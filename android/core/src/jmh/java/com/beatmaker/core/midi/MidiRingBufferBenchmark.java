@@ -0,0 +1,198 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.core.utils.MutedConsole;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+public class MidiRingBufferBenchmark {
+
+    /*
+        MidiQueue against MidiRingBuffer with one producer and one consumer thread:
+
+            transfer  - throughput, events received per second by the consumer
+            roundTrip - latency of one event through a request and a reply queue,
+                        including the wake-up of the waiting side
+    */
+
+    private static final int SIZE = 4096;
+    private static final int BATCH = 16;
+
+    // wraps both implementations behind the same calls, events are packed (MidiEvent), -1 means empty
+    abstract static class Channel {
+        abstract boolean offer(long event);
+        abstract int offer(long[] batch, int count);
+        abstract long poll();
+        abstract void done();
+        abstract boolean waitForData(long timeoutMillis);
+        abstract boolean isFull();
+
+        static Channel create(String impl, String waitStrategy) {
+            if ("MidiQueue".equals(impl)) {
+                final MidiQueue q = new MidiQueue(SIZE);
+                final MidiData m = new MidiData(); // MidiQueue copies on add
+                return new Channel() {
+                    boolean offer(long event) { if (isFull()) return false; q.add(MidiEvent.toMidiData(event, 0, m)); return true; }
+                    int offer(long[] batch, int count) { if (SIZE - q.length() < count) return 0; for (int i = 0; i < count; i++) q.add(MidiEvent.toMidiData(batch[i], 0, m)); return count; }
+                    long poll() { MidiData d = q.poll(); return (null != d) ? MidiEvent.fromMidiData(d, 0) : -1; }
+                    void done() { }
+                    boolean waitForData(long timeoutMillis) { return q.waitForData(timeoutMillis); }
+                    boolean isFull() { return q.length() >= SIZE; }
+                };
+            }
+
+            int type = "spin".equals(waitStrategy) ? MidiWaitStrategy.SPIN
+                    : "yield".equals(waitStrategy) ? MidiWaitStrategy.YIELD : MidiWaitStrategy.PARK;
+            final MidiRingBuffer r = new MidiRingBuffer(SIZE, MidiWaitStrategy.create(type));
+            return new Channel() {
+                int read, avail;
+                boolean offer(long event) { return r.offer(event, 0); }
+                int offer(long[] batch, int count) { return r.offer(batch, 0, count, 0); }
+                long poll() {
+                    if (read >= avail) {
+                        avail = r.available();
+                        if (read >= avail) return -1;
+                    }
+                    return r.getEvent(read++);
+                }
+                void done() { r.release(read); read = 0; avail = 0; }
+                boolean waitForData(long timeoutMillis) { return r.waitForData(timeoutMillis); }
+                boolean isFull() { return r.length() >= SIZE; }
+            };
+        }
+    }
+
+    @State(Scope.Group)
+    public static class Transfer {
+
+        @Param({"MidiQueue", "MidiRingBuffer"})
+        public String impl;
+
+        @Param({"park"})
+        public String waitStrategy;
+
+        Channel channel;
+        long[] batch;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            MutedConsole.mute();
+            channel = Channel.create(impl, waitStrategy);
+            batch = new long[BATCH];
+            for (int i = 0; i < BATCH; i++) {
+                batch[i] = MidiEvent.noteOn(0, 36 + i, 100);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            MutedConsole.restore();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Received {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("transfer")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int produce(Transfer t) {
+        return t.channel.offer(t.batch, BATCH);
+    }
+
+    @Benchmark
+    @Group("transfer")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void consume(Transfer t, Received received) {
+        if (!t.channel.waitForData(1)) {
+            return;
+        }
+        while (t.channel.poll() >= 0) {
+            received.events++;
+        }
+        t.channel.done();
+    }
+
+    @State(Scope.Benchmark)
+    public static class RoundTrip {
+
+        @Param({"MidiQueue", "MidiRingBuffer"})
+        public String impl;
+
+        @Param({"spin", "yield", "park"})
+        public String waitStrategy;
+
+        Channel request;
+        Channel reply;
+        Thread echo;
+        final long ping = MidiEvent.noteOn(0, 60, 100);
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            request = Channel.create(impl, waitStrategy);
+            reply = Channel.create(impl, waitStrategy);
+
+            echo = new Thread() {
+                @Override
+                public void run() {
+                    while (!isInterrupted()) {
+                        if (!request.waitForData(100)) {
+                            continue;
+                        }
+                        long m;
+                        while ((m = request.poll()) >= 0) {
+                            reply.offer(m);
+                        }
+                        request.done();
+                    }
+                }
+            };
+            echo.setDaemon(true);
+            echo.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            echo.interrupt();
+            echo.join(1000);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip(RoundTrip rt) {
+        rt.request.offer(rt.ping);
+        long m;
+        while ((m = rt.reply.poll()) < 0) {
+            rt.reply.waitForData(100);
+        }
+        rt.reply.done();
+        return m;
+    }
+}
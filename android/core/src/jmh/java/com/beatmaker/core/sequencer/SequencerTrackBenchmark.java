@@ -0,0 +1,105 @@
+package com.beatmaker.core.sequencer;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiBase;
+import com.beatmaker.core.midi.MidiNote;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SequencerTrackBenchmark {
+
+    private static final int NUM_TICKS = Constants.NUM_STEPS * Constants.TICKS_PER_STEP;
+
+    @Param({"1", "4", "16"})
+    public int notesPerStep;
+
+    @Param({"4", "16"})
+    public int activeSteps;
+
+    private MidiBase midi;
+    private SequencerTrack[] tracks;
+    private int tick;
+
+    @Setup
+    public void setUp() {
+        midi = new MidiBase();
+
+        tracks = new SequencerTrack[Constants.NUM_TRACKS];
+        for (int i = 0; i < tracks.length; i++) {
+            SequencerTrack track = new SequencerTrack(i, "Track" + i);
+
+            MidiNote[] notes = new MidiNote[notesPerStep];
+            for (int n = 0; n < notesPerStep; n++) {
+                notes[n] = new MidiNote(i, 36 + n * 4 + i, 100);
+            }
+
+            ElementConfig config = new ElementConfig();
+            config.setChannel(i);
+            config.setNotes(notes);
+            track.setConfig(config);
+
+            // spread the active steps evenly over the pattern
+            int numSteps = track.getNumElements();
+            int stride = Math.max(1, numSteps / activeSteps);
+            for (int j = 0; j < numSteps; j += stride) {
+                track.getElement(j).setActive();
+            }
+
+            tracks[i] = track;
+        }
+
+        tick = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        midi.destroy();
+    }
+
+    @Benchmark
+    public void updateTick() {
+        // one sequencer tick over all tracks, steps are entered every TICKS_PER_STEP
+        double pos = (double) tick;
+
+        for (SequencerTrack track : tracks) {
+            track.updateTick(pos);
+        }
+
+        if (0 == (tick % Constants.TICKS_PER_STEP)) {
+            for (SequencerTrack track : tracks) {
+                track.update(pos);
+            }
+        }
+
+        midi.clearMidiOutput();
+
+        tick = (tick + 1) % NUM_TICKS;
+    }
+
+    @Benchmark
+    public void updateStep() {
+        // step entry only: pattern cursor and note-ons
+        double pos = (double) tick;
+
+        for (SequencerTrack track : tracks) {
+            track.update(pos);
+        }
+
+        midi.clearMidiOutput();
+
+        tick = (tick + Constants.TICKS_PER_STEP) % NUM_TICKS;
+    }
+}
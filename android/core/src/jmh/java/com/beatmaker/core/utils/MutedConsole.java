@@ -0,0 +1,41 @@
+package com.beatmaker.core.utils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+public class MutedConsole {
+
+    /*
+        Logger's writer thread prints the drained records to System.out.
+        Benchmarks keep the ring writes of log calls in the hot paths, the
+        printing must neither flood the JMH console nor steal CPU from them.
+    */
+
+    private static PrintStream stdout;
+
+    public static synchronized void mute() {
+        if (null != stdout) {
+            return;
+        }
+
+        stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    public static synchronized void restore() {
+        if (null == stdout) {
+            return;
+        }
+
+        System.setOut(stdout);
+        stdout = null;
+    }
+}
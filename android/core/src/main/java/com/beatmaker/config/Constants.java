@@ -29,9 +29,45 @@ public class Constants {
 
     public static final int DEFAULT_NOTE_DURATION = Constants.TICKS_PER_STEP; // TICKS
 
+    public static final long SEQUENCER_LOOKAHEAD_TIME = 0; // NANOSECONDS, 0 = send each tick immediately
+    public static final boolean SEQUENCER_EVENT_DRIVEN = false; // wake up on events instead of every tick
+    public static final int SEQUENCER_CATCH_UP_POLICY = 1; // 0 = burst, 1 = skip, 2 = stretch (see SequencerTimebase)
+    public static final long SEQUENCER_CATCH_UP_THRESHOLD = 20000000; // NANOSECONDS
+    public static final boolean SEQUENCER_PRECISION_WAIT = false; // spin for the last part of each wait
+    public static final boolean SEQUENCER_CLOCK_SLAVE = true; // follow incoming MIDI clock while it is locked
+    public static final boolean SEQUENCER_TRANSPORT_SLAVE = true; // start, stop and locate on incoming MIDI realtime messages
+    public static final boolean SEQUENCER_CLOCK_MASTER = false; // send 24 PPQN clock, start and stop to all outputs
+    public static final long SEQUENCER_SLAVE_LATENCY = 5000000; // NANOSECONDS, constant delay behind the master's clock pulses
+    public static final boolean SEQUENCER_TIMECODE_MASTER = false; // send MTC quarter frames to all outputs while playing
+    public static final boolean SEQUENCER_TIMECODE_CHASE = false; // start, stop and locate on incoming MTC
+    public static final long SEQUENCER_TIMECODE_CHASE_LIMIT = 50000000; // NANOSECONDS off the timecode, then locate again
+    public static final long SEQUENCER_TIMECODE_POLL_TIME = 10000000; // NANOSECONDS, wait for timecode while stopped
+
+    public static final double PRECISION_WAIT_SPIN_BUDGET = 0.05; // max. fraction of CPU time spent spinning
+    public static final long PRECISION_WAIT_INITIAL_MARGIN = 200000; // NANOSECONDS
+    public static final long PRECISION_WAIT_MAX_MARGIN = 2000000; // NANOSECONDS
+
     public static final boolean MIDI_OUTPUT_ASYNC_MODE = false;
     public static final int MIDI_OUTPUT_MAX_QUEUE_SIZE = 512;
 
+    public static final int MIDI_QUEUE_WAIT_STRATEGY = 2; // 0 = spin, 1 = yield, 2 = park (see MidiWaitStrategy)
+    public static final boolean MIDI_SCHEDULER_PRECISION_WAIT = true; // spin for the last part of each wait for a due time
+
     public static final int MIDI_DEVICE_IO_TIMEOUT = 250;
 
+    public static final int MIDI_SYSEX_MAX_SIZE = 65536; // BYTES, longer messages are delivered in chunks of this size
+    public static final long MIDI_SYSEX_MESSAGE_LIMIT = 16777216; // BYTES, longer messages are aborted
+    public static final int MIDI_SYSEX_POOL_SIZE = 8; // spare buffers kept for reuse
+    public static final int MIDI_SYSEX_QUEUE_SIZE = 64; // messages or chunks waiting for delivery
+
+    public static final boolean MIDI_INPUT_ACTIVE_SENSING = false; // queue 0xFE from the devices (see MidiInputFilter)
+
+    public static final long MIDI_CLOCK_TIMEOUT = 1000000000; // NANOSECONDS without pulse, then the clock counts as stopped
+    public static final int MIDI_CLOCK_FILTER_LENGTH = 24; // PULSES, averaging length of the clock slave once locked
+
+    public static final int MIDI_TIMECODE_RATE = 1; // 0 = 24, 1 = 25, 2 = 29.97 drop frame, 3 = 30 fps (see MidiTimecode)
+    public static final long MIDI_TIMECODE_TIMEOUT = 100000000; // NANOSECONDS without quarter frame, then the timecode counts as stopped
+
+    public static final int MIDI_DISPATCH_LOG_MASK = 0; // message classes logged by the dispatcher (see MidiDispatcher.LOG_*)
+
 }
@@ -2,6 +2,8 @@ package com.beatmaker.config;
 
 public class Debug {
 
+    public static final int LOG_LEVEL = 0; // 0 = debug, 1 = info, 2 = warn, 3 = error, 4 = fatal (see Logger)
+
     public static final boolean MOCKUP_MIDI = false;
     public static final boolean SEQUENCER_GENERATE_TEST_ELEMENTS = false;
     public static final boolean SEQUENCER_AUTOSTART = false;
@@ -7,6 +7,7 @@ public class Settings {
         public int midiInputThreadPriority = 0;
         public int midiInputDispatchThreadPriority = 0;
         public int midiOutputThreadPriority = 0;
+        public int midiClockThreadPriority = 0;
         public int backgroundThreadPriority = 0;
     }
 
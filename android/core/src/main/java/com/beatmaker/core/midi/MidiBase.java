@@ -3,31 +3,58 @@ package com.beatmaker.core.midi;
 import com.beatmaker.config.Constants;
 import com.beatmaker.config.Debug;
 import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.Clock;
 import com.beatmaker.core.utils.Logger;
 import com.beatmaker.core.utils.SystemUtils;
 import com.beatmaker.core.utils.Timer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 
 public class MidiBase implements MidiApiProvider {
 
     private static final String TAG = "MidiBase";
 
+    private static final int LOG_OUTPUT_ERROR = Logger.register(TAG, "output I/O error: sent {} bytes instead of {}");
+    private static final int LOG_OUTPUT_LATENCY = Logger.register(TAG, "max. output latency: {}");
+    private static final int LOG_ROUTE_UNAVAILABLE = Logger.register(TAG, "track {}: route to port {}, cable {} not available");
+    private static final int LOG_INPUT_ROUTE_UNAVAILABLE = Logger.register(TAG, "input route to port {}, cable {} not available");
+
     private static MidiBase instance_;
 
+    protected final Clock clock;
     protected MidiInterfaceBase currentInterface;
     protected MidiDispatcher dispatcher;
     protected MidiClock midiClock;
 
     protected Timer updateTimer;
     protected MidiIoThread midiInputThread;
-    protected MidiQueue midiInputQueue;
+    protected MidiRingBuffer midiInputQueue;
     protected Thread midiInputDispatcherThread;
-    protected MidiIoThread midiOutputThread;
-    protected final ArrayList<MidiData> midiOutputQueue = new ArrayList<>();
+    protected MidiScheduler midiScheduler;
+    protected MidiClockMaster midiClockMaster;
+    protected MidiTimecode midiTimecode;
+    protected MidiTimecodeMaster midiTimecodeMaster;
+
+    // physical outputs of all open interfaces, copy-on-write
+    private final Object outputPortLock = new Object();
+    private volatile MidiOutputPort[] outputPorts = new MidiOutputPort[0];
+    private volatile int outputGeneration = 0; // bumped whenever outputs or the connected interface change
+    private MidiOutputPort defaultOutputPort;
+
+    // track routing, copy-on-write, null = default output, grows with the highest routed track
+    private volatile MidiRoute[] trackRoutes = new MidiRoute[Constants.NUM_TRACKS];
+
+    // resolved routes, sequencer thread only
+    private MidiRoute[] resolvedRoutes;
+    private int resolvedGeneration = -1;
+    private MidiOutputPort[] resolvedOutputs = new MidiOutputPort[Constants.NUM_TRACKS];
+
+    private final MidiData midiDispatchData = new MidiData(); // dispatch thread only
+    private final long[] singleEvent = new long[1]; // send(long), guarded by itself
+    protected final MidiInputFilter midiInputFilter = new MidiInputFilter();
+    protected final MidiPacketDecoder midiInputDecoder = new MidiPacketDecoder(midiInputFilter); // input thread only
 
     protected boolean paused = false;
 
@@ -38,14 +65,66 @@ public class MidiBase implements MidiApiProvider {
     }
 
     public MidiBase() {
+        this(Clock.instance());
+    }
+
+    public MidiBase(Clock clock) {
         assert(null == instance_); // ensure singleton
         instance_ = this;
+
+        this.clock = clock;
+
+        // queue cable 0 only, other cables as listeners ask for them
+        midiInputFilter.setCable(MidiInputFilter.ALL_CABLES, false);
+        midiInputFilter.setCable(0, true);
+        if (!Constants.MIDI_INPUT_ACTIVE_SENSING) {
+            midiInputFilter.setStatus(MidiInputFilter.ALL_CABLES, 0xfe, false);
+        }
+    }
+
+    public MidiClock getClock() {
+        return midiClock;
+    }
+
+    public Clock getTimeClock() {
+        // time source of timestamps, due times and waits
+        return clock;
+    }
+
+    public MidiClockMaster getClockMaster() {
+        return midiClockMaster;
+    }
+
+    public MidiTimecode getTimecode() {
+        return midiTimecode;
+    }
+
+    public MidiTimecodeMaster getTimecodeMaster() {
+        return midiTimecodeMaster;
+    }
+
+    public MidiInputFilter getInputFilter() {
+        return midiInputFilter;
     }
 
     public void addInputListener(MidiInputListener midiInputListener) {
         dispatcher.addInputListener(midiInputListener);
     }
 
+    public boolean addInputListener(MidiInputListener midiInputListener, MidiRoute route) {
+        // input is only read from the default input of the connected interface,
+        // routes to other interfaces or ports would never receive anything
+        if (null != route && (0 != route.getPort() || !route.isDefaultInterface() && !route.matches(currentInterface))) {
+            Logger.d(LOG_INPUT_ROUTE_UNAVAILABLE, route.getPort(), route.getCable());
+            return false;
+        }
+
+        int cable = (null != route) ? route.getCable() : 0;
+        midiInputFilter.setCable(cable, true);
+        dispatcher.addInputListener(midiInputListener, cable);
+        return true;
+    }
+
     public void removeInputListener(MidiInputListener midiInputListener) {
         dispatcher.removeInputListener(midiInputListener);
     }
@@ -56,13 +135,17 @@ public class MidiBase implements MidiApiProvider {
 
     public synchronized void create() {
 
-        this.midiClock = new MidiClock();
-        this.dispatcher = new MidiDispatcher(midiClock);
+        this.midiClock = new MidiClock(clock);
+        this.midiTimecode = new MidiTimecode(clock);
+        this.dispatcher = new MidiDispatcher(midiClock, midiTimecode);
+        this.midiScheduler = new MidiScheduler(this);
+        this.midiClockMaster = new MidiClockMaster(this);
+        this.midiTimecodeMaster = new MidiTimecodeMaster(this);
 
         Logger.d(TAG, "created midi controller");
 
         if (!Debug.MOCKUP_MIDI) {
-            updateTimer = new Timer(1000000, Settings.instance().getPriorities().backgroundThreadPriority) {
+            updateTimer = new Timer(1000000, Settings.instance().getPriorities().backgroundThreadPriority, clock) {
                 @Override
                 public void run() {
                     update();
@@ -87,6 +170,18 @@ public class MidiBase implements MidiApiProvider {
 
         update();
 
+        if (null != midiClockMaster) {
+            midiClockMaster.start();
+        }
+
+        if (null != midiTimecodeMaster) {
+            midiTimecodeMaster.start();
+        }
+
+        if (null != midiScheduler) {
+            midiScheduler.start();
+        }
+
         if (!Debug.MOCKUP_MIDI) {
             if (null != updateTimer) {
                 updateTimer.start();
@@ -101,15 +196,41 @@ public class MidiBase implements MidiApiProvider {
             updateTimer.stop();
         }
 
+        if (null != midiScheduler) {
+            midiScheduler.stop();
+        }
+
+        if (null != midiClockMaster) {
+            midiClockMaster.stop();
+        }
+
+        if (null != midiTimecodeMaster) {
+            midiTimecodeMaster.stop();
+        }
+
+        if (null != dispatcher) {
+            dispatcher.stop();
+        }
+
         paused = false;
 
+        removeOutputPorts(null);
+
         if (null != currentInterface) {
             currentInterface.close();
             currentInterface = null;
         }
 
         if (null != midiInterfaces) {
-            midiInterfaces.clear();
+            synchronized (midiInterfaces) {
+                // output only interfaces opened for routing
+                for (MidiInterfaceBase midiInterface : midiInterfaces.values()) {
+                    if (midiInterface.isConnected()) {
+                        midiInterface.close();
+                    }
+                }
+                midiInterfaces.clear();
+            }
         }
 
     }
@@ -205,10 +326,19 @@ public class MidiBase implements MidiApiProvider {
 
         midiInterface.open();
 
+        if (null != currentInterface && currentInterface != midiInterface) {
+            // opened for routing only, no input handling
+            Logger.d(TAG, "opened midi interface for output: " + midiInterface.getAlias());
+            addOutputPorts(midiInterface);
+            return;
+        }
+
         currentInterface = midiInterface;
 
         Logger.d(TAG, "opened midi interface");
 
+        addOutputPorts(midiInterface);
+
         final MidiInterfaceBase intf = midiInterface;
 
         if (createInputThread) {
@@ -218,7 +348,7 @@ public class MidiBase implements MidiApiProvider {
                 }
             };
             midiInputThread.setName("midi input thread");
-            midiInputThread.allocQueue(MidiQueue.DEFAULT_SIZE);
+            midiInputThread.allocQueue(MidiRingBuffer.DEFAULT_SIZE);
             midiInputThread.start();
         } else {
             // queue must be pre-allocated
@@ -236,17 +366,6 @@ public class MidiBase implements MidiApiProvider {
         };
         midiInputDispatcherThread.setName("midi input dispatcher thread");
         midiInputDispatcherThread.start();
-
-        if (Constants.MIDI_OUTPUT_ASYNC_MODE) {
-            midiOutputThread = new MidiIoThread(midiInterface) {
-                public void run() {
-                    midiOutputLoop(intf);
-                }
-            };
-            midiOutputThread.setName("midi output thread");
-            midiOutputThread.allocQueue(MidiQueue.DEFAULT_SIZE);
-            midiOutputThread.start();
-        }
     }
 
     protected void onAddInterface(MidiInterfaceBase midiInterface) {
@@ -257,6 +376,8 @@ public class MidiBase implements MidiApiProvider {
         if (null == currentInterface && (midiInterface.getAlias().equals(intfName) || intfName.isEmpty())) {
             connect(midiInterface);
             Settings.instance().setMidiInterface(midiInterface.getAlias());
+        } else if (isRouted(midiInterface)) {
+            connect(midiInterface);
         }
     }
 
@@ -266,6 +387,10 @@ public class MidiBase implements MidiApiProvider {
         if (midiInterface == currentInterface) {
             disconnect(midiInterface);
             currentInterface = null;
+            outputGeneration++;
+        } else if (midiInterface.isConnected()) {
+            removeOutputPorts(midiInterface);
+            midiInterface.close();
         }
     }
 
@@ -281,10 +406,6 @@ public class MidiBase implements MidiApiProvider {
 
         midiInputDispatcherThread.interrupt();
 
-        if (null != midiOutputThread) {
-            midiOutputThread.interrupt();
-        }
-
         if (null != midiInputThread) {
             try {
                 midiInputThread.join(500);
@@ -298,15 +419,7 @@ public class MidiBase implements MidiApiProvider {
         }
         midiInputDispatcherThread = null;
 
-        if (null != midiOutputThread) {
-            try {
-                midiOutputThread.join(500);
-            } catch (InterruptedException ignored) {
-            }
-            midiOutputThread = null;
-        }
-
-        clearMidiOutput();
+        removeOutputPorts(midiInterface);
 
         midiInterface.close();
     }
@@ -319,6 +432,188 @@ public class MidiBase implements MidiApiProvider {
         paused = false;
     }
 
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /* outputs and routing */
+
+    private void addOutputPorts(MidiInterfaceBase midiInterface) {
+        int numOutputs = midiInterface.getNumOutputs();
+        for (int i = 0; i < numOutputs; i++) {
+            getOutputPort(midiInterface, i);
+        }
+    }
+
+    protected MidiOutputPort getOutputPort(MidiInterfaceBase midiInterface, int portIndex) {
+        if (null == midiInterface || portIndex < 0 || portIndex >= midiInterface.getNumOutputs()) {
+            return null;
+        }
+
+        MidiPortBase port = midiInterface.getOutputs().get(portIndex);
+
+        for (MidiOutputPort outputPort : outputPorts) {
+            if (outputPort.getPort() == port) {
+                return outputPort;
+            }
+        }
+
+        synchronized (outputPortLock) {
+            MidiOutputPort[] ports = outputPorts;
+            for (MidiOutputPort outputPort : ports) {
+                if (outputPort.getPort() == port) {
+                    return outputPort;
+                }
+            }
+
+            MidiOutputPort outputPort = new MidiOutputPort(this, midiInterface, port, portIndex);
+            outputPort.start();
+
+            MidiOutputPort[] newPorts = new MidiOutputPort[ports.length + 1];
+            System.arraycopy(ports, 0, newPorts, 0, ports.length);
+            newPorts[ports.length] = outputPort;
+            outputPorts = newPorts;
+            outputGeneration++;
+
+            return outputPort;
+        }
+    }
+
+    private void removeOutputPorts(MidiInterfaceBase midiInterface) {
+        // null removes all
+        ArrayList<MidiOutputPort> removed = new ArrayList<>();
+
+        synchronized (outputPortLock) {
+            ArrayList<MidiOutputPort> kept = new ArrayList<>();
+            for (MidiOutputPort outputPort : outputPorts) {
+                if (null == midiInterface || outputPort.getInterface() == midiInterface) {
+                    removed.add(outputPort);
+                } else {
+                    kept.add(outputPort);
+                }
+            }
+            outputPorts = kept.toArray(new MidiOutputPort[kept.size()]);
+            outputGeneration++;
+        }
+
+        for (MidiOutputPort outputPort : removed) {
+            outputPort.stop();
+        }
+    }
+
+    public MidiOutputPort getDefaultOutputPort() {
+        // default output of the connected interface
+        MidiInterfaceBase intf = currentInterface;
+        if (null == intf) {
+            return null;
+        }
+
+        MidiOutputPort outputPort = defaultOutputPort;
+        if (null != outputPort && outputPort.getInterface() == intf && outputPort.getPort() == intf.getDefaultOutput()) {
+            return outputPort;
+        }
+
+        outputPort = getOutputPort(intf, 0);
+        defaultOutputPort = outputPort;
+        return outputPort;
+    }
+
+    public MidiOutputPort[] getOutputPorts() {
+        return outputPorts;
+    }
+
+    public void setTrackRoute(int track, MidiRoute route) {
+        if (track < 0) {
+            return;
+        }
+
+        synchronized (outputPortLock) {
+            MidiRoute[] routes = Arrays.copyOf(trackRoutes, Math.max(trackRoutes.length, track + 1));
+            routes[track] = route;
+            trackRoutes = routes;
+        }
+
+        if (null == route || route.isDefaultInterface()) {
+            return;
+        }
+
+        // open the target interface if it is present but not connected yet
+        MidiInterfaceBase target = null;
+        synchronized (midiInterfaces) {
+            for (MidiInterfaceBase midiInterface : midiInterfaces.values()) {
+                if (route.matches(midiInterface)) {
+                    target = midiInterface;
+                    break;
+                }
+            }
+        }
+
+        if (null != target && !target.isConnected()) {
+            connect(target);
+        }
+    }
+
+    public MidiRoute getTrackRoute(int track) {
+        MidiRoute[] routes = trackRoutes;
+        return (track >= 0 && track < routes.length) ? routes[track] : null;
+    }
+
+    private boolean isRouted(MidiInterfaceBase midiInterface) {
+        for (MidiRoute route : trackRoutes) {
+            if (null != route && !route.isDefaultInterface() && route.matches(midiInterface)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MidiOutputPort getTrackOutput(int track) {
+        MidiRoute[] routes = trackRoutes;
+        if (routes != resolvedRoutes || outputGeneration != resolvedGeneration) {
+            resolveRoutes(routes);
+        }
+
+        MidiRoute route = (track < routes.length) ? routes[track] : null;
+        if (null == route || route.isDefaultInterface() && 0 == route.getPort()) {
+            return getDefaultOutputPort();
+        }
+
+        return resolvedOutputs[track]; // null while the target is not available
+    }
+
+    private void resolveRoutes(MidiRoute[] routes) {
+        // rare, only after routing or device changes
+        resolvedRoutes = routes;
+        resolvedGeneration = outputGeneration;
+
+        MidiOutputPort[] ports = outputPorts;
+        if (resolvedOutputs.length < routes.length) {
+            resolvedOutputs = new MidiOutputPort[routes.length];
+        }
+
+        for (int track = 0; track < routes.length; track++) {
+            MidiRoute route = routes[track];
+            resolvedOutputs[track] = null;
+
+            if (null == route || route.isDefaultInterface() && 0 == route.getPort()) {
+                continue; // default output, follows the connected interface
+            }
+
+            for (MidiOutputPort outputPort : ports) {
+                MidiInterfaceBase intf = outputPort.getInterface();
+                boolean match = route.isDefaultInterface() ? (intf == currentInterface) : route.matches(intf);
+                if (match && outputPort.getPortIndex() == route.getPort()) {
+                    resolvedOutputs[track] = outputPort;
+                    break;
+                }
+            }
+
+            if (null == resolvedOutputs[track]) {
+                Logger.d(LOG_ROUTE_UNAVAILABLE, track, route.getPort(), route.getCable());
+            }
+        }
+    }
+
     protected void midiInputLoop(MidiInterfaceBase midiInterface) {
 
         if (null == midiInterface) {
@@ -333,7 +628,9 @@ public class MidiBase implements MidiApiProvider {
         int maxPacketSize = port.getMaxPacketSize();
         byte[] packetBuffer = new byte[maxPacketSize];
 
-        MidiQueue queue = midiInputThread.getQueue();
+        MidiRingBuffer queue = midiInputThread.getQueue();
+        MidiPacketDecoder decoder = midiInputDecoder;
+        decoder.reset();
 
         midiClock.reset();
 
@@ -355,17 +652,12 @@ public class MidiBase implements MidiApiProvider {
 
             if (sz > 0) {
 
-                int ofs = 0;
+                // decode straight into claimed slots, publish the whole transfer at once
+                long dropped = decoder.getDroppedPackets();
+                decoder.decode(packetBuffer, sz, queue, midiReceiveTime);
 
-                while (ofs < sz) {
-                    MidiData midiData = new MidiData();
-                    int deserializedBytes = midiData.deserialize(packetBuffer, ofs, sz);
-                    if (deserializedBytes < 1) {
-                        break;
-                    }
-                    ofs += deserializedBytes;
-                    midiData.setTimestamp(midiReceiveTime);
-                    queue.add(midiData);
+                if (decoder.getDroppedPackets() != dropped) {
+                    Logger.d(TAG, "input queue overflow");
                 }
 
             } else if (sz == 0) {
@@ -376,7 +668,7 @@ public class MidiBase implements MidiApiProvider {
         }
     }
 
-    protected void midiInputDispatchLoop(MidiQueue queue) {
+    protected void midiInputDispatchLoop(MidiRingBuffer queue) {
 
         SystemUtils.setPriority(Settings.instance().getPriorities().midiInputDispatchThreadPriority);
 
@@ -384,12 +676,12 @@ public class MidiBase implements MidiApiProvider {
 
             if (queue.waitForData(100)) {
                 //Logger.d(TAG, "new midi data!!!");
-                while (!queue.isEmpty()) {
-                    MidiData midiData = queue.poll();
-                    if (null != midiData) {
-                        dispatcher.dispatch(midiData);
-                    }
+                int count = queue.available();
+                for (int i = 0; i < count; i++) {
+                    // listeners still get MidiData, the scratch object is reused for every event
+                    dispatcher.dispatch(MidiEvent.toMidiData(queue.getEvent(i), queue.getTimestamp(i), midiDispatchData));
                 }
+                queue.release(count);
             }
         }
 
@@ -397,254 +689,165 @@ public class MidiBase implements MidiApiProvider {
 
     public void playTestTone(boolean pressed) {
 
-        MidiData m;
-
         int channel = 0x0;
 
-        if (pressed) {
-            // note on
-            m = new MidiData(0, 0, 0x9, 0x90 | (channel&0xf), 0x40, 0x40);
-        } else {
-            // note off
-            m = new MidiData(0, 0, 0x9, 0x90 | (channel&0xf), 0x40, 0x00);
-        }
-
-        send(m);
+        // note on, velocity 0 for note off
+        send(MidiEvent.pack(0x9, 0x90 | (channel&0xf), 0x40, pressed ? 0x40 : 0x00));
 
         {
             // second note
 
-            MidiData m2;
-
             int channel2 = 0x1;
 
-            if (pressed) {
-                // note on
-                m2 = new MidiData(0, 0, 0x9, 0x90 | (channel2&0xf), 0x45, 0x40);
-            } else {
-                // note off
-                m2 = new MidiData(0, 0, 0x9, 0x90 | (channel2&0xf), 0x45, 0x00);
-            }
-
-            send(m2);
-
+            send(MidiEvent.pack(0x9, 0x90 | (channel2&0xf), 0x45, pressed ? 0x40 : 0x00));
         }
     }
 
-    public int send(MidiData midiData) {
-
-        if (Constants.MIDI_OUTPUT_ASYNC_MODE) {
-
-            if (null == midiOutputThread) {
-                return -1;
-            }
-
-            MidiQueue queue = midiOutputThread.getQueue();
-            if (null == queue) {
-                return -1;
-            }
-
-            queue.add(midiData);
-
-            return 0;
-        } else {
-
-            MidiInterfaceBase intf = currentInterface;
-            if (null == intf) {
-                return -1;
-            }
-
-            MidiPortBase port = intf.getDefaultOutput();
-            if (null == port) {
-                return -1;
-            }
-
-            return send(intf, port, midiData);
+    public int send(long midiEvent) {
+        // single packed event, sent right away
+        synchronized (singleEvent) {
+            singleEvent[0] = midiEvent;
+            return send(singleEvent, 1, 0);
         }
     }
 
-    public int send(List<MidiData> midiData) {
-
-        if (Constants.MIDI_OUTPUT_ASYNC_MODE) {
-
-            if (null == midiOutputThread) {
-                return -1;
-            }
-
-            MidiQueue queue = midiOutputThread.getQueue();
-            if (null == queue) {
-                return -1;
-            }
-
-            queue.addList(midiData);
-
-            return 0;
-
-        } else {
-
-            MidiInterfaceBase intf = currentInterface;
-            if (null == intf) {
-                return -1;
-            }
-
-            MidiPortBase port = intf.getDefaultOutput();
-            if (null == port) {
-                return -1;
-            }
-
-            return send(intf, port, midiData.iterator());
-
+    public int send(long[] midiEvents, int count, long baseTime) {
+        // default output, right away
+        MidiOutputPort outputPort = getDefaultOutputPort();
+        if (null == outputPort) {
+            return -1;
         }
+
+        return outputPort.send(midiEvents, count, baseTime);
     }
 
-    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, MidiData midiData) {
-        if (null == midiInterface || null == midiPort || null == midiData) {
+    public int send(MidiData midiData) {
+        if (null == midiData) {
             return -1;
         }
-
-        int packetSize = Math.min(4, midiPort.getMaxPacketSize());
-        byte[] packetBuffer = new byte[packetSize];
-
-        int sz = midiData.serialize(packetBuffer, 0, packetSize);
-        int bytes = midiInterface.send(midiPort, packetBuffer, 0, Constants.MIDI_DEVICE_IO_TIMEOUT);
-
-        if (bytes != sz) return -1;
-
-        return bytes;
+        return send(MidiEvent.fromMidiData(midiData, 0));
     }
 
-    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, Iterator<MidiData> it) {
-        if (null == midiInterface || null == midiPort || null == it) {
+    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, long[] midiEvents, int count, long baseTime, byte[] packetBuffer) {
+        // packetBuffer belongs to the output port, one transfer at a time
+        if (null == midiInterface || null == midiPort || null == midiEvents || null == packetBuffer) {
             return -1;
         }
 
-        int maxPacketSize = midiPort.getMaxPacketSize();
-        byte[] packetBuffer = new byte[maxPacketSize];
+        int maxPacketSize = Math.min(midiPort.getMaxPacketSize(), packetBuffer.length);
 
         int ofs = 0;
         int transferCount = 0;
 
-        long maxLatency = 0;
-        long earliestTime = 0;
-
-        while (it.hasNext()) {
-            MidiData m = it.next();
-            boolean lastElement = !it.hasNext();
-
-            long timestamp = m.getTimestamp();
-            if (earliestTime == 0 || (timestamp < earliestTime && timestamp != 0)) {
-                earliestTime = timestamp;
-            }
-
-            int serializedSize = m.serialize(packetBuffer, ofs, maxPacketSize);
+        for (int i = 0; i < count; i++) {
+            int serializedSize = MidiEvent.serialize(midiEvents[i], packetBuffer, ofs, maxPacketSize);
             if (serializedSize < 1) {
                 break;
             }
             ofs += serializedSize;
 
-            if (ofs >= maxPacketSize || lastElement) {
+            if (ofs >= maxPacketSize || i == count - 1) {
                 int sz = midiInterface.send(midiPort, packetBuffer, ofs, Constants.MIDI_DEVICE_IO_TIMEOUT);
                 if (sz != ofs) {
-                    Logger.e(TAG, "output I/O error: sent " + sz + " bytes instead of " + ofs);
+                    Logger.e(LOG_OUTPUT_ERROR, sz, ofs, 0);
                     return -1;
                 }
                 transferCount += ofs;
                 ofs = 0;
-
-                // update latency measurement
-                long now = getTimeMicros();
-                long latency = (0 != earliestTime) ? now - earliestTime : 0;
-                if (latency > maxLatency) maxLatency = latency;
-                earliestTime = 0;
             }
         }
 
-        if (Debug.SHOW_LATENCIES) {
-            Logger.d(TAG, "max. output latency: " + maxLatency);
+        if (Debug.SHOW_LATENCIES && 0 != baseTime) {
+            Logger.d(LOG_OUTPUT_LATENCY, getTimeMicros() - baseTime);
         }
 
         return transferCount;
     }
 
-    protected void midiOutputLoop(MidiInterfaceBase midiInterface) {
+    public void enqueueMidiOutput(MidiData midiData) {
+        enqueueMidiOutput(midiData.getTimestamp(), midiData.getCable(), midiData.getCodeIndexNumber(), midiData.getMidi0(), midiData.getMidi1(), midiData.getMidi2());
+    }
 
-        assert(null != midiOutputThread);
+    public void enqueueMidiOutput(int codeIndexNumber, int midi0, int midi1, int midi2) {
+        enqueueMidiOutput(0, 0, codeIndexNumber, midi0, midi1, midi2);
+    }
 
-        if (null == midiInterface) {
-            return;
-        }
+    public void enqueueMidiOutput(long timestamp, int cable, int codeIndexNumber, int midi0, int midi1, int midi2) {
+        enqueueMidiOutput(MidiEvent.pack(0, cable, codeIndexNumber, midi0, midi1, midi2), timestamp);
+    }
 
-        MidiPortBase port = midiInterface.getDefaultOutput();
-        if (null == port) {
+    public void enqueueMidiOutput(long midiEvent, long timestamp) {
+        // default output, delta bits of midiEvent are ignored, 0 timestamp means now
+        MidiOutputPort outputPort = getDefaultOutputPort();
+        if (null == outputPort) {
             return;
         }
 
-        MidiQueue queue = midiOutputThread.getQueue();
-
-        SystemUtils.setPriority(Settings.instance().getPriorities().midiOutputThreadPriority);
+        outputPort.enqueue(midiEvent, (0 != timestamp) ? timestamp : getTimeMicros());
+    }
 
-        {
-            // send all notes off before starting
-            send(midiInterface, port, new MidiData(0, 0, 0xb, 0xb0, 0x7b, 0x0));
+    public void enqueueMidiOutput(long[] midiEvents, int count, long baseTime) {
+        for (int i = 0; i < count; i++) {
+            enqueueMidiOutput(midiEvents[i], MidiEvent.getTimestamp(midiEvents[i], baseTime));
         }
+    }
 
-        while (!Thread.interrupted()) {
-
-            if (false == midiInterface.isConnected()) {
-                break;
-            }
-
-            if (paused) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                continue;
-            }
+    public void enqueueTrackOutput(int track, long midiEvent, long timestamp) {
+        // routed output of a track, the route decides port and cable
+        if (track < 0) {
+            enqueueMidiOutput(midiEvent, timestamp);
+            return;
+        }
 
-            if (queue.waitForData(250)) {
-                queue.lockBuffer();
-                try {
-                    send(midiInterface, port, queue.iterator());
-                } finally {
-                    queue.unlockBuffer();
-                }
-            }
+        MidiOutputPort outputPort = getTrackOutput(track);
+        if (null == outputPort) {
+            return;
         }
 
-        {
-            // send all notes off before closing
-            Logger.d(TAG, "send all notes off before closing midi output");
-            send(midiInterface, port, new MidiData(0, 0, 0xb, 0xb0, 0x7b, 0x0));
+        MidiRoute route = (track < resolvedRoutes.length) ? resolvedRoutes[track] : null;
+        if (null != route) {
+            midiEvent = MidiEvent.setCable(midiEvent, route.getCable());
         }
+
+        outputPort.enqueue(midiEvent, (0 != timestamp) ? timestamp : getTimeMicros());
     }
 
-    public void enqueueMidiOutput(MidiData midiData) {
-        if (midiOutputQueue.size() >= Constants.MIDI_OUTPUT_MAX_QUEUE_SIZE) return;
-        if (0 == midiData.getTimestamp()) {
-            midiData.setTimestamp(getTimeMicros());
-        }
-        midiOutputQueue.add(midiData);
+    public void enqueueTrackOutput(int track, int codeIndexNumber, int midi0, int midi1, int midi2) {
+        enqueueTrackOutput(track, MidiEvent.pack(codeIndexNumber, midi0, midi1, midi2), 0);
     }
 
     public void flushMidiOutput() {
-        if (midiOutputQueue.isEmpty()) {
-            return;
+        for (MidiOutputPort outputPort : outputPorts) {
+            outputPort.flush();
         }
+    }
 
-        send(midiOutputQueue);
+    public void flushMidiOutput(long timestamp) {
+        MidiScheduler scheduler = midiScheduler;
+        if (null == scheduler || !scheduler.isRunning()) {
+            flushMidiOutput();
+            return;
+        }
 
-        midiOutputQueue.clear();
+        for (MidiOutputPort outputPort : outputPorts) {
+            outputPort.flush(scheduler, timestamp);
+        }
     }
 
     public void clearMidiOutput() {
-        midiOutputQueue.clear();
+        for (MidiOutputPort outputPort : outputPorts) {
+            outputPort.clear();
+        }
+    }
+
+    public void clearScheduledMidiOutput() {
+        if (null != midiScheduler) {
+            midiScheduler.clear();
+        }
     }
 
     protected long getTimeMicros() {
-        return System.nanoTime()/1000;
+        return clock.microTime();
     }
 
 }
@@ -2,70 +2,267 @@ package com.beatmaker.core.midi;
 
 import com.beatmaker.config.Constants;
 import com.beatmaker.core.sequencer.SequencerMetrics;
+import com.beatmaker.core.sequencer.SequencerTempo;
+import com.beatmaker.core.utils.Clock;
 
 public class MidiClock {
 
+    /*
+        Clock slave for MIDI realtime clock (0xF8, 24 pulses per quarter).
+
+        An alpha-beta filter (a steady-state Kalman filter for phase and
+        period) tracks the external timeline: every pulse is compared with its
+        predicted time, the error corrects the phase (alpha) and the period
+        (beta). Gains start at the least-squares values for the first pulses,
+        so the estimate locks within a few pulses, and shrink to the values of
+        MIDI_CLOCK_FILTER_LENGTH pulses to smooth out transport jitter.
+
+        A single pulse far off the prediction is ignored as an outlier, a
+        second one in a row restarts acquisition (tempo jump). Missing pulses
+        are counted from the gap, so the pulse index stays on the external
+        grid.
+
+        The estimate is published with a sequence counter (seqlock), readers
+        on other threads never lock and never see a torn estimate.
+    */
+
     private static final String TAG = "MidiClock";
 
-    private static final long UPDATE_BUFFER_TIME = 1000000L; // seconds
-    private static final long MIDI_REALTIME_CLOCK_UPDATES_PER_MEASURE = 96;
+    public static final int PULSES_PER_QUARTER = 24;
+
+    private static final double OUTLIER_LIMIT = 0.35; // of the period
+    private static final int MAX_OUTLIERS = 1; // in a row, then reacquire
+    private static final double LOCK_LIMIT = 0.1; // of the period
+    private static final int LOCK_PULSES = 4; // in a row within the limit
+
+    public static class Estimate {
+        private long version;
+        private long pulse;
+        private long pulseTime;
+        private double period;
+        private long phaseError;
+        private boolean locked;
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getPulse() {
+            // index of the last pulse, missing pulses included
+            return pulse;
+        }
+
+        public long getPulseTime() {
+            // estimated time of the last pulse, NANOSECONDS
+            return pulseTime;
+        }
+
+        public double getPeriod() {
+            // NANOSECONDS per pulse
+            return period;
+        }
+
+        public long getPhaseError() {
+            // last pulse against its prediction, NANOSECONDS
+            return phaseError;
+        }
+
+        public boolean isLocked() {
+            return locked;
+        }
+
+        public long getTime(double pulse) {
+            // external timeline
+            return pulseTime + Math.round((pulse - this.pulse) * period);
+        }
+
+        public long getBpmScaled() {
+            if (period <= 0.0) return 0;
+            return Math.round(60000000000.0 * SequencerTempo.BPM_SCALE / (period * PULSES_PER_QUARTER));
+        }
+
+        public double getBpmExact() {
+            if (period <= 0.0) return 0.0;
+            return 60000000000.0 / (period * PULSES_PER_QUARTER);
+        }
+    }
+
+    private final Clock clock;
 
-    private long midiClockStart = 0;
-    private long midiClockCount = 0;
-    private long midiClockLastUpdate = 0;
+    // filter state, dispatch thread only
+    private boolean active = false;
+    private long lastPulseTime = 0;
+    private long pulse = 0;
+    private double phase = 0.0;
+    private double period = 0.0;
+    private int filterCount = 0;
+    private int goodPulses = 0;
+    private int outliers = 0;
+    private long ignoredPulses = 0; // since the last accepted pulse
+    private long outlierCount = 0;
     private int bpm = 0;
 
+    private volatile boolean resetRequested = false;
+
+    // published estimate, odd version while writing
+    private volatile long version = 0;
+    private volatile long estPulse;
+    private volatile long estPulseTime;
+    private volatile double estPeriod;
+    private volatile long estPhaseError;
+    private volatile boolean estLocked;
+
+    public MidiClock() {
+        this(Clock.instance());
+    }
+
+    public MidiClock(Clock clock) {
+        this.clock = clock;
+    }
+
     public void reset() {
-        midiClockStart = 0;
-        midiClockCount = 0;
+        // applied with the next pulse, on the dispatch thread
+        resetRequested = true;
     }
 
     public int getBpm() {
         return bpm;
     }
 
+    public long getOutlierCount() {
+        return outlierCount;
+    }
+
+    public boolean getEstimate(Estimate estimate, long now) {
+        // copies the current estimate, returns false if there is none or the clock stopped
+        long v;
+        do {
+            v = version;
+            estimate.pulse = estPulse;
+            estimate.pulseTime = estPulseTime;
+            estimate.period = estPeriod;
+            estimate.phaseError = estPhaseError;
+            estimate.locked = estLocked;
+        } while (0 != (v & 1) || v != version);
+
+        estimate.version = v;
+
+        if (0 == v || estimate.period <= 0.0) {
+            estimate.locked = false;
+            return false;
+        }
+
+        if (now - estimate.pulseTime > Constants.MIDI_CLOCK_TIMEOUT) {
+            estimate.locked = false; // no clock anymore
+            return false;
+        }
+
+        return true;
+    }
+
     public void update() {
-        // midi sends 96 updates per measure
+        update(clock.microTime());
+    }
 
-        double quartersPerMeasure = Constants.NUM_QUARTERS_PER_MEASURE;
-        double midiRtClockUpdatesPerMeasure = (double) MIDI_REALTIME_CLOCK_UPDATES_PER_MEASURE;
+    public void update(long timestamp) {
+        // timestamp of the received pulse, MICROSECONDS
+
+        long t = timestamp * 1000;
+
+        if (resetRequested) {
+            resetRequested = false;
+            active = false;
+        }
 
-        long now = System.nanoTime()/1000;
+        long gap = t - lastPulseTime;
+        lastPulseTime = t;
 
-        long updateDelay = now - midiClockLastUpdate;
-        midiClockLastUpdate = now;
-        if (updateDelay > 1000000) {
-            // last was too long ago, reset
-            midiClockStart = now;
-            midiClockCount = 0;
+        if (!active || gap > Constants.MIDI_CLOCK_TIMEOUT) {
+            // first pulse: position only
+            active = true;
+            pulse = 0;
+            phase = t;
+            period = 0.0;
+            filterCount = 1;
+            goodPulses = 0;
+            outliers = 0;
+            ignoredPulses = 0;
+            publish(0);
             return;
         }
 
-        midiClockCount++;
+        if (period <= 0.0) {
+            // second pulse: first period
+            if (gap <= 0) {
+                return;
+            }
+            pulse = 1;
+            phase = t;
+            period = gap;
+            filterCount = 2;
+            publish(0);
+            return;
+        }
+
+        // pulses missing in between are part of the gap
+        long gapPulses = Math.max(1, Math.round(gap / period));
+        long steps = ignoredPulses + gapPulses;
+        double predicted = phase + steps * period;
+        double error = t - predicted;
 
-        long elapsed = now - midiClockStart;
-        if (elapsed < UPDATE_BUFFER_TIME) {
+        if (Math.abs(error) > OUTLIER_LIMIT * period) {
+            outlierCount++;
+            if (++outliers <= MAX_OUTLIERS) {
+                ignoredPulses = steps; // the next pulse decides
+                return;
+            }
+            // outliers in a row: the tempo jumped, acquire again from here
+            pulse += steps;
+            phase = t;
+            period = (double) gap / gapPulses;
+            filterCount = 2;
+            goodPulses = 0;
+            outliers = 0;
+            ignoredPulses = 0;
+            publish((long) error);
             return;
         }
+        outliers = 0;
+        ignoredPulses = 0;
 
-        // calculate avg. bpm
-        double elapsedSeconds = (double) elapsed / 1000000.0;
-        double updatesPerSecond = (double) midiClockCount / elapsedSeconds;
-        double measuredBpm = (updatesPerSecond * 60.0 * quartersPerMeasure / midiRtClockUpdatesPerMeasure);
+        int n = Math.min(++filterCount, Constants.MIDI_CLOCK_FILTER_LENGTH);
+        double alpha = (2.0 * (2.0 * n - 1.0)) / (n * (n + 1.0));
+        double beta = 6.0 / (n * (n + 1.0));
 
-        //Logger.d(TAG, "measured bpm: " + measuredBpm);
+        pulse += steps;
+        phase = predicted + alpha * error;
+        period += beta * error / steps;
 
-        // reset counters
-        midiClockStart = now;
-        midiClockCount = 0;
+        if (Math.abs(error) < LOCK_LIMIT * period) {
+            goodPulses++;
+        } else {
+            goodPulses = 0;
+        }
+
+        publish((long) error);
 
-        // update bpm value
-        int newBpm = (int) (measuredBpm + 0.5);
-        if (newBpm != bpm) {
-            bpm = newBpm;
+        // integer tempo for display and as fallback when the clock stops
+        double bpmExact = 60000000000.0 / (period * PULSES_PER_QUARTER);
+        if (goodPulses >= LOCK_PULSES && Math.abs(bpmExact - bpm) > 0.6) {
+            bpm = (int) (bpmExact + 0.5);
             onBpmChanged(bpm);
         }
+    }
 
+    private void publish(long phaseError) {
+        long v = version;
+        version = v + 1;
+        estPulse = pulse;
+        estPulseTime = (long) phase;
+        estPeriod = period;
+        estPhaseError = phaseError;
+        estLocked = goodPulses >= LOCK_PULSES;
+        version = v + 2;
     }
 
     protected void onBpmChanged(int bpm) {
@@ -0,0 +1,162 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.LatencyHistogram;
+import com.beatmaker.core.utils.PrecisionWaiter;
+import com.beatmaker.core.utils.SystemUtils;
+
+public class MidiClockMaster {
+
+    /*
+        Dedicated output path for realtime messages (clock, start, continue,
+        stop) while BeatMaker is the clock source.
+
+        The sequencer queues each message with its due time, in order, into
+        a ring of its own. A separate high-priority thread waits for every
+        due time with a PrecisionWaiter and transmits the message to all
+        output ports right away, so pulses never wait in the staging buffers
+        or batches of note output.
+
+        Lateness of every transmitted pulse is recorded, see getJitter().
+    */
+
+    private static final String TAG = "MidiClockMaster";
+
+    private static final int QUEUE_SIZE = 256; // power of two
+
+    public static final long CLOCK = MidiEvent.pack(0xf, 0xf8, 0, 0);
+    public static final long START = MidiEvent.pack(0xf, 0xfa, 0, 0);
+    public static final long CONTINUE = MidiEvent.pack(0xf, 0xfb, 0, 0);
+    public static final long STOP = MidiEvent.pack(0xf, 0xfc, 0, 0);
+
+    private final MidiBase midi;
+    private final MidiRingBuffer queue;
+    private final PrecisionWaiter waiter;
+    private final LatencyHistogram jitter = new LatencyHistogram();
+
+    // messages queued before this count are dropped (stop)
+    private long queued = 0; // producer only
+    private volatile long dropBefore = 0;
+
+    private Thread thread;
+
+    public MidiClockMaster(MidiBase midi) {
+        this.midi = midi;
+        this.queue = new MidiRingBuffer(QUEUE_SIZE, MidiWaitStrategy.create(Constants.MIDI_QUEUE_WAIT_STRATEGY, midi.getTimeClock()));
+        this.waiter = new PrecisionWaiter(midi.getTimeClock(), Constants.PRECISION_WAIT_SPIN_BUDGET, true);
+    }
+
+    public synchronized void start() {
+        if (null != thread) return;
+
+        thread = new Thread() {
+            @Override
+            public void run() {
+                outputLoop();
+            }
+        };
+        thread.setName("midi clock thread");
+        thread.start();
+        midi.getTimeClock().attach(thread);
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+
+        if (null != t) {
+            t.interrupt();
+            try {
+                t.join(500);
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    public boolean isRunning() {
+        return (null != thread);
+    }
+
+    public LatencyHistogram getJitter() {
+        // MICROSECONDS between due time and transmission, per pulse
+        return jitter;
+    }
+
+    /* sequencer thread */
+
+    public void sendStart(long songPulse, long dueTime) {
+        // start from the beginning, or continue from a song position. The song position
+        // pointer counts MIDI beats of 6 pulses, songPulse must be a multiple of 6
+        if (0 == songPulse) {
+            post(START, dueTime);
+        } else {
+            long beats = Math.min(songPulse / 6, 0x3fff);
+            post(MidiEvent.pack(0x3, 0xf2, (int) (beats & 0x7f), (int) (beats >> 7)), dueTime);
+            post(CONTINUE, dueTime);
+        }
+    }
+
+    public void sendClock(long dueTime) {
+        post(CLOCK, dueTime);
+    }
+
+    public void sendStop() {
+        // pulses still waiting are dropped, stop goes out immediately
+        dropBefore = queued;
+        post(STOP, 0);
+        waiter.wakeup();
+    }
+
+    private void post(long event, long dueTime) {
+        if (queue.offer(event, dueTime)) {
+            queued++;
+        }
+    }
+
+    /* output thread */
+
+    private void outputLoop() {
+
+        SystemUtils.setPriority(Settings.instance().getPriorities().midiClockThreadPriority);
+
+        long[] message = new long[1];
+        long consumed = 0;
+
+        while (!Thread.interrupted()) {
+
+            if (!queue.waitForData(250)) {
+                continue;
+            }
+
+            if (consumed < dropBefore) {
+                queue.release(1);
+                consumed++;
+                continue;
+            }
+
+            long event = queue.getEvent(0);
+            long dueTime = queue.getTimestamp(0);
+
+            if (dueTime > 0) {
+                if (!waiter.waitUntil(dueTime * 1000)) {
+                    break;
+                }
+                if (consumed < dropBefore || midi.getTimeMicros() < dueTime) {
+                    continue; // stopped or woken up early, look again
+                }
+            }
+
+            queue.release(1);
+            consumed++;
+
+            if (dueTime > 0 && CLOCK == event) {
+                jitter.add(midi.getTimeMicros() - dueTime);
+            }
+
+            message[0] = event;
+            for (MidiOutputPort outputPort : midi.getOutputPorts()) {
+                outputPort.transmit(message, 1, 0);
+            }
+        }
+    }
+}
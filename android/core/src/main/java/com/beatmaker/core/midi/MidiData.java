@@ -32,6 +32,15 @@ public class MidiData {
         copy(m);
     }
 
+    public void set(long timestamp, int cable, int codeIndexNumber, int midi0, int midi1, int midi2) {
+        this.timestamp = timestamp;
+        this.cable = cable;
+        this.codeIndexNumber = codeIndexNumber;
+        this.midi0 = midi0;
+        this.midi1 = midi1;
+        this.midi2 = midi2;
+    }
+
     private void copy(MidiData m) {
         this.timestamp = m.timestamp;
         this.cable = m.cable;
@@ -66,7 +75,7 @@ public class MidiData {
         int i = ofs;
 
         cable = (buffer[i]&0xf0)>>4;
-        codeIndexNumber =  buffer[0]&0x0f; i++;
+        codeIndexNumber =  buffer[i]&0x0f; i++;
         midi0 = 0xff & buffer[i]; i++;
         midi1 = 0xff & buffer[i]; i++;
         midi2 = 0xff & buffer[i]; i++;
@@ -1,214 +1,388 @@
 package com.beatmaker.core.midi;
 
-import static com.beatmaker.core.utils.StringUtils.toHex;
-
+import com.beatmaker.config.Constants;
 import com.beatmaker.core.utils.Logger;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class MidiDispatcher {
 
+    /*
+        Dispatches input events to the listeners of their USB-MIDI cable.
+
+        The status byte selects a handler from a precomputed 256 entry table,
+        listeners are kept in immutable arrays that are replaced on every
+        registration (copy-on-write), so the dispatch thread never locks or
+        iterates a collection that another thread modifies.
+
+        Logging is opt-in per message class (LOG_*), enabled classes write
+        binary log records, no strings are built on the dispatch thread.
+    */
+
     private static final String TAG = "MidiDispatcher";
 
-    private Set<MidiInputListener> listeners = new HashSet<>();
+    private static final int FMT_CABLE = Logger.register(TAG, "cable: {}");
+    private static final int FMT_NOTE_OFF = Logger.register(TAG, "note off: {}, {}");
+    private static final int FMT_NOTE_ON = Logger.register(TAG, "note on: {}, {}, {}");
+    private static final int FMT_POLY_KEY_PRESS = Logger.register(TAG, "poly key press: {}, {}, {}");
+    private static final int FMT_CHANNEL_MODE = Logger.register(TAG, "channel mode message: {}, {} = {}");
+    private static final int FMT_CONTROL_CHANGE = Logger.register(TAG, "control change: {}, {} = {}");
+    private static final int FMT_PROGRAM_CHANGE = Logger.register(TAG, "program change: {}, {}");
+    private static final int FMT_CHANNEL_PRESSURE = Logger.register(TAG, "channel pressure change: {}, {}");
+    private static final int FMT_PITCH_BEND = Logger.register(TAG, "pitch bend change: {}, {}");
+    private static final int FMT_SYSTEM_COMMON = Logger.register(TAG, "system common message: {}, {}, {}");
+    private static final int FMT_QUARTER_FRAME = Logger.register(TAG, "quarter frame: piece {}, value {}");
+    private static final int FMT_SONG_POSITION = Logger.register(TAG, "song position: {}");
+    private static final int FMT_TUNE_REQUEST = Logger.register(TAG, "tune request");
+    private static final int FMT_START = Logger.register(TAG, "start");
+    private static final int FMT_CONTINUE = Logger.register(TAG, "continue");
+    private static final int FMT_STOP = Logger.register(TAG, "stop");
+    private static final int FMT_RESET = Logger.register(TAG, "reset");
+    private static final int FMT_UNDEFINED = Logger.register(TAG, "single byte: {}");
+    private static final int FMT_SYSEX = Logger.register(TAG, "sysex: cable {}, {} bytes");
+
+    private static final int NUM_CABLES = 16;
+
+    // message classes for logging
+    public static final int LOG_NOTE = 0x1;
+    public static final int LOG_CONTROL_CHANGE = 0x2;
+    public static final int LOG_PROGRAM_CHANGE = 0x4;
+    public static final int LOG_PRESSURE = 0x8;
+    public static final int LOG_PITCH_BEND = 0x10;
+    public static final int LOG_SYSTEM_COMMON = 0x20;
+    public static final int LOG_REALTIME = 0x40;
+    public static final int LOG_SYSEX = 0x80;
+    public static final int LOG_UNHANDLED = 0x100;
+    public static final int LOG_ALL = 0x1ff;
+
+    // handlers
+    private static final byte NONE = 0;
+    private static final byte NOTE_OFF = 1;
+    private static final byte NOTE_ON = 2;
+    private static final byte POLY_KEY_PRESS = 3;
+    private static final byte CONTROL_CHANGE = 4;
+    private static final byte PROGRAM_CHANGE = 5;
+    private static final byte CHANNEL_PRESSURE = 6;
+    private static final byte PITCH_BEND = 7;
+    private static final byte SYSTEM_COMMON = 8;
+    private static final byte TUNE_REQUEST = 9;
+    private static final byte CLOCK = 10;
+    private static final byte START = 11;
+    private static final byte CONTINUE = 12;
+    private static final byte STOP = 13;
+    private static final byte ACTIVE_SENSING = 14;
+    private static final byte RESET = 15;
+    private static final byte UNDEFINED = 16;
+    private static final byte SONG_POSITION = 17;
+    private static final byte QUARTER_FRAME = 18;
+
+    // handler per status byte, data bytes (0x00 - 0x7f) have none
+    private static final byte[] HANDLERS = new byte[256];
+
+    static {
+        for (int status = 0x80; status < 0xf0; status++) {
+            switch (status >> 4) {
+                case 0x8: HANDLERS[status] = NOTE_OFF; break;
+                case 0x9: HANDLERS[status] = NOTE_ON; break;
+                case 0xa: HANDLERS[status] = POLY_KEY_PRESS; break;
+                case 0xb: HANDLERS[status] = CONTROL_CHANGE; break;
+                case 0xc: HANDLERS[status] = PROGRAM_CHANGE; break;
+                case 0xd: HANDLERS[status] = CHANNEL_PRESSURE; break;
+                case 0xe: HANDLERS[status] = PITCH_BEND; break;
+            }
+        }
+        for (int status = 0xf0; status <= 0xff; status++) {
+            HANDLERS[status] = UNDEFINED;
+        }
+        HANDLERS[0xf1] = QUARTER_FRAME; // MTC
+        HANDLERS[0xf2] = SONG_POSITION;
+        HANDLERS[0xf3] = SYSTEM_COMMON; // song select
+        HANDLERS[0xf6] = TUNE_REQUEST;
+        HANDLERS[0xf8] = CLOCK;
+        HANDLERS[0xfa] = START;
+        HANDLERS[0xfb] = CONTINUE;
+        HANDLERS[0xfc] = STOP;
+        HANDLERS[0xfe] = ACTIVE_SENSING;
+        HANDLERS[0xff] = RESET;
+    }
+
+    private static final MidiInputListener[] NO_LISTENERS = new MidiInputListener[0];
+
+    // listeners per USB-MIDI cable, default listeners are on cable 0. replaced, never modified
+    private volatile MidiInputListener[][] cableListeners;
+    private final Object listenerLock = new Object();
+
+    private volatile int logMask = Constants.MIDI_DISPATCH_LOG_MASK;
+
     private MidiClock midiClock;
-    private Thread dispatchThread;
+    private MidiTimecode midiTimecode;
+
+    private final MidiSysexAssembler sysex = new MidiSysexAssembler(new MidiSysexAssembler.Consumer() {
+        @Override
+        public void onSysex(MidiSysexAssembler.Buffer buffer) {
+            // called from the sysex thread
+            int cable = buffer.getCable();
+            if (0 != (logMask & LOG_SYSEX)) {
+                Logger.d(FMT_SYSEX, cable, buffer.getLength());
+            }
+            if (null != midiTimecode && buffer.isComplete()) {
+                midiTimecode.updateFullFrame(buffer.getData(), buffer.getLength());
+            }
+            for (MidiInputListener listener : cableListeners[cable]) {
+                if (buffer.isAborted()) {
+                    listener.onSysexAborted(cable);
+                } else if (buffer.isComplete()) {
+                    listener.onSysex(cable, buffer.getData(), buffer.getLength());
+                } else {
+                    listener.onSysexChunk(cable, buffer.getData(), buffer.getLength(), buffer.isFirst(), buffer.isLast());
+                }
+            }
+        }
+    });
 
     public MidiDispatcher(MidiClock midiClock) {
+        this(midiClock, null);
+    }
+
+    public MidiDispatcher(MidiClock midiClock, MidiTimecode midiTimecode) {
         this.midiClock = midiClock;
+        this.midiTimecode = midiTimecode;
+        MidiInputListener[][] listeners = new MidiInputListener[NUM_CABLES][];
+        for (int i = 0; i < NUM_CABLES; i++) {
+            listeners[i] = NO_LISTENERS;
+        }
+        cableListeners = listeners;
+    }
+
+    public void stop() {
+        // any thread, partial messages are dropped by the dispatch thread
+        sysex.stop();
+        sysex.reset();
+    }
+
+    public void setLogMask(int logMask) {
+        this.logMask = logMask;
+    }
+
+    public int getLogMask() {
+        return logMask;
     }
 
     public void addInputListener(MidiInputListener midiInputListener) {
-        listeners.add(midiInputListener);
+        addInputListener(midiInputListener, 0);
+    }
+
+    public void addInputListener(MidiInputListener midiInputListener, int cable) {
+        if (null == midiInputListener) {
+            return;
+        }
+
+        cable &= 0xf;
+
+        synchronized (listenerLock) {
+            MidiInputListener[][] listeners = without(cableListeners, midiInputListener);
+            MidiInputListener[] current = listeners[cable];
+            MidiInputListener[] updated = new MidiInputListener[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = midiInputListener;
+            listeners[cable] = updated;
+            cableListeners = listeners;
+        }
     }
 
     public void removeInputListener(MidiInputListener midiInputListener) {
-        listeners.remove(midiInputListener);
+        synchronized (listenerLock) {
+            cableListeners = without(cableListeners, midiInputListener);
+        }
     }
 
     public void removeAllInputListeners() {
-        listeners.clear();
+        synchronized (listenerLock) {
+            MidiInputListener[][] listeners = new MidiInputListener[NUM_CABLES][];
+            for (int i = 0; i < NUM_CABLES; i++) {
+                listeners[i] = NO_LISTENERS;
+            }
+            cableListeners = listeners;
+        }
+    }
+
+    private static MidiInputListener[][] without(MidiInputListener[][] listeners, MidiInputListener midiInputListener) {
+        // copy with the listener removed from all cables
+        MidiInputListener[][] copy = listeners.clone();
+        for (int cable = 0; cable < copy.length; cable++) {
+            MidiInputListener[] current = copy[cable];
+            int count = 0;
+            for (MidiInputListener listener : current) {
+                if (listener != midiInputListener) count++;
+            }
+            if (count == current.length) {
+                continue;
+            }
+            MidiInputListener[] updated = (0 == count) ? NO_LISTENERS : new MidiInputListener[count];
+            int i = 0;
+            for (MidiInputListener listener : current) {
+                if (listener != midiInputListener) updated[i++] = listener;
+            }
+            copy[cable] = updated;
+        }
+        return copy;
     }
 
     public void dispatch(MidiData midiData) {
 
+        int cable = midiData.getCable();
+        MidiInputListener[] listeners = cableListeners[cable];
+
+        if (cable != 0x0 && 0 == listeners.length) {
+            // Yamaha MODX/Montage: cable 1 could be used for the "Mackie Control Protocol"
+            if (0 != (logMask & LOG_UNHANDLED)) {
+                Logger.d(FMT_CABLE, cable);
+            }
+            return;
+        }
+
         for (MidiInputListener listener : listeners) {
             if (listener.onData(midiData)) {
                 return;
             }
         }
 
-        int cable = midiData.getCable();
         int codeIndexNumber = midiData.getCodeIndexNumber();
         int midi0 = midiData.getMidi0();
         int midi1 = midiData.getMidi1();
         int midi2 = midiData.getMidi2();
 
-        if (cable != 0x0) {
-            // Yamaha MODX/Montage: cable 1 could be used for the "Mackie Control Protocol"
-            Logger.d(TAG, "cable: " + cable);
+        if (MidiSysexAssembler.isSysex(codeIndexNumber, midi0)) {
+            // sysex starts, continues or ends, first byte may be a data byte
+            sysex.add(cable, codeIndexNumber, midi0, midi1, midi2);
             return;
         }
 
-        switch (codeIndexNumber) {
-            case 0x0: // miscellaneous function codes. reserved for future extensions
+        int mask = logMask;
+        int midiChannel = midi0 & 0xf;
+
+        switch (HANDLERS[midi0 & 0xff]) {
+            case NOTE_OFF:
+            {
+                if (0 != (mask & LOG_NOTE)) Logger.d(FMT_NOTE_OFF, midiChannel, midi1);
+                for (MidiInputListener listener : listeners) { listener.onNoteOff(midiChannel, midi1); }
+                break;
+            }
+            case NOTE_ON:
+            {
+                if (midi2 > 0) {
+                    if (0 != (mask & LOG_NOTE)) Logger.d(FMT_NOTE_ON, midiChannel, midi1, midi2);
+                    for (MidiInputListener listener : listeners) { listener.onNoteOn(midiChannel, midi1, midi2); }
+                } else {
+                    if (0 != (mask & LOG_NOTE)) Logger.d(FMT_NOTE_OFF, midiChannel, midi1);
+                    for (MidiInputListener listener : listeners) { listener.onNoteOff(midiChannel, midi1); }
+                }
+                break;
+            }
+            case POLY_KEY_PRESS:
             {
+                if (0 != (mask & LOG_PRESSURE)) Logger.d(FMT_POLY_KEY_PRESS, midiChannel, midi1, midi2);
+                for (MidiInputListener listener : listeners) { listener.onPolyKeyPress(midiChannel, midi1, midi2); }
                 break;
             }
-            case 0x1: // cable events. reserved for future expansion
+            case CONTROL_CHANGE:
             {
+                if (midi1 >= 120) {
+                    if (0 != (mask & LOG_CONTROL_CHANGE)) Logger.d(FMT_CHANNEL_MODE, midiChannel, midi1, midi2);
+                    for (MidiInputListener listener : listeners) { listener.onChannelModeMessage(midiChannel, midi1, midi2); }
+                } else {
+                    if (0 != (mask & LOG_CONTROL_CHANGE)) Logger.d(FMT_CONTROL_CHANGE, midiChannel, midi1, midi2);
+                    for (MidiInputListener listener : listeners) { listener.onControlChange(midiChannel, midi1, midi2); }
+                }
                 break;
             }
-            case 0x2: // 2-byte system common message (2 bytes)
+            case PROGRAM_CHANGE:
             {
-                Logger.d(TAG, "system common message");
+                if (0 != (mask & LOG_PROGRAM_CHANGE)) Logger.d(FMT_PROGRAM_CHANGE, midiChannel, midi1);
+                for (MidiInputListener listener : listeners) { listener.onProgramChange(midiChannel, midi1); }
                 break;
             }
-            case 0x3: // 3-byte system common message (3 bytes)
+            case CHANNEL_PRESSURE:
             {
-                Logger.d(TAG, "system common message");
+                if (0 != (mask & LOG_PRESSURE)) Logger.d(FMT_CHANNEL_PRESSURE, midiChannel, midi1);
+                for (MidiInputListener listener : listeners) { listener.onChannelPressure(midiChannel, midi1); }
                 break;
             }
-            case 0x4: // sysex starts or continues (3 bytes)
+            case PITCH_BEND:
             {
-                Logger.d(TAG, "sysex start or continue");
+                int value = (midi2 * 128) + midi1 - 8192;
+                if (0 != (mask & LOG_PITCH_BEND)) Logger.d(FMT_PITCH_BEND, midiChannel, value);
+                for (MidiInputListener listener : listeners) { listener.onPitchBendChange(midiChannel, value); }
                 break;
             }
-            case 0x5: // 1-byte system common message or sysex ends with next byte (1 byte)
+            case SYSTEM_COMMON:
             {
-                Logger.d(TAG, "sysex end");
+                if (0 != (mask & LOG_SYSTEM_COMMON)) Logger.d(FMT_SYSTEM_COMMON, midi0, midi1, midi2);
                 break;
             }
-            case 0x6: // sysex ends with next 2 bytes (2 bytes)
+            case QUARTER_FRAME:
             {
-                Logger.d(TAG, "sysex end");
+                if (0 != (mask & LOG_SYSTEM_COMMON)) Logger.d(FMT_QUARTER_FRAME, midi1 >> 4, midi1 & 0xf);
+                if (null != midiTimecode) {
+                    midiTimecode.update(midi1, midiData.getTimestamp());
+                }
                 break;
             }
-            case 0x7: // sysex ends with next 3 bytes (3 bytes)
+            case SONG_POSITION:
             {
-                Logger.d(TAG, "sysex end");
+                int position = (midi2 << 7) | midi1;
+                if (0 != (mask & LOG_SYSTEM_COMMON)) Logger.d(FMT_SONG_POSITION, position);
+                for (MidiInputListener listener : listeners) { listener.onSongPosition(position); }
                 break;
             }
-            case 0x8: // note off (3 bytes)
+            case TUNE_REQUEST:
             {
-                int midiChannel = midi0 & 0xf;
-                int pitch = midi1;
-                int velocity = midi2;
-                Logger.d(TAG, "note off: " + midiChannel + ", " + pitch);
-                for (MidiInputListener listener : listeners) { listener.onNoteOff(midiChannel, pitch); }
+                if (0 != (mask & LOG_SYSTEM_COMMON)) Logger.d(FMT_TUNE_REQUEST);
+                for (MidiInputListener listener : listeners) { listener.onTuneRequest(); }
                 break;
             }
-            case 0x9: // note on (3 bytes)
+            case CLOCK:
             {
-                int midiChannel = midi0 & 0xf;
-                int pitch = midi1;
-                int velocity = midi2;
-
-                if (velocity > 0) {
-                    Logger.d(TAG, "note on: " + midiChannel + ", " + pitch + ", " + velocity);
-                    for (MidiInputListener listener : listeners) { listener.onNoteOn(midiChannel, pitch, velocity); }
-                } else {
-                    Logger.d(TAG, "note off: " + midiChannel + ", " + pitch);
-                    for (MidiInputListener listener : listeners) { listener.onNoteOff(midiChannel, pitch); }
+                if (null != midiClock) {
+                    midiClock.update(midiData.getTimestamp());
                 }
+                for (MidiInputListener listener : listeners) { listener.onClock(); }
                 break;
             }
-            case 0xa: // poly key press (3 bytes)
+            case START:
             {
-                int midiChannel = midi0 & 0xf;
-                int key = midi1;
-                int pressure = midi2;
-                Logger.d(TAG, "poly key press: " + midiChannel + ", " + key + ", " + pressure);
-                for (MidiInputListener listener : listeners) {  listener.onPolyKeyPress(midiChannel, key, pressure); }
+                if (0 != (mask & LOG_REALTIME)) Logger.d(FMT_START);
+                for (MidiInputListener listener : listeners) { listener.onStart(); }
                 break;
             }
-            case 0xb: // control change (3 bytes)
+            case CONTINUE:
             {
-                int midiChannel = midi0 & 0xf;
-                int controller = midi1;
-                int value = midi2;
-
-                if (controller >= 120) {
-                    for (MidiInputListener listener : listeners) { listener.onChannelModeMessage(midiChannel, controller, value); }
-                    Logger.d(TAG, "channel mode message: " + midiChannel + ", " + controller + " = " + value);
-                } else {
-                    for (MidiInputListener listener : listeners) { listener.onControlChange(midiChannel, controller, value); }
-                    if (controller != 64) { // filter sustain pedal
-                        Logger.d(TAG, "control change: " + midiChannel + ", " + controller + " = " + value);
-                    }
-                }
-
+                if (0 != (mask & LOG_REALTIME)) Logger.d(FMT_CONTINUE);
+                for (MidiInputListener listener : listeners) { listener.onContinue(); }
                 break;
             }
-            case 0xc: // program change (2 bytes)
+            case STOP:
             {
-                int midiChannel = midi0 & 0xf;
-                int program = midi1;
-                Logger.d(TAG, "program change: " + midiChannel + ", " + program);
-                for (MidiInputListener listener : listeners) { listener.onProgramChange(midiChannel, program); }
+                if (0 != (mask & LOG_REALTIME)) Logger.d(FMT_STOP);
+                for (MidiInputListener listener : listeners) { listener.onStop(); }
                 break;
             }
-            case 0xd: // channel pressure (2 bytes)
+            case ACTIVE_SENSING:
             {
-                int midiChannel = midi0 & 0xf;
-                int pressure = midi1;
-                Logger.d(TAG, "channel pressure change: " + midiChannel + ", " + pressure);
-                for (MidiInputListener listener : listeners) { listener.onChannelPressure(midiChannel, pressure); }
+                for (MidiInputListener listener : listeners) { listener.onActiveSensing(); }
                 break;
             }
-            case 0xe: // pitch bend change (3 bytes)
+            case RESET:
             {
-                int midiChannel = midi0 & 0xf;
-                int value = (midi2 * 128) + midi1 - 8192;
-                Logger.d(TAG, "pitch bend change: " + midiChannel + ", " + value);
-                for (MidiInputListener listener : listeners) { listener.onPitchBendChange(midiChannel, value); }
+                if (0 != (mask & LOG_REALTIME)) Logger.d(FMT_RESET);
+                for (MidiInputListener listener : listeners) { listener.onReset(); }
                 break;
             }
-            case 0xf: // single byte (1 byte)
-            {
-                int msg = midi0;
-
-                switch (msg) {
-                    case 0xf6:
-                        Logger.d(TAG, "tune request");
-                        for (MidiInputListener listener : listeners) { listener.onTuneRequest(); }
-                        break;
-                    case 0xf8:
-                        //Logger.d(TAG, "realtime clock");
-                        if (null != midiClock) {
-                            midiClock.update();
-                        }
-                        for (MidiInputListener listener : listeners) { listener.onClock(); }
-                        break;
-                    case 0xfa:
-                        Logger.d(TAG, "start");
-                        for (MidiInputListener listener : listeners) { listener.onStart(); }
-                        break;
-                    case 0xfb:
-                        Logger.d(TAG, "continue");
-                        for (MidiInputListener listener : listeners) { listener.onContinue(); }
-                        break;
-                    case 0xfc:
-                        Logger.d(TAG, "stop");
-                        for (MidiInputListener listener : listeners) { listener.onStop(); }
-                        break;
-                    case 0xfe:
-                        //Logger.d(TAG, "active sensing");
-                        for (MidiInputListener listener : listeners) { listener.onActiveSensing(); }
-                        break;
-                    case 0xff:
-                        Logger.d(TAG, "reset");
-                        for (MidiInputListener listener : listeners) { listener.onReset(); }
-                        break;
-                    default:
-                        Logger.d(TAG, "single byte: " + toHex(midi0));
-                        break;
-                }
-
+            case UNDEFINED:
+            {
+                if (0 != (mask & LOG_UNHANDLED)) Logger.d(FMT_UNDEFINED, midi0);
                 break;
             }
-            default: {
+            default: // NONE
+            {
                 break;
             }
         }
@@ -0,0 +1,158 @@
+package com.beatmaker.core.midi;
+
+public class MidiEvent {
+
+    /*
+        Packed MIDI event (64 bits, MSB first):
+
+            TIMESTAMP DELTA (32) | CABLE (4) | CIN (4) | MIDI0 (8) | MIDI1 (8) | MIDI2 (8)
+
+        The delta is an unsigned offset in microseconds to the base time of the
+        batch the event belongs to (about 71 minutes of range). The lower 32 bits
+        are the USB-MIDI packet in wire order.
+    */
+
+    private static final int DELTA_SHIFT = 32;
+    private static final int CABLE_SHIFT = 28;
+    private static final int CIN_SHIFT = 24;
+    private static final int MIDI0_SHIFT = 16;
+    private static final int MIDI1_SHIFT = 8;
+
+    public static final long MAX_DELTA = 0xffffffffL;
+    public static final long PACKET_MASK = 0xffffffffL;
+
+    public static long pack(long delta, int cable, int codeIndexNumber, int midi0, int midi1, int midi2) {
+        return (Math.min(Math.max(delta, 0), MAX_DELTA) << DELTA_SHIFT)
+                | ((long) (cable & 0xf) << CABLE_SHIFT)
+                | ((long) (codeIndexNumber & 0xf) << CIN_SHIFT)
+                | ((long) (midi0 & 0xff) << MIDI0_SHIFT)
+                | ((long) (midi1 & 0xff) << MIDI1_SHIFT)
+                | (long) (midi2 & 0xff);
+    }
+
+    public static long pack(int codeIndexNumber, int midi0, int midi1, int midi2) {
+        return pack(0, 0, codeIndexNumber, midi0, midi1, midi2);
+    }
+
+    public static long getDelta(long event) {
+        return event >>> DELTA_SHIFT;
+    }
+
+    public static long getTimestamp(long event, long baseTime) {
+        return baseTime + getDelta(event);
+    }
+
+    public static long setDelta(long event, long delta) {
+        return (event & PACKET_MASK) | (Math.min(Math.max(delta, 0), MAX_DELTA) << DELTA_SHIFT);
+    }
+
+    public static long rebase(long event, long fromBaseTime, long toBaseTime) {
+        return setDelta(event, fromBaseTime + getDelta(event) - toBaseTime);
+    }
+
+    public static int getCable(long event) {
+        return (int) (event >>> CABLE_SHIFT) & 0xf;
+    }
+
+    public static long setCable(long event, int cable) {
+        return (event & ~(0xfL << CABLE_SHIFT)) | ((long) (cable & 0xf) << CABLE_SHIFT);
+    }
+
+    public static int getCodeIndexNumber(long event) {
+        return (int) (event >>> CIN_SHIFT) & 0xf;
+    }
+
+    public static int getMidi0(long event) {
+        return (int) (event >>> MIDI0_SHIFT) & 0xff;
+    }
+
+    public static int getMidi1(long event) {
+        return (int) (event >>> MIDI1_SHIFT) & 0xff;
+    }
+
+    public static int getMidi2(long event) {
+        return (int) event & 0xff;
+    }
+
+    public static int getChannel(long event) {
+        return (int) (event >>> MIDI0_SHIFT) & 0xf;
+    }
+
+    public static int getCodeIndexNumberFromStatus(int status) {
+        // CIN for a message starting with the given status byte, -1 for sysex start or data bytes
+        if (status < 0x80 || status == 0xf0) {
+            return -1;
+        }
+        if (status < 0xf0) {
+            return status >> 4;
+        }
+        switch (status) {
+            case 0xf1: case 0xf3: return 0x2; // MTC quarter frame, song select
+            case 0xf2: return 0x3;            // song position pointer
+            case 0xf6: case 0xf7: return 0x5; // tune request, sysex end
+            default: return 0xf;              // realtime and undefined single bytes
+        }
+    }
+
+    public static long fromMessage(int cable, int status, int data1, int data2) {
+        // short MIDI message to packed event, -1 if it has no single packet form
+        int cin = getCodeIndexNumberFromStatus(status);
+        if (cin < 0) {
+            return -1;
+        }
+        int length = MidiPacketDecoder.getMessageLength(cin);
+        return pack(0, cable, cin, status, (length > 1) ? data1 : 0, (length > 2) ? data2 : 0);
+    }
+
+    public static long noteOn(int channel, int pitch, int velocity) {
+        return pack(0x9, 0x90 | (channel & 0xf), pitch, velocity);
+    }
+
+    public static long noteOff(int channel, int pitch) {
+        return pack(0x8, 0x80 | (channel & 0xf), pitch, 0);
+    }
+
+    public static boolean isNoteOff(long event) {
+        // note off, or note on with velocity 0
+        int cin = getCodeIndexNumber(event);
+        return 0x8 == cin || (0x9 == cin && 0 == getMidi2(event));
+    }
+
+    public static long controlChange(int channel, int controller, int value) {
+        return pack(0xb, 0xb0 | (channel & 0xf), controller, value);
+    }
+
+    public static int serialize(long event, byte[] buffer, int ofs, int length) {
+        // 4 byte USB-MIDI packet
+        if (length - ofs < 4) {
+            return 0;
+        }
+
+        buffer[ofs] = (byte) (event >>> CIN_SHIFT);
+        buffer[ofs + 1] = (byte) (event >>> MIDI0_SHIFT);
+        buffer[ofs + 2] = (byte) (event >>> MIDI1_SHIFT);
+        buffer[ofs + 3] = (byte) event;
+
+        return 4;
+    }
+
+    public static long deserialize(byte[] buffer, int ofs, long delta) {
+        // caller checks that 4 bytes are available
+        long packet = ((long) (buffer[ofs] & 0xff) << CIN_SHIFT)
+                | ((long) (buffer[ofs + 1] & 0xff) << MIDI0_SHIFT)
+                | ((long) (buffer[ofs + 2] & 0xff) << MIDI1_SHIFT)
+                | (long) (buffer[ofs + 3] & 0xff);
+
+        return (Math.min(Math.max(delta, 0), MAX_DELTA) << DELTA_SHIFT) | packet;
+    }
+
+    public static long fromMidiData(MidiData midiData, long baseTime) {
+        long delta = (0 != midiData.getTimestamp()) ? midiData.getTimestamp() - baseTime : 0;
+        return pack(delta, midiData.getCable(), midiData.getCodeIndexNumber(), midiData.getMidi0(), midiData.getMidi1(), midiData.getMidi2());
+    }
+
+    public static MidiData toMidiData(long event, long baseTime, MidiData target) {
+        target.set(getTimestamp(event, baseTime), getCable(event), getCodeIndexNumber(event), getMidi0(event), getMidi1(event), getMidi2(event));
+        return target;
+    }
+}
@@ -0,0 +1,160 @@
+package com.beatmaker.core.midi;
+
+public class MidiInputFilter {
+
+    /*
+        Decides on the input thread which events are queued for the dispatcher.
+        Filters are set per cable, channel, status and controller number and
+        compiled into one bitmask table, so accept() costs the same for every
+        event: one lookup for the status byte, one more for control changes.
+
+        Table layout per cable: 4 longs with one bit per status byte (sysex
+        packets use the bit of 0xF0), 2 longs with one bit per controller.
+    */
+
+    public static final int ALL_CABLES = -1;
+
+    private static final int NUM_CABLES = 16;
+    private static final int STATUS_WORDS = 4;
+    private static final int CONTROLLER_WORDS = 2;
+    private static final int CABLE_WORDS = STATUS_WORDS + CONTROLLER_WORDS;
+
+    // configuration, guarded by this
+    private final boolean[] cables = new boolean[NUM_CABLES];
+    private final short[] channels = new short[NUM_CABLES]; // bit per channel
+    private final long[] statuses = new long[NUM_CABLES * STATUS_WORDS]; // bit per status byte
+    private final long[] controllers = new long[NUM_CABLES * CONTROLLER_WORDS]; // bit per controller
+
+    private volatile long[] table = new long[NUM_CABLES * CABLE_WORDS];
+
+    public MidiInputFilter() {
+        acceptAll();
+    }
+
+    public synchronized void acceptAll() {
+        for (int cable = 0; cable < NUM_CABLES; cable++) {
+            cables[cable] = true;
+            channels[cable] = (short) 0xffff;
+            for (int i = 0; i < STATUS_WORDS; i++) statuses[cable * STATUS_WORDS + i] = -1L;
+            for (int i = 0; i < CONTROLLER_WORDS; i++) controllers[cable * CONTROLLER_WORDS + i] = -1L;
+        }
+        compile();
+    }
+
+    public synchronized void setCable(int cable, boolean accept) {
+        for (int c = first(cable); c <= last(cable); c++) {
+            cables[c] = accept;
+        }
+        compile();
+    }
+
+    public synchronized boolean isCableAccepted(int cable) {
+        return cables[cable & 0xf];
+    }
+
+    public synchronized void setChannel(int cable, int channel, boolean accept) {
+        // channel messages only
+        for (int c = first(cable); c <= last(cable); c++) {
+            channels[c] = (short) (accept ? (channels[c] | (1 << channel)) : (channels[c] & ~(1 << channel)));
+        }
+        compile();
+    }
+
+    public synchronized void setStatus(int cable, int status, boolean accept) {
+        // status byte: 0xF0 (sysex) to 0xFF for system messages, 0x80 - 0xE0
+        // selects the message class on all channels
+        status &= 0xff;
+        int from = status;
+        int to = status;
+        if (status < 0xf0) {
+            from = status & 0xf0;
+            to = from | 0xf;
+        }
+
+        for (int c = first(cable); c <= last(cable); c++) {
+            for (int s = from; s <= to; s++) {
+                setBit(statuses, c * STATUS_WORDS, s, accept);
+            }
+        }
+        compile();
+    }
+
+    public synchronized void setController(int cable, int controller, boolean accept) {
+        for (int c = first(cable); c <= last(cable); c++) {
+            setBit(controllers, c * CONTROLLER_WORDS, controller & 0x7f, accept);
+        }
+        compile();
+    }
+
+    public boolean accept(long midiEvent) {
+        long[] t = table;
+
+        int ofs = MidiEvent.getCable(midiEvent) * CABLE_WORDS;
+        int status = MidiEvent.getMidi0(midiEvent);
+        int codeIndexNumber = MidiEvent.getCodeIndexNumber(midiEvent);
+
+        if (MidiSysexAssembler.isSysex(codeIndexNumber, status)) {
+            status = 0xf0; // continuation packets start with data bytes
+        }
+
+        if (0 == ((t[ofs + (status >> 6)] >>> status) & 1)) {
+            return false;
+        }
+
+        if (0xb == codeIndexNumber) {
+            int controller = MidiEvent.getMidi1(midiEvent);
+            return 0 != ((t[ofs + STATUS_WORDS + (controller >> 6)] >>> controller) & 1);
+        }
+
+        return true;
+    }
+
+    private void compile() {
+        // guarded by this, publishes a new table
+        long[] t = new long[NUM_CABLES * CABLE_WORDS];
+
+        for (int cable = 0; cable < NUM_CABLES; cable++) {
+            if (!cables[cable]) {
+                continue;
+            }
+
+            int ofs = cable * CABLE_WORDS;
+
+            for (int status = 0x80; status <= 0xff; status++) {
+                if (!getBit(statuses, cable * STATUS_WORDS, status)) {
+                    continue;
+                }
+                if (status < 0xf0 && 0 == (channels[cable] & (1 << (status & 0xf)))) {
+                    continue;
+                }
+                t[ofs + (status >> 6)] |= 1L << status;
+            }
+
+            for (int i = 0; i < CONTROLLER_WORDS; i++) {
+                t[ofs + STATUS_WORDS + i] = controllers[cable * CONTROLLER_WORDS + i];
+            }
+        }
+
+        table = t;
+    }
+
+    private static int first(int cable) {
+        return (ALL_CABLES == cable) ? 0 : (cable & 0xf);
+    }
+
+    private static int last(int cable) {
+        return (ALL_CABLES == cable) ? NUM_CABLES - 1 : (cable & 0xf);
+    }
+
+    private static boolean getBit(long[] bits, int ofs, int index) {
+        return 0 != ((bits[ofs + (index >> 6)] >>> index) & 1);
+    }
+
+    private static void setBit(long[] bits, int ofs, int index, boolean value) {
+        if (value) {
+            bits[ofs + (index >> 6)] |= 1L << index;
+        } else {
+            bits[ofs + (index >> 6)] &= ~(1L << index);
+        }
+    }
+}
@@ -26,6 +26,10 @@ public class MidiInputListener {
     public void onPitchBendChange(int midiChannel, int value) {
     }
 
+    public void onSongPosition(int position) {
+        // MIDI beats (sixteenth notes, 6 clock pulses) since the start of the song
+    }
+
     public void onTuneRequest() {
     }
 
@@ -47,6 +51,18 @@ public class MidiInputListener {
     public void onChannelModeMessage(int midiChannel, int message, int value) {
     }
 
+    public void onSysex(int cable, byte[] data, int length) {
+        // complete message from F0 to F7, data is only valid during the call
+    }
+
+    public void onSysexChunk(int cable, byte[] data, int length, boolean first, boolean last) {
+        // messages longer than MIDI_SYSEX_MAX_SIZE arrive in order, in parts
+    }
+
+    public void onSysexAborted(int cable) {
+        // the chunked message in progress was cut off (too long, interrupted, overflow), throw away its parts
+    }
+
     public boolean onData(MidiData midiData) {
         // return false to let the dispatcher continue
         return false;
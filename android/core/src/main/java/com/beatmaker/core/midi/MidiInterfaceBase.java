@@ -10,6 +10,7 @@ public class MidiInterfaceBase {
     private static final String TAG = "MidiInterfaceBase";
 
     protected Set<MidiInterfaceListener> listeners = new HashSet<>();
+    protected volatile MidiInterfaceListener[] listenerArray = new MidiInterfaceListener[0]; // snapshot for the receive path
 
     protected String id;
     protected String alias;
@@ -26,16 +27,19 @@ public class MidiInterfaceBase {
         outputs = null;
     }
 
-    public void addListener(MidiInterfaceListener midiInterfaceListener) {
+    public synchronized void addListener(MidiInterfaceListener midiInterfaceListener) {
         listeners.add(midiInterfaceListener);
+        listenerArray = listeners.toArray(new MidiInterfaceListener[listeners.size()]);
     }
 
-    public void removeListener(MidiInterfaceListener midiInterfaceListener) {
+    public synchronized void removeListener(MidiInterfaceListener midiInterfaceListener) {
         listeners.remove(midiInterfaceListener);
+        listenerArray = listeners.toArray(new MidiInterfaceListener[listeners.size()]);
     }
 
-    public void removeAllListeners() {
+    public synchronized void removeAllListeners() {
         listeners.clear();
+        listenerArray = new MidiInterfaceListener[0];
     }
 
     public boolean hasInputs() {
@@ -147,6 +151,10 @@ public class MidiInterfaceBase {
         return port.send(midiData);
     }
 
+    public int send(MidiPortBase port, long midiEvent) {
+        return port.send(midiEvent);
+    }
+
     public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
         return -1; // not implemented
     }
@@ -1,5 +1,6 @@
 package com.beatmaker.core.midi;
 
 public interface MidiInterfaceListener {
-    void onData(MidiData midiData);
+    // packed event (MidiEvent) and receive time in MICROSECONDS
+    void onData(long midiEvent, long timestamp);
 }
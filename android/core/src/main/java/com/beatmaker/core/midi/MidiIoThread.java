@@ -2,27 +2,33 @@ package com.beatmaker.core.midi;
 
 public class MidiIoThread extends Thread {
 
-    private MidiQueue queue;
+    private MidiRingBuffer queue;
     private final MidiInterfaceBase midiInterface;
 
     public MidiIoThread(MidiInterfaceBase midiInterface) {
         this.midiInterface = midiInterface;
     }
 
-    public MidiQueue allocQueue(int size) {
+    public MidiRingBuffer allocQueue(int size) {
         freeQueue();
         if (null == queue) {
-            queue = new MidiQueue(size);
+            queue = new MidiRingBuffer(size);
         }
 
         return queue;
     }
 
+    public MidiRingBuffer allocQueue(int size, MidiWaitStrategy waitStrategy) {
+        freeQueue();
+        queue = new MidiRingBuffer(size, waitStrategy);
+        return queue;
+    }
+
     public void freeQueue() {
         queue = null;
     }
 
-    public MidiQueue getQueue() {
+    public MidiRingBuffer getQueue() {
         return queue;
     }
 }
@@ -0,0 +1,217 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.Logger;
+import com.beatmaker.core.utils.SystemUtils;
+
+public class MidiOutputPort {
+
+    /*
+        One physical output (interface + port). Every port has its own staging
+        buffer and transfer lock, in async mode also its own ring and output
+        thread, so a slow device never holds up the others.
+
+        The staging buffer is filled and flushed by the sequencer thread only.
+    */
+
+    private static final String TAG = "MidiOutputPort";
+
+    private static final long PAUSE_WAIT_TIME = 100000000; // NANOSECONDS
+
+    private final MidiBase midi;
+    private final MidiInterfaceBase midiInterface;
+    private final MidiPortBase port;
+    private final int portIndex;
+
+    // packed events (MidiEvent) staged until the next flush, deltas relative to baseTime
+    private final long[] events = new long[Constants.MIDI_OUTPUT_MAX_QUEUE_SIZE];
+    private int count = 0;
+    private long baseTime = 0;
+
+    private final Object producerLock = new Object();
+    private final Object deviceLock = new Object(); // one transfer at a time
+    private final byte[] packetBuffer; // guarded by deviceLock
+    private MidiIoThread outputThread;
+
+    MidiOutputPort(MidiBase midi, MidiInterfaceBase midiInterface, MidiPortBase port, int portIndex) {
+        this.midi = midi;
+        this.midiInterface = midiInterface;
+        this.port = port;
+        this.portIndex = portIndex;
+        this.packetBuffer = new byte[port.getMaxPacketSize()];
+    }
+
+    public MidiInterfaceBase getInterface() {
+        return midiInterface;
+    }
+
+    public MidiPortBase getPort() {
+        return port;
+    }
+
+    public int getPortIndex() {
+        return portIndex;
+    }
+
+    synchronized void start() {
+        if (!Constants.MIDI_OUTPUT_ASYNC_MODE || null != outputThread) {
+            return;
+        }
+
+        outputThread = new MidiIoThread(midiInterface) {
+            public void run() {
+                outputLoop(getQueue());
+            }
+        };
+        outputThread.setName("midi output thread " + midiInterface.getAlias() + ":" + portIndex);
+        outputThread.allocQueue(MidiRingBuffer.DEFAULT_SIZE, MidiWaitStrategy.create(Constants.MIDI_QUEUE_WAIT_STRATEGY, midi.getTimeClock()));
+        outputThread.start();
+        midi.getTimeClock().attach(outputThread);
+    }
+
+    synchronized void stop() {
+        MidiIoThread t = outputThread;
+        outputThread = null;
+
+        if (null != t) {
+            t.interrupt();
+            try {
+                t.join(500);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        count = 0;
+    }
+
+    /* staging, sequencer thread */
+
+    public void enqueue(long midiEvent, long timestamp) {
+        // delta bits of midiEvent are ignored
+        if (count >= events.length) return;
+
+        if (0 == count) {
+            baseTime = timestamp;
+        }
+
+        events[count++] = MidiEvent.setDelta(midiEvent, timestamp - baseTime);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void flush() {
+        if (0 == count) {
+            return;
+        }
+
+        send(events, count, baseTime);
+
+        count = 0;
+    }
+
+    public void flush(MidiScheduler scheduler, long dueTime) {
+        if (0 == count) {
+            return;
+        }
+
+        // release at the given due time instead of sending right away
+        scheduler.schedule(this, events, count, dueTime);
+
+        count = 0;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    /* output */
+
+    public int send(long[] midiEvents, int count, long baseTime) {
+
+        if (count < 1) {
+            return 0;
+        }
+
+        MidiIoThread t = outputThread;
+
+        if (null == t) {
+            return transmit(midiEvents, count, baseTime);
+        }
+
+        MidiRingBuffer queue = t.getQueue();
+        if (null == queue) {
+            return -1;
+        }
+
+        if (0 == baseTime) {
+            baseTime = midi.getTimeMicros();
+        }
+
+        int n;
+        synchronized (producerLock) {
+            n = queue.offer(midiEvents, 0, count, baseTime);
+        }
+
+        if (n < count) {
+            Logger.d(TAG, "output queue overflow");
+        }
+
+        return 0;
+    }
+
+    public int transmit(long[] midiEvents, int count, long baseTime) {
+        // straight to the device on the calling thread
+        synchronized (deviceLock) {
+            return midi.send(midiInterface, port, midiEvents, count, baseTime, packetBuffer);
+        }
+    }
+
+    private void outputLoop(MidiRingBuffer queue) {
+
+        long[] batch = new long[queue.capacity()];
+        long[] allNotesOff = new long[] { MidiEvent.controlChange(0, 0x7b, 0) };
+
+        SystemUtils.setPriority(Settings.instance().getPriorities().midiOutputThreadPriority);
+
+        {
+            // send all notes off before starting
+            transmit(allNotesOff, 1, 0);
+        }
+
+        while (!Thread.interrupted()) {
+
+            if (false == midiInterface.isConnected()) {
+                break;
+            }
+
+            if (midi.isPaused()) {
+                // the clock of MidiBase, a virtual clock keeps running meanwhile
+                if (!midi.getTimeClock().sleep(PAUSE_WAIT_TIME)) {
+                    break;
+                }
+                continue;
+            }
+
+            if (queue.waitForData(250)) {
+                // copy out and release first, producers keep filling the ring while the batch is sent
+                int n = queue.available();
+                long batchTime = queue.getTimestamp(0);
+                for (int i = 0; i < n; i++) {
+                    batch[i] = MidiEvent.setDelta(queue.getEvent(i), queue.getTimestamp(i) - batchTime);
+                }
+                queue.release(n);
+
+                transmit(batch, n, batchTime);
+            }
+        }
+
+        {
+            // send all notes off before closing
+            Logger.d(TAG, "send all notes off before closing midi output");
+            transmit(allNotesOff, 1, 0);
+        }
+    }
+}
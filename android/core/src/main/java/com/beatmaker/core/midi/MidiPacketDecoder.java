@@ -0,0 +1,135 @@
+package com.beatmaker.core.midi;
+
+public class MidiPacketDecoder {
+
+    /*
+        Decodes a whole USB-MIDI transfer in place and publishes all valid
+        events to the ring in one go. No objects are created per event.
+
+        Each 4 byte packet is checked against its code index number (CIN):
+        reserved CINs, channel messages whose status does not match the CIN
+        and data bytes with the high bit set are dropped. Bytes beyond the
+        message length of the CIN are cleared, all-zero packets are padding.
+        Valid events the input filter does not accept are not published.
+    */
+
+    // meaningful MIDI bytes per CIN, 0 = reserved
+    private static final int[] MESSAGE_LENGTH = {
+            0, 0, 2, 3,     // misc, cable event, 2 byte / 3 byte system common
+            3, 1, 2, 3,     // sysex start or continue, 1 byte common or sysex end, sysex end with 2 / 3 bytes
+            3, 3, 3, 3,     // note off, note on, poly key pressure, control change
+            2, 2, 3, 1      // program change, channel pressure, pitch bend, single byte
+    };
+
+    private long invalidPackets = 0;
+    private long droppedPackets = 0;
+    private long filteredPackets = 0;
+
+    private MidiInputFilter filter;
+
+    public MidiPacketDecoder() {
+    }
+
+    public MidiPacketDecoder(MidiInputFilter filter) {
+        this.filter = filter;
+    }
+
+    public MidiInputFilter getFilter() {
+        return filter;
+    }
+
+    public static int getMessageLength(int codeIndexNumber) {
+        return MESSAGE_LENGTH[codeIndexNumber & 0xf];
+    }
+
+    public static long validate(long event) {
+        // returns the packet with unused bytes cleared, or -1 if it is invalid
+        int cin = MidiEvent.getCodeIndexNumber(event);
+        int length = MESSAGE_LENGTH[cin];
+        if (0 == length) {
+            return -1;
+        }
+
+        int midi0 = MidiEvent.getMidi0(event);
+        int midi1 = MidiEvent.getMidi1(event);
+        int midi2 = MidiEvent.getMidi2(event);
+
+        if (cin >= 0x8 && cin <= 0xe) {
+            // channel message, the status must match the CIN
+            if ((midi0 >> 4) != cin || (midi1 & 0x80) != 0 || (length > 2 && (midi2 & 0x80) != 0)) {
+                return -1;
+            }
+        } else if (cin == 0x2 || cin == 0x3) {
+            // system common with data bytes
+            if (midi0 < 0xf1 || midi0 > 0xf3 || (midi1 & 0x80) != 0 || (length > 2 && (midi2 & 0x80) != 0)) {
+                return -1;
+            }
+        }
+
+        if (length < 3) midi2 = 0;
+        if (length < 2) midi1 = 0;
+
+        return MidiEvent.pack(0, MidiEvent.getCable(event), cin, midi0, midi1, midi2);
+    }
+
+    public int decode(byte[] buffer, int length, MidiRingBuffer ring, long timestamp) {
+        // returns the number of events published
+        int packets = length / 4;
+        if (packets * 4 != length) {
+            invalidPackets++; // truncated trailing packet
+        }
+
+        int claimed = ring.claim(packets);
+        int count = 0;
+
+        for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+            long event = MidiEvent.deserialize(buffer, ofs, 0);
+            if (0 == event) {
+                continue;
+            }
+
+            event = validate(event);
+            if (event < 0) {
+                invalidPackets++;
+                continue;
+            }
+
+            if (null != filter && !filter.accept(event)) {
+                filteredPackets++;
+                continue;
+            }
+
+            if (count == claimed) {
+                droppedPackets++;
+                continue;
+            }
+
+            ring.set(count++, event, timestamp);
+        }
+
+        if (count < claimed) {
+            ring.unclaim(claimed - count);
+        }
+        ring.publish();
+
+        return count;
+    }
+
+    public long getInvalidPackets() {
+        return invalidPackets;
+    }
+
+    public long getDroppedPackets() {
+        return droppedPackets;
+    }
+
+    public long getFilteredPackets() {
+        return filteredPackets;
+    }
+
+    public void reset() {
+        invalidPackets = 0;
+        droppedPackets = 0;
+        filteredPackets = 0;
+    }
+}
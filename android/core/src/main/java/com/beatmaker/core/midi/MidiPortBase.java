@@ -22,4 +22,9 @@ public class MidiPortBase {
         return -1;
     }
 
+    public int send(long midiEvent) {
+        // packed event (MidiEvent), for ports that take one message at a time
+        return -1;
+    }
+
 }
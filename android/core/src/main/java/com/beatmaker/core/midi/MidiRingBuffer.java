@@ -0,0 +1,182 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+public class MidiRingBuffer {
+
+    /*
+        Single producer / single consumer ring of packed MIDI events (MidiEvent)
+        with absolute timestamps, both kept in primitive arrays.
+
+        The producer claims slots, fills them in place and publishes a whole
+        batch with one store to the head sequence. The consumer reads up to
+        the published head and frees a whole batch with one store to the tail
+        sequence. Neither side ever blocks the other.
+
+        Multiple producers must be serialized by the caller.
+    */
+
+    public static final int DEFAULT_SIZE = 4096; // power of two
+
+    private final int mask;
+    private final long[] events;     // USB-MIDI packet, delta bits unused
+    private final long[] timestamps; // MICROSECONDS
+    private final MidiWaitStrategy waitStrategy;
+
+    private final Sequence head = new Sequence(); // written by the producer
+    private final Sequence tail = new Sequence(); // written by the consumer
+
+    // head and tail live on their own cache lines
+    abstract static class LhsPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    abstract static class Value extends LhsPadding {
+        volatile long value; // published sequence
+        long local;          // owner only: claimed (producer) or read (consumer) position
+        long cached;         // owner only: last seen value of the other side
+    }
+
+    static final class Sequence extends Value {
+        long p9, p10, p11, p12, p13, p14, p15;
+    }
+
+    private static final AtomicLongFieldUpdater<Value> VALUE = AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+    public MidiRingBuffer(int size) {
+        this(size, MidiWaitStrategy.create(Constants.MIDI_QUEUE_WAIT_STRATEGY));
+    }
+
+    public MidiRingBuffer(int size, MidiWaitStrategy waitStrategy) {
+        int capacity = 2;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+
+        this.mask = capacity - 1;
+        this.events = new long[capacity];
+        this.timestamps = new long[capacity];
+
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return events.length;
+    }
+
+    public int length() {
+        return (int) (head.value - tail.value);
+    }
+
+    public boolean isEmpty() {
+        return head.value == tail.value;
+    }
+
+    /* producer */
+
+    public int claim(int count) {
+        // claim up to count slots after the ones already claimed, returns the number claimed
+        long claimed = head.local;
+        long free = events.length - (claimed - head.cached);
+        if (free < count) {
+            head.cached = tail.value;
+            free = events.length - (claimed - head.cached);
+        }
+
+        int n = (int) Math.min(count, free);
+        head.local = claimed + n;
+        return n;
+    }
+
+    public void unclaim(int count) {
+        // give back unused claims from the end
+        head.local = Math.max(head.value, head.local - count);
+    }
+
+    public void set(int index, long event, long timestamp) {
+        // fill the index-th slot of the current, not yet published claims
+        int slot = (int) (head.value + index) & mask;
+        events[slot] = event & MidiEvent.PACKET_MASK;
+        timestamps[slot] = timestamp;
+    }
+
+    public void publish() {
+        if (head.local == head.value) {
+            return;
+        }
+        head.value = head.local;
+        waitStrategy.signal();
+    }
+
+    public boolean offer(long event, long timestamp) {
+        if (0 == claim(1)) {
+            return false;
+        }
+        set((int) (head.local - head.value) - 1, event, timestamp);
+        publish();
+        return true;
+    }
+
+    public int offer(long[] midiEvents, int ofs, int count, long baseTime) {
+        // packed events with deltas to baseTime, returns the number accepted
+        int first = (int) (head.local - head.value);
+        int n = claim(count);
+        for (int i = 0; i < n; i++) {
+            long event = midiEvents[ofs + i];
+            set(first + i, event, MidiEvent.getTimestamp(event, baseTime));
+        }
+        publish();
+        return n;
+    }
+
+    public boolean offer(MidiData midiData) {
+        if (null == midiData) {
+            return false;
+        }
+        return offer(MidiEvent.fromMidiData(midiData, 0), midiData.getTimestamp());
+    }
+
+    /* consumer */
+
+    public int available() {
+        long avail = tail.cached - tail.local;
+        if (avail <= 0) {
+            tail.cached = head.value;
+            avail = tail.cached - tail.local;
+        }
+        return (int) avail;
+    }
+
+    public long getEvent(int index) {
+        // index-th readable event, valid until released
+        return events[(int) (tail.local + index) & mask];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[(int) (tail.local + index) & mask];
+    }
+
+    public void release(int count) {
+        // hand back the first count readable slots
+        tail.local += count;
+        VALUE.lazySet(tail, tail.local);
+    }
+
+    public boolean waitForData(long timeoutMillis) {
+        if (!isEmpty()) {
+            return true;
+        }
+        if (timeoutMillis <= 0) {
+            return false;
+        }
+        return waitStrategy.waitFor(this, timeoutMillis * 1000000L);
+    }
+
+    public void clear() {
+        // consumer side: drop everything published so far
+        tail.local = head.value;
+        VALUE.lazySet(tail, tail.local);
+    }
+}
@@ -0,0 +1,50 @@
+package com.beatmaker.core.midi;
+
+public final class MidiRoute {
+
+    /*
+        Destination of a track or source of an input listener: interface alias,
+        port index on that interface and USB-MIDI cable. A null alias means the
+        connected (default) interface.
+    */
+
+    public static final MidiRoute DEFAULT = new MidiRoute(null, 0, 0);
+
+    private final String interfaceAlias;
+    private final int port;
+    private final int cable;
+
+    public MidiRoute(String interfaceAlias, int port, int cable) {
+        this.interfaceAlias = interfaceAlias;
+        this.port = Math.max(0, port);
+        this.cable = cable & 0xf;
+    }
+
+    public String getInterfaceAlias() {
+        return interfaceAlias;
+    }
+
+    public boolean isDefaultInterface() {
+        return null == interfaceAlias || interfaceAlias.isEmpty();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getCable() {
+        return cable;
+    }
+
+    public boolean matches(MidiInterfaceBase midiInterface) {
+        if (null == midiInterface) {
+            return false;
+        }
+        return isDefaultInterface() || interfaceAlias.equals(midiInterface.getAlias());
+    }
+
+    @Override
+    public String toString() {
+        return (isDefaultInterface() ? "default" : interfaceAlias) + ":" + port + ":" + cable;
+    }
+}
@@ -0,0 +1,308 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.PrecisionWaiter;
+import com.beatmaker.core.utils.SystemUtils;
+
+public class MidiScheduler {
+
+    /*
+        Holds packed events (MidiEvent) until their due time and transmits them
+        from its own thread. Pending events live in a binary min-heap of
+        primitive arrays ordered by due time, then by insertion order, so
+        events sharing a deadline keep the order they were scheduled in.
+
+        Events due at the same time for the same output port leave as one batch
+        (one USB transfer per max. packet size), waits use a PrecisionWaiter.
+
+        clear() drops what is pending, but note-offs still go out right away.
+    */
+
+    private static final String TAG = "MidiScheduler";
+
+    private static final long IDLE_WAIT_TIME = 250000; // MICROSECONDS
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final MidiBase midi;
+    private final Object lock = new Object();
+    private final PrecisionWaiter waiter;
+
+    // heap, guarded by lock
+    private long[] dueTimes = new long[INITIAL_CAPACITY];
+    private long[] sequence = new long[INITIAL_CAPACITY];
+    private long[] events = new long[INITIAL_CAPACITY];
+    private MidiOutputPort[] outputs = new MidiOutputPort[INITIAL_CAPACITY];
+    private int size = 0;
+    private long nextSequence = 0;
+
+    // note-offs released by clear(), guarded by this
+    private long[] releaseEvents = new long[INITIAL_CAPACITY];
+    private MidiOutputPort[] releaseOutputs = new MidiOutputPort[INITIAL_CAPACITY];
+    private final long[] releaseBatch = new long[Constants.MIDI_OUTPUT_MAX_QUEUE_SIZE];
+
+    private Thread thread;
+
+    public MidiScheduler(MidiBase midi) {
+        this.midi = midi;
+        this.waiter = new PrecisionWaiter(midi.getTimeClock(), Constants.PRECISION_WAIT_SPIN_BUDGET, Constants.MIDI_SCHEDULER_PRECISION_WAIT);
+    }
+
+    public synchronized void start() {
+        if (null != thread) return;
+
+        thread = new Thread() {
+            @Override
+            public void run() {
+                schedulerLoop();
+            }
+        };
+        thread.setName("midi scheduler thread");
+        thread.start();
+        midi.getTimeClock().attach(thread);
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+
+        if (null != t) {
+            t.interrupt();
+            try {
+                t.join(500);
+            } catch (InterruptedException ignored) {}
+        }
+
+        clear();
+    }
+
+    public boolean isRunning() {
+        return (null != thread);
+    }
+
+    public PrecisionWaiter getWaiter() {
+        return waiter;
+    }
+
+    public void schedule(MidiOutputPort output, long midiEvent, long dueTime) {
+        if (null == output) {
+            return;
+        }
+
+        boolean newHead;
+        synchronized (lock) {
+            newHead = (0 == size || dueTime < dueTimes[0]);
+            push(output, midiEvent, dueTime);
+        }
+        if (newHead) {
+            waiter.wakeup();
+        }
+    }
+
+    public void schedule(MidiOutputPort output, long[] midiEvents, int count, long dueTime) {
+        // the whole batch is due at dueTime
+        if (null == output || null == midiEvents || count < 1) {
+            return;
+        }
+
+        boolean newHead;
+        synchronized (lock) {
+            newHead = (0 == size || dueTime < dueTimes[0]);
+            for (int i = 0; i < count; i++) {
+                push(output, midiEvents[i], dueTime);
+            }
+        }
+        if (newHead) {
+            waiter.wakeup();
+        }
+    }
+
+    public void scheduleEach(MidiOutputPort output, long[] midiEvents, int count, long baseTime) {
+        // every event is due at baseTime plus its own delta
+        if (null == output || null == midiEvents || count < 1) {
+            return;
+        }
+
+        boolean newHead;
+        synchronized (lock) {
+            long headTime = (size > 0) ? dueTimes[0] : Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                push(output, midiEvents[i], MidiEvent.getTimestamp(midiEvents[i], baseTime));
+            }
+            newHead = (dueTimes[0] < headTime);
+        }
+        if (newHead) {
+            waiter.wakeup();
+        }
+    }
+
+    public synchronized void clear() {
+        // drops pending events except note-offs, they go out right away: the note
+        // table released their notes when they were rendered, nobody else ends them
+        int n = 0;
+
+        synchronized (lock) {
+            if (releaseEvents.length < size) {
+                releaseEvents = new long[dueTimes.length];
+                releaseOutputs = new MidiOutputPort[dueTimes.length];
+            }
+            for (int i = 0; i < size; i++) {
+                if (MidiEvent.isNoteOff(events[i])) {
+                    releaseEvents[n] = events[i] & MidiEvent.PACKET_MASK;
+                    releaseOutputs[n] = outputs[i];
+                    n++;
+                }
+                outputs[i] = null;
+            }
+            size = 0;
+        }
+        waiter.wakeup();
+
+        // one batch per output
+        for (int i = 0; i < n; i++) {
+            MidiOutputPort output = releaseOutputs[i];
+            if (null == output) {
+                continue;
+            }
+            int count = 0;
+            for (int j = i; j < n; j++) {
+                if (releaseOutputs[j] == output) {
+                    if (count == releaseBatch.length) {
+                        output.send(releaseBatch, count, 0);
+                        count = 0;
+                    }
+                    releaseBatch[count++] = releaseEvents[j];
+                    releaseOutputs[j] = null;
+                }
+            }
+            output.send(releaseBatch, count, 0);
+        }
+    }
+
+    public int length() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private void schedulerLoop() {
+
+        SystemUtils.setPriority(Settings.instance().getPriorities().midiOutputThreadPriority);
+
+        long[] batch = new long[Constants.MIDI_OUTPUT_MAX_QUEUE_SIZE];
+
+        while (!Thread.interrupted()) {
+
+            long now = midi.getTimeMicros();
+            long dueTime;
+            MidiOutputPort output = null;
+            int count = 0;
+
+            synchronized (lock) {
+                dueTime = (size > 0) ? dueTimes[0] : now + IDLE_WAIT_TIME;
+
+                if (dueTime <= now) {
+                    // everything sharing the head deadline and port goes out together
+                    output = outputs[0];
+                    while (size > 0 && dueTimes[0] == dueTime && outputs[0] == output && count < batch.length) {
+                        batch[count++] = events[0] & MidiEvent.PACKET_MASK;
+                        pop();
+                    }
+                }
+            }
+
+            if (count > 0) {
+                output.send(batch, count, dueTime);
+            } else if (!waiter.waitUntil(dueTime * 1000)) {
+                break;
+            }
+        }
+    }
+
+    private void push(MidiOutputPort output, long midiEvent, long dueTime) {
+        if (size == dueTimes.length) {
+            grow();
+        }
+
+        long seq = nextSequence++;
+
+        // sift up
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(dueTime, seq, dueTimes[parent], sequence[parent])) {
+                break;
+            }
+            set(i, parent);
+            i = parent;
+        }
+
+        dueTimes[i] = dueTime;
+        sequence[i] = seq;
+        events[i] = midiEvent;
+        outputs[i] = output;
+    }
+
+    private void pop() {
+        int last = --size;
+
+        long dueTime = dueTimes[last];
+        long seq = sequence[last];
+        long midiEvent = events[last];
+        MidiOutputPort output = outputs[last];
+        outputs[last] = null;
+
+        if (0 == last) {
+            return;
+        }
+
+        // sift down
+        int i = 0;
+        int half = last >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < last && before(dueTimes[right], sequence[right], dueTimes[child], sequence[child])) {
+                child = right;
+            }
+            if (!before(dueTimes[child], sequence[child], dueTime, seq)) {
+                break;
+            }
+            set(i, child);
+            i = child;
+        }
+
+        dueTimes[i] = dueTime;
+        sequence[i] = seq;
+        events[i] = midiEvent;
+        outputs[i] = output;
+    }
+
+    private void set(int to, int from) {
+        dueTimes[to] = dueTimes[from];
+        sequence[to] = sequence[from];
+        events[to] = events[from];
+        outputs[to] = outputs[from];
+    }
+
+    private static boolean before(long timeA, long seqA, long timeB, long seqB) {
+        return (timeA < timeB) || (timeA == timeB && seqA < seqB);
+    }
+
+    private void grow() {
+        // rare, only when more events are pending than ever before
+        int capacity = dueTimes.length * 2;
+        long[] t = new long[capacity];
+        long[] s = new long[capacity];
+        long[] e = new long[capacity];
+        MidiOutputPort[] o = new MidiOutputPort[capacity];
+        System.arraycopy(dueTimes, 0, t, 0, size);
+        System.arraycopy(sequence, 0, s, 0, size);
+        System.arraycopy(events, 0, e, 0, size);
+        System.arraycopy(outputs, 0, o, 0, size);
+        dueTimes = t;
+        sequence = s;
+        events = e;
+        outputs = o;
+    }
+}
@@ -0,0 +1,332 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.utils.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class MidiSysexAssembler {
+
+    /*
+        Collects USB-MIDI sysex packets (CIN 0x4 - 0x7) per cable into pooled,
+        growable buffers. Messages up to MIDI_SYSEX_MAX_SIZE are delivered in
+        one piece, longer ones are streamed in chunks of that size, so memory
+        stays bounded for multi-megabyte dumps. Messages beyond
+        MIDI_SYSEX_MESSAGE_LIMIT are aborted.
+
+        A chunked message that can't be completed (too long, interrupted by
+        the next F0, delivery queue full) ends with an empty buffer marked
+        aborted, so listeners never take the parts for a complete dump. The
+        rest of the message is skipped.
+
+        Packets are collected on the dispatch thread, listeners are called from
+        a separate sysex thread, note dispatch never waits for a slow consumer.
+    */
+
+    private static final String TAG = "MidiSysexAssembler";
+
+    private static final int LOG_INTERRUPTED = Logger.register(TAG, "sysex interrupted on cable {}");
+    private static final int LOG_OVERFLOW = Logger.register(TAG, "sysex queue overflow on cable {}, dropped {} bytes");
+    private static final int LOG_TOO_LONG = Logger.register(TAG, "sysex on cable {} aborted after {} bytes, limit {}");
+
+    private static final int NUM_CABLES = 16;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    public static class Buffer {
+        private byte[] data = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+        private int cable;
+        private boolean first;
+        private boolean last;
+        private boolean aborted;
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getCable() {
+            return cable;
+        }
+
+        public boolean isFirst() {
+            return first;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+
+        public boolean isComplete() {
+            return first && last && !aborted;
+        }
+
+        public boolean isAborted() {
+            // empty, the chunks delivered before belong to a cut off message
+            return aborted;
+        }
+
+        private boolean append(int b, int maxSize) {
+            if (length == data.length) {
+                if (length >= maxSize) {
+                    return false;
+                }
+                byte[] grown = new byte[Math.min(maxSize, data.length * 2)];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            data[length++] = (byte) b;
+            return true;
+        }
+    }
+
+    public interface Consumer {
+        void onSysex(Buffer buffer);
+    }
+
+    private final Consumer consumer;
+    private final int maxSize;
+    private final long messageLimit;
+
+    // dispatch thread only
+    private final Buffer[] current = new Buffer[NUM_CABLES];
+    private final long[] messageLength = new long[NUM_CABLES];
+    private final boolean[] discarding = new boolean[NUM_CABLES]; // skipping the rest of an aborted message
+    private final Buffer[] abortNotice = new Buffer[NUM_CABLES]; // aborted marker the queue had no room for
+    private int appliedResets = 0;
+
+    private volatile int resetRequests = 0;
+
+    private final ArrayBlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(Constants.MIDI_SYSEX_POOL_SIZE);
+    private final ArrayBlockingQueue<Buffer> pending = new ArrayBlockingQueue<>(Constants.MIDI_SYSEX_QUEUE_SIZE);
+    private Thread deliveryThread;
+
+    public MidiSysexAssembler(Consumer consumer) {
+        this(consumer, Constants.MIDI_SYSEX_MAX_SIZE);
+    }
+
+    public MidiSysexAssembler(Consumer consumer, int maxSize) {
+        this(consumer, maxSize, Constants.MIDI_SYSEX_MESSAGE_LIMIT);
+    }
+
+    public MidiSysexAssembler(Consumer consumer, int maxSize, long messageLimit) {
+        this.consumer = consumer;
+        this.maxSize = Math.max(INITIAL_BUFFER_SIZE, maxSize);
+        this.messageLimit = Math.max(this.maxSize, messageLimit);
+    }
+
+    public static boolean isSysex(int codeIndexNumber, int midi0) {
+        // CIN 0x5 is also used for single byte system common messages
+        return (codeIndexNumber >= 0x4 && codeIndexNumber <= 0x7) && (codeIndexNumber != 0x5 || midi0 == 0xf7);
+    }
+
+    public void add(int cable, int codeIndexNumber, int midi0, int midi1, int midi2) {
+
+        cable &= 0xf;
+
+        if (appliedResets != resetRequests) {
+            appliedResets = resetRequests;
+            dropAll();
+        }
+
+        if (null != abortNotice[cable] && deliver(abortNotice[cable])) {
+            abortNotice[cable] = null;
+        }
+
+        int count;
+        boolean end;
+        switch (codeIndexNumber) {
+            case 0x5: count = 1; end = true; break;
+            case 0x6: count = 2; end = true; break;
+            case 0x7: count = 3; end = true; break;
+            default: count = 3; end = false; break;
+        }
+
+        if (midi0 == 0xf0) {
+            if (null != current[cable]) {
+                Logger.d(LOG_INTERRUPTED, cable);
+                abort(cable);
+            }
+            // while listeners wait for an abort notice, later messages would overtake it
+            discarding[cable] = (null != abortNotice[cable]);
+            if (!discarding[cable]) {
+                current[cable] = obtain(cable);
+                messageLength[cable] = 0;
+            }
+        }
+
+        if (discarding[cable]) {
+            // rest of an aborted message
+            if (end) {
+                discarding[cable] = false;
+            }
+            return;
+        }
+
+        Buffer buffer = current[cable];
+        if (null == buffer) {
+            return; // continuation without start
+        }
+
+        messageLength[cable] += count;
+        if (messageLength[cable] > messageLimit) {
+            Logger.w(LOG_TOO_LONG, cable, messageLength[cable], messageLimit);
+            abort(cable);
+            discarding[cable] = !end;
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int b = (0 == i) ? midi0 : (1 == i) ? midi1 : midi2;
+            if (buffer.append(b, maxSize)) {
+                continue;
+            }
+
+            // full: stream what we have and continue in a fresh buffer
+            if (!deliver(buffer)) {
+                Logger.d(LOG_OVERFLOW, cable, buffer.length);
+                current[cable] = null;
+                drop(cable, buffer);
+                discarding[cable] = !end;
+                return;
+            }
+
+            buffer = obtain(cable);
+            buffer.first = false;
+            current[cable] = buffer;
+            buffer.append(b, maxSize);
+        }
+
+        if (end) {
+            buffer.last = true;
+            current[cable] = null;
+            if (!deliver(buffer)) {
+                Logger.d(LOG_OVERFLOW, cable, buffer.length);
+                drop(cable, buffer);
+            }
+        }
+    }
+
+    public synchronized void reset() {
+        // any thread: the dispatch thread drops partial messages before its next packet
+        resetRequests++;
+    }
+
+    private void dropAll() {
+        for (int cable = 0; cable < NUM_CABLES; cable++) {
+            if (null != current[cable]) {
+                release(current[cable]);
+                current[cable] = null;
+            }
+            if (null != abortNotice[cable]) {
+                release(abortNotice[cable]);
+                abortNotice[cable] = null;
+            }
+            discarding[cable] = false;
+        }
+    }
+
+    private void abort(int cable) {
+        // drops the message in progress on the cable
+        Buffer buffer = current[cable];
+        current[cable] = null;
+        if (null != buffer) {
+            drop(cable, buffer);
+        }
+    }
+
+    private void drop(int cable, Buffer buffer) {
+        // a message that can't be delivered completely: listeners that already got
+        // parts of it get an empty aborted buffer instead of the rest
+        if (buffer.first) {
+            release(buffer); // nothing delivered yet
+            return;
+        }
+
+        buffer.length = 0;
+        buffer.last = true;
+        buffer.aborted = true;
+
+        if (!deliver(buffer)) {
+            abortNotice[cable] = buffer; // retried with the next packet on the cable
+        }
+    }
+
+    private Buffer obtain(int cable) {
+        Buffer buffer = pool.poll();
+        if (null == buffer) {
+            buffer = new Buffer();
+        }
+        buffer.length = 0;
+        buffer.cable = cable;
+        buffer.first = true;
+        buffer.last = false;
+        buffer.aborted = false;
+        return buffer;
+    }
+
+    private void release(Buffer buffer) {
+        pool.offer(buffer); // dropped if the pool is full
+    }
+
+    private boolean deliver(Buffer buffer) {
+        startDelivery();
+        return pending.offer(buffer);
+    }
+
+    private synchronized void startDelivery() {
+        if (null != deliveryThread) {
+            return;
+        }
+
+        deliveryThread = new Thread() {
+            @Override
+            public void run() {
+                deliveryLoop();
+            }
+        };
+        deliveryThread.setName("midi sysex thread");
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    public synchronized void stop() {
+        Thread t = deliveryThread;
+        deliveryThread = null;
+
+        if (null != t) {
+            t.interrupt();
+            try {
+                t.join(500);
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        pending.clear();
+    }
+
+    private void deliveryLoop() {
+        while (!Thread.interrupted()) {
+            Buffer buffer;
+            try {
+                buffer = pending.poll(250, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (null == buffer) {
+                continue;
+            }
+
+            try {
+                consumer.onSysex(buffer);
+            } finally {
+                release(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.utils.Clock;
+
+public class MidiTimecode {
+
+    /*
+        MIDI time code (MTC) reader for timecode chase.
+
+        Quarter frames (0xF1 0nnndddd) carry the timecode in 8 pieces, two
+        frames per full timecode. Pieces are collected in order, piece 7
+        completes the timecode of the frame piece 0 was sent in. From there
+        the position advances one quarter frame per message, so the chase gets
+        a new reference every quarter frame and only needs the full timecode
+        to lock and to detect jumps. Full frame messages (sysex F0 7F id 01 01)
+        locate without running.
+
+        Positions are counted in quarter frames since 00:00:00:00, for 29.97
+        frames drop frame labels are converted into real frames. The estimate
+        is published with a sequence counter like MidiClock's.
+
+        The static helpers convert between labels, frames and nanoseconds and
+        encode the messages for MidiTimecodeMaster.
+    */
+
+    private static final String TAG = "MidiTimecode";
+
+    public static final int RATE_24 = 0;
+    public static final int RATE_25 = 1;
+    public static final int RATE_2997 = 2; // 29.97 drop frame
+    public static final int RATE_30 = 3;
+
+    private static final long[] FRAME_NUM = { 24, 25, 30000, 30 }; // frames per FRAME_DEN seconds
+    private static final long[] FRAME_DEN = { 1, 1, 1001, 1 };
+    private static final int[] FRAMES_PER_SECOND = { 24, 25, 30, 30 }; // label counting
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    public static class Estimate {
+        private long version;
+        private int rate;
+        private long quarterFrame;
+        private long time;
+        private boolean running;
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getRate() {
+            return rate;
+        }
+
+        public long getQuarterFrame() {
+            // position of the last quarter frame
+            return quarterFrame;
+        }
+
+        public long getTime() {
+            // reception time of the last quarter frame, NANOSECONDS
+            return time;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getSongTime(long now) {
+            // timecode at the given time, NANOSECONDS since 00:00:00:00
+            long songTime = quarterFramesToNanos(rate, quarterFrame);
+            return running ? songTime + (now - time) : songTime;
+        }
+    }
+
+    private final Clock clock;
+
+    // decoder state, dispatch thread only
+    private final int[] pieces = new int[8];
+    private int nextPiece = 0; // -1 while waiting for piece 0
+    private boolean synced = false;
+    private long quarterFrame = 0;
+    private long jumpCount = 0;
+
+    // published estimate, odd version while writing
+    private volatile long version = 0;
+    private volatile int estRate;
+    private volatile long estQuarterFrame;
+    private volatile long estTime;
+    private volatile boolean estRunning;
+
+    public MidiTimecode() {
+        this(Clock.instance());
+    }
+
+    public MidiTimecode(Clock clock) {
+        this.clock = clock;
+    }
+
+    public long getJumpCount() {
+        return jumpCount;
+    }
+
+    public boolean getEstimate(Estimate estimate, long now) {
+        // copies the current estimate, returns false if there is none
+        long v;
+        do {
+            v = version;
+            estimate.rate = estRate;
+            estimate.quarterFrame = estQuarterFrame;
+            estimate.time = estTime;
+            estimate.running = estRunning;
+        } while (0 != (v & 1) || v != version);
+
+        estimate.version = v;
+
+        if (0 == v) {
+            estimate.running = false;
+            return false;
+        }
+
+        if (now - estimate.time > Constants.MIDI_TIMECODE_TIMEOUT) {
+            estimate.running = false; // no quarter frames anymore
+        }
+
+        return true;
+    }
+
+    public void update(int data, long timestamp) {
+        // quarter frame data byte, timestamp in MICROSECONDS
+
+        long t = timestamp * 1000;
+        int piece = (data >> 4) & 0x7;
+
+        if (synced && t - estTime > Constants.MIDI_TIMECODE_TIMEOUT) {
+            synced = false; // restarted after a pause
+        }
+
+        if (piece != nextPiece) {
+            // lost, out of order or backwards: acquire again from piece 0
+            synced = false;
+            if (0 != piece) {
+                nextPiece = -1;
+                return;
+            }
+        }
+
+        pieces[piece] = data & 0xf;
+        nextPiece = (piece + 1) & 0x7;
+
+        if (synced) {
+            quarterFrame++;
+        }
+
+        if (7 == piece) {
+            int rate = (pieces[7] >> 1) & 0x3;
+            long frames = toFrames(rate,
+                    ((pieces[7] & 0x1) << 4) | pieces[6],
+                    (pieces[5] << 4) | pieces[4],
+                    (pieces[3] << 4) | pieces[2],
+                    (pieces[1] << 4) | pieces[0]);
+            long position = frames * 4 + 7;
+
+            if (!synced || position != quarterFrame || rate != estRate) {
+                if (synced) jumpCount++;
+                synced = true;
+                quarterFrame = position;
+            }
+            publish(rate, quarterFrame, t, true);
+        } else if (synced) {
+            publish(estRate, quarterFrame, t, true);
+        }
+    }
+
+    public void updateFullFrame(byte[] data, int length) {
+        // F0 7F <device> 01 01 hr mn sc fr F7
+        if (length < 10 || (data[1] & 0xff) != 0x7f || 0x01 != data[3] || 0x01 != data[4]) {
+            return;
+        }
+
+        int rate = (data[5] >> 5) & 0x3;
+        long frames = toFrames(rate, data[5] & 0x1f, data[6], data[7], data[8]);
+
+        synced = false;
+        nextPiece = -1;
+        publish(rate, frames * 4, clock.nanoTime(), false);
+    }
+
+    private void publish(int rate, long quarterFrame, long time, boolean running) {
+        long v = version;
+        version = v + 1;
+        estRate = rate;
+        estQuarterFrame = quarterFrame;
+        estTime = time;
+        estRunning = running;
+        version = v + 2;
+    }
+
+    /* conversions */
+
+    public static long quarterFramesToNanos(int rate, long quarterFrames) {
+        // exact up to rounding, never accumulates. Whole blocks of FRAME_DEN seconds
+        // first, the product would overflow after about 21 hours at 29.97 fps
+        long blockFrames = FRAME_NUM[rate] * 4;
+        long blockNanos = FRAME_DEN[rate] * NANOS_PER_SECOND;
+        return (quarterFrames / blockFrames) * blockNanos + (quarterFrames % blockFrames) * blockNanos / blockFrames;
+    }
+
+    public static long nanosToQuarterFrames(int rate, long nanos) {
+        // quarter frames completed at the given time, rounded down before 00:00:00:00 too
+        long blockFrames = FRAME_NUM[rate] * 4;
+        long blockNanos = FRAME_DEN[rate] * NANOS_PER_SECOND;
+        long blocks = nanos / blockNanos;
+        long rest = nanos % blockNanos;
+        if (rest < 0) {
+            blocks--;
+            rest += blockNanos;
+        }
+        return blocks * blockFrames + rest * blockFrames / blockNanos;
+    }
+
+    public static long toFrames(int rate, int hours, int minutes, int seconds, int frames) {
+        // label to real frames
+        int fps = FRAMES_PER_SECOND[rate];
+        long totalMinutes = hours * 60L + minutes;
+        long count = ((totalMinutes * 60) + seconds) * fps + frames;
+        if (RATE_2997 == rate) {
+            // frame numbers 0 and 1 are skipped every minute, except every tenth
+            count -= 2 * (totalMinutes - totalMinutes / 10);
+        }
+        return count;
+    }
+
+    public static int toLabel(int rate, long frames) {
+        // real frames to label, packed as hours << 24 | minutes << 16 | seconds << 8 | frames
+        int fps = FRAMES_PER_SECOND[rate];
+        if (RATE_2997 == rate) {
+            long tenMinutes = frames / 17982; // real frames per 10 minutes
+            long rest = frames % 17982;
+            frames += 18 * tenMinutes + ((rest > 1) ? 2 * ((rest - 2) / 1798) : 0);
+        }
+        long seconds = frames / fps;
+        return (int) ((((seconds / 3600) % 24) << 24) | (((seconds / 60) % 60) << 16) | ((seconds % 60) << 8) | (frames % fps));
+    }
+
+    public static long quarterFrame(int rate, long frames, int piece) {
+        // message for piece 0 - 7 of the timecode of the given frame
+        int label = toLabel(rate, frames);
+        int value;
+        switch (piece) {
+            case 0: value = label & 0xf; break;
+            case 1: value = (label >> 4) & 0x1; break;
+            case 2: value = (label >> 8) & 0xf; break;
+            case 3: value = (label >> 12) & 0x3; break;
+            case 4: value = (label >> 16) & 0xf; break;
+            case 5: value = (label >> 20) & 0x3; break;
+            case 6: value = (label >> 24) & 0xf; break;
+            default: value = ((label >> 28) & 0x1) | (rate << 1); break;
+        }
+        return MidiEvent.pack(0x2, 0xf1, (piece << 4) | value, 0);
+    }
+
+    public static int fullFrame(int rate, long frames, long[] target) {
+        // full frame sysex as USB-MIDI packets, returns the number of packets
+        int label = toLabel(rate, frames);
+        target[0] = MidiEvent.pack(0x4, 0xf0, 0x7f, 0x7f);
+        target[1] = MidiEvent.pack(0x4, 0x01, 0x01, (rate << 5) | ((label >> 24) & 0x1f));
+        target[2] = MidiEvent.pack(0x4, (label >> 16) & 0x3f, (label >> 8) & 0x3f, label & 0x1f);
+        target[3] = MidiEvent.pack(0x5, 0xf7, 0, 0);
+        return 4;
+    }
+}
@@ -0,0 +1,179 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.Clock;
+import com.beatmaker.core.utils.LatencyHistogram;
+import com.beatmaker.core.utils.PrecisionWaiter;
+import com.beatmaker.core.utils.SystemUtils;
+
+public class MidiTimecodeMaster {
+
+    /*
+        MIDI time code (MTC) generator, locked to the sequencer transport.
+
+        The sequencer only hands over an anchor: the timecode at a given time
+        (sendStart) or the end of playback (sendStop). Everything else runs on
+        a high-priority thread of its own, so frame edges do not depend on how
+        busy the sequencer thread is: a full frame message locates the
+        receivers, then the 8 quarter frames of every two-frame block are
+        computed ahead, messages and due times at once, and sent with a
+        PrecisionWaiter. Due times come from the quarter frame index, they
+        never accumulate rounding errors.
+
+        Lateness of every quarter frame is recorded, see getJitter().
+    */
+
+    private static final String TAG = "MidiTimecodeMaster";
+
+    private static final long IDLE_WAIT = 250000000; // NANOSECONDS
+
+    private final MidiBase midi;
+    private final Clock clock;
+    private final PrecisionWaiter waiter;
+    private final LatencyHistogram jitter = new LatencyHistogram();
+
+    // anchor, written by the sequencer thread, a new generation restarts the output
+    private volatile int generation = 0;
+    private volatile boolean playing = false;
+    private volatile int rate = Constants.MIDI_TIMECODE_RATE;
+    private volatile long anchorSongTime = 0; // NANOSECONDS since 00:00:00:00
+    private volatile long anchorTime = 0; // NANOSECONDS
+
+    private volatile Thread thread;
+
+    public MidiTimecodeMaster(MidiBase midi) {
+        this.midi = midi;
+        this.clock = midi.getTimeClock();
+        this.waiter = new PrecisionWaiter(clock, Constants.PRECISION_WAIT_SPIN_BUDGET, true);
+    }
+
+    public synchronized void start() {
+        if (null != thread) return;
+
+        thread = new Thread() {
+            @Override
+            public void run() {
+                outputLoop();
+            }
+        };
+        thread.setName("midi timecode thread");
+        thread.start();
+        clock.attach(thread);
+    }
+
+    public synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+
+        if (null != t) {
+            t.interrupt();
+            try {
+                t.join(500);
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    public boolean isRunning() {
+        return (null != thread);
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public LatencyHistogram getJitter() {
+        // MICROSECONDS between due time and transmission, per quarter frame
+        return jitter;
+    }
+
+    /* sequencer thread */
+
+    public void sendStart(int rate, long songTime, long time) {
+        // the timecode reaches songTime (NANOSECONDS since 00:00:00:00) at time
+        this.rate = rate;
+        this.anchorSongTime = songTime;
+        this.anchorTime = time;
+        this.playing = true;
+        generation++;
+        wake();
+    }
+
+    public void sendStop() {
+        if (!playing) return;
+        playing = false;
+        generation++;
+        wake();
+    }
+
+    private void wake() {
+        waiter.wakeup();
+        clock.unpark(thread);
+    }
+
+    /* output thread */
+
+    private void outputLoop() {
+
+        SystemUtils.setPriority(Settings.instance().getPriorities().midiClockThreadPriority);
+
+        long[] message = new long[4];
+        long[] events = new long[8];
+        long[] dueTimes = new long[8];
+
+        while (!Thread.interrupted()) {
+
+            int g = generation;
+
+            if (!playing) {
+                clock.parkUntil(this, clock.nanoTime() + IDLE_WAIT);
+                continue;
+            }
+
+            int r = rate;
+            long songTime = anchorSongTime;
+            long time = anchorTime;
+
+            // first two-frame block at the next frame edge, receivers locate on the full frame first
+            long quarterFrame = MidiTimecode.nanosToQuarterFrames(r, songTime - 1) + 1;
+            quarterFrame = (quarterFrame + 3) & ~3L;
+
+            transmit(message, MidiTimecode.fullFrame(r, quarterFrame / 4, message));
+
+            while (g == generation) {
+
+                // precompute the block: timecode of its first frame, due time of every quarter frame
+                long frames = quarterFrame / 4;
+                for (int piece = 0; piece < 8; piece++) {
+                    events[piece] = MidiTimecode.quarterFrame(r, frames, piece);
+                    dueTimes[piece] = time + MidiTimecode.quarterFramesToNanos(r, quarterFrame + piece) - songTime;
+                }
+
+                int piece = 0;
+                while (piece < 8 && g == generation) {
+                    if (!waiter.waitUntil(dueTimes[piece])) {
+                        return;
+                    }
+                    long now = clock.nanoTime();
+                    if (g != generation || now < dueTimes[piece]) {
+                        continue; // restarted, stopped or woken up early
+                    }
+
+                    jitter.add((now - dueTimes[piece]) / 1000);
+
+                    message[0] = events[piece];
+                    transmit(message, 1);
+                    piece++;
+                }
+
+                quarterFrame += 8;
+            }
+        }
+    }
+
+    private void transmit(long[] message, int count) {
+        for (MidiOutputPort outputPort : midi.getOutputPorts()) {
+            outputPort.transmit(message, count, 0);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.core.utils.Clock;
+
+public abstract class MidiWaitStrategy {
+
+    /*
+        How the consumer of a MidiRingBuffer waits for data:
+
+            SPIN  - busy poll, lowest latency, burns a core
+            YIELD - poll and yield the time slice in between
+            PARK  - park the consumer, the producer unparks it only if it is waiting
+
+        Time and parking come from the Clock, only PARK lets virtual time pass.
+    */
+
+    public static final int SPIN = 0;
+    public static final int YIELD = 1;
+    public static final int PARK = 2;
+
+    protected final Clock clock;
+
+    protected MidiWaitStrategy(Clock clock) {
+        this.clock = clock;
+    }
+
+    public static MidiWaitStrategy create(int type) {
+        return create(type, Clock.instance());
+    }
+
+    public static MidiWaitStrategy create(int type, Clock clock) {
+        switch (type) {
+            case SPIN: return new Spin(clock);
+            case YIELD: return new Yield(clock);
+            default: return new Park(clock);
+        }
+    }
+
+    // returns false on timeout or interrupt, the interrupt flag is kept
+    public abstract boolean waitFor(MidiRingBuffer ring, long timeoutNanos);
+
+    // called by the producer after publishing
+    public abstract void signal();
+
+    private static class Spin extends MidiWaitStrategy {
+        Spin(Clock clock) {
+            super(clock);
+        }
+
+        @Override
+        public boolean waitFor(MidiRingBuffer ring, long timeoutNanos) {
+            long deadline = clock.nanoTime() + timeoutNanos;
+            while (ring.isEmpty()) {
+                if (Thread.currentThread().isInterrupted() || clock.nanoTime() >= deadline) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    private static class Yield extends MidiWaitStrategy {
+        Yield(Clock clock) {
+            super(clock);
+        }
+
+        @Override
+        public boolean waitFor(MidiRingBuffer ring, long timeoutNanos) {
+            long deadline = clock.nanoTime() + timeoutNanos;
+            while (ring.isEmpty()) {
+                if (Thread.currentThread().isInterrupted() || clock.nanoTime() >= deadline) {
+                    return false;
+                }
+                Thread.yield();
+            }
+            return true;
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    private static class Park extends MidiWaitStrategy {
+
+        private volatile Thread waiter;
+
+        Park(Clock clock) {
+            super(clock);
+        }
+
+        @Override
+        public boolean waitFor(MidiRingBuffer ring, long timeoutNanos) {
+            if (!ring.isEmpty()) {
+                return true;
+            }
+
+            long deadline = clock.nanoTime() + timeoutNanos;
+
+            waiter = Thread.currentThread();
+            try {
+                // re-check after registering, the producer might have published in between
+                while (ring.isEmpty()) {
+                    if (clock.nanoTime() >= deadline || Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    clock.parkUntil(this, deadline);
+                }
+            } finally {
+                waiter = null;
+            }
+
+            return true;
+        }
+
+        @Override
+        public void signal() {
+            Thread t = waiter;
+            if (null != t) {
+                clock.unpark(t);
+            }
+        }
+    }
+}
@@ -8,6 +8,12 @@ public class MockMidiInterface extends MidiInterfaceBase {
         this.alias = alias;
     }
 
+    @Override
+    public boolean open() {
+        connected = true;
+        return true;
+    }
+
     @Override
     public int receive(MidiPortBase port, byte[] buffer, int length, int timeout) {
         if (MidiPortBase.INPUT != port.getDirection()) {
@@ -9,15 +9,18 @@ import java.util.List;
 public class ElementConfig {
 
     private int channel;
+    private int duration;
     private List<MidiNote> notes;
 
     public ElementConfig() {
         channel = Constants.DEFAULT_MIDI_CHANNEL;
+        duration = Constants.DEFAULT_NOTE_DURATION;
         setNote(channel, Constants.DEFAULT_NOTE_PITCH, Constants.DEFAULT_NOTE_VELOCITY);
     }
 
     public ElementConfig(ElementConfig config) {
         channel = config.channel;
+        duration = config.duration;
         if (null != config.notes) {
             for (MidiNote note : config.notes) {
                 addNote(new MidiNote(channel, note.getPitch(), note.getVelocity()));
@@ -27,6 +30,7 @@ public class ElementConfig {
 
     public void reset() {
         channel = Constants.DEFAULT_MIDI_CHANNEL;
+        duration = Constants.DEFAULT_NOTE_DURATION;
         setNote(Constants.DEFAULT_MIDI_CHANNEL, Constants.DEFAULT_NOTE_PITCH, Constants.DEFAULT_NOTE_VELOCITY);
     }
 
@@ -108,4 +112,12 @@ public class ElementConfig {
     public void setChannel(int channel) {
         this.channel = channel;
     }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
 }
@@ -4,9 +4,16 @@ import com.beatmaker.config.Constants;
 import com.beatmaker.config.Debug;
 import com.beatmaker.config.Settings;
 import com.beatmaker.core.midi.MidiBase;
+import com.beatmaker.core.midi.MidiClock;
+import com.beatmaker.core.midi.MidiClockMaster;
+import com.beatmaker.core.midi.MidiTimecode;
+import com.beatmaker.core.midi.MidiTimecodeMaster;
 import com.beatmaker.core.midi.MidiInputListener;
 import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.utils.Clock;
+import com.beatmaker.core.utils.LatencyHistogram;
 import com.beatmaker.core.utils.Logger;
+import com.beatmaker.core.utils.PrecisionWaiter;
 import com.beatmaker.core.utils.SystemUtils;
 
 import java.util.ArrayList;
@@ -15,17 +22,30 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.LockSupport;
 
 public class Sequencer {
 
     private static final String TAG = "Sequencer";
 
+    // log formats, the sequencer thread only writes binary log records
+    private static final int LOG_STATS = Logger.register(TAG, "avg. tick jitter: {}us, avg. step jitter: {}us, wakeups/s: {}");
+    private static final int LOG_TICK_JITTER = Logger.register(TAG, "tick jitter: {} / {} / {} ns");
+    private static final int LOG_STEP_JITTER = Logger.register(TAG, "step jitter: {} / {} / {} ns");
+    private static final int LOG_SKIPPED = Logger.register(TAG, "catch up: skipped {} ticks");
+    private static final int LOG_SHIFTED = Logger.register(TAG, "catch up: shifted grid by {}us");
+    private static final int LOG_STEP = Logger.register(TAG, "sequenceStep {}");
+    private static final int LOG_CLOCK = Logger.register(TAG, "clock slave: locked {}, phase error {}us, bpm {}/1000");
+    private static final int LOG_CLOCK_JITTER = Logger.register(TAG, "clock master: {} pulses, jitter p99 {}us, max {}us");
+    private static final int LOG_TIMECODE_JITTER = Logger.register(TAG, "timecode master: {} quarter frames, jitter p99 {}us, max {}us");
+    private static final int LOG_TIMECODE_LOCATE = Logger.register(TAG, "timecode chase: locate to tick {}, {}us off, first tick in {}us");
+    private static final int LOG_WAIT_LATENESS = Logger.register(TAG, "wait lateness: p50 {}us, p99 {}us, max {}us");
+    private static final int LOG_WAIT_MARGIN = Logger.register(TAG, "wait margin (park+spin): {}us");
+    private static final int LOG_SLAVE_START = Logger.register(TAG, "slave start: start message to pulse {}us, pulse to first tick {}us, target {}us");
+
     private static Sequencer instance_;
 
     private final SequencerMetrics globals = SequencerMetrics.instance();
     private SequencerControl state;
-    private final Object lock = new Object();
     private Thread worker;
     private ArrayList<SequencerTrack> tracks;
     private Set<SequencerListener> listeners = new HashSet<>();
@@ -33,6 +53,46 @@ public class Sequencer {
     private boolean captureActive;
     private Map<Integer, MidiNote> captureData;
     private int captureChannel;
+    private volatile long lookaheadTime = Constants.SEQUENCER_LOOKAHEAD_TIME;
+    private volatile boolean eventDriven = Constants.SEQUENCER_EVENT_DRIVEN;
+    private volatile int catchUpPolicy = Constants.SEQUENCER_CATCH_UP_POLICY;
+    private volatile long catchUpThreshold = Constants.SEQUENCER_CATCH_UP_THRESHOLD;
+    private final SequencerTimebase timebase = new SequencerTimebase();
+    private final Clock clock;
+    private final PrecisionWaiter waiter;
+    private final PrecisionWaiter stateWaiter; // idle waits, never spins
+
+    // clock slave, sequencer thread only
+    private volatile boolean clockSlave = Constants.SEQUENCER_CLOCK_SLAVE;
+    private volatile boolean followingClock = false;
+    private final MidiClock.Estimate clockEstimate = new MidiClock.Estimate();
+    private long clockVersion = -1;
+    private double clockTickOffset = 0.0; // tick position of pulse 0
+    private long clockAnchorTime = 0; // pulse at timebase tick 0 after a slave start, 0 = none
+    private long clockLatency = 0;
+
+    // slave transport
+    private volatile boolean transportSlave = Constants.SEQUENCER_TRANSPORT_SLAVE;
+    private final SequencerTransport transport = new SequencerTransport(this);
+    private long slaveStartTime = 0; // sequencer thread only
+    private long slavePulseTime = 0;
+    private long slaveRequestTime = 0;
+    private boolean slaveStartPending = false;
+    private volatile long slaveStartOffset = 0;
+
+    // clock master, sequencer thread only
+    private volatile boolean clockMaster = Constants.SEQUENCER_CLOCK_MASTER;
+    private boolean clockMasterRunning = false;
+    private long clockPulsePosition = 0; // next pulse, timebase ticks * 24
+
+    // timecode master and chase, sequencer thread only
+    private volatile boolean timecodeMaster = Constants.SEQUENCER_TIMECODE_MASTER;
+    private volatile int timecodeRate = Constants.MIDI_TIMECODE_RATE;
+    private volatile boolean timecodeChase = Constants.SEQUENCER_TIMECODE_CHASE;
+    private volatile long timecodeOffset = 0; // NANOSECONDS, timecode of song position 0
+    private final MidiTimecode.Estimate timecodeEstimate = new MidiTimecode.Estimate();
+    private long timecodeVersion = -1;
+    private boolean chasingTimecode = false;
 
     private final Stats stats = new Stats();
 
@@ -52,7 +112,10 @@ public class Sequencer {
         private long avgTickJitter = 0;
         private long avgStepJitter = 0;
 
+        private long wakeupCount = 0;
+
         private void reset() {
+            wakeupCount = 0;
             tickJitterSum = 0;
             tickJitterCount = 0;
             stepJitterSum = 0;
@@ -62,7 +125,7 @@ public class Sequencer {
         }
 
         private void update() {
-            long now = System.nanoTime();
+            long now = getTimeNanos();
             if (0 == lastUpdateTime) {
                 lastUpdateTime = now;
                 return;
@@ -70,11 +133,46 @@ public class Sequencer {
 
             long elapsed = now - lastUpdateTime;
             if (elapsed >= UPDATE_INTERVAL_MS * 1000000) {
-                Logger.d(TAG, "avg. tick jitter: " + (avgTickJitter/1000) + "µs, avg. step jitter: " + (avgStepJitter/1000) + "µs");
+                long wakeupsPerSecond = (wakeupCount * 1000000000L) / elapsed;
+                Logger.d(LOG_STATS, avgTickJitter/1000, avgStepJitter/1000, wakeupsPerSecond);
+
+                MidiClockMaster master = (null != midi) ? midi.getClockMaster() : null;
+                if (clockMasterRunning && null != master) {
+                    LatencyHistogram jitter = master.getJitter();
+                    Logger.d(LOG_CLOCK_JITTER, jitter.getCount(), jitter.getPercentile(99.0), jitter.getMax());
+                    jitter.reset();
+                }
+
+                MidiTimecodeMaster timecode = (null != midi) ? midi.getTimecodeMaster() : null;
+                if (null != timecode && timecode.isPlaying()) {
+                    LatencyHistogram jitter = timecode.getJitter();
+                    Logger.d(LOG_TIMECODE_JITTER, jitter.getCount(), jitter.getPercentile(99.0), jitter.getMax());
+                    jitter.reset();
+                }
+
+                if (followingClock) {
+                    Logger.d(LOG_CLOCK, clockEstimate.isLocked() ? 1 : 0, clockEstimate.getPhaseError()/1000, clockEstimate.getBpmScaled());
+                }
+
+                LatencyHistogram lateness = waiter.getLateness();
+                if (Logger.DEBUG) {
+                    Logger.d(LOG_WAIT_LATENESS, lateness.getPercentile(50.0), lateness.getPercentile(99.0), lateness.getMax());
+                    if (waiter.isSpinEnabled()) {
+                        Logger.d(LOG_WAIT_MARGIN, waiter.getMargin()/1000);
+                    }
+                }
+                lateness.reset();
+
                 lastUpdateTime= now;
+                wakeupCount = 0;
             }
         }
 
+        public void addWakeup() {
+            wakeupCount++;
+            update();
+        }
+
         public void addTickJitter(long t) {
             tickJitterSum += Math.abs(t);
             if (tickJitterCount < THRESHOLD) {
@@ -104,8 +202,20 @@ public class Sequencer {
     }
 
     public Sequencer() {
+        this(Clock.instance());
+    }
+
+    public Sequencer(Clock clock) {
         assert(null == instance_); // ensure singleton
         instance_ = this;
+
+        this.clock = clock;
+        this.waiter = new PrecisionWaiter(clock, Constants.PRECISION_WAIT_SPIN_BUDGET, Constants.SEQUENCER_PRECISION_WAIT);
+        this.stateWaiter = new PrecisionWaiter(clock, 0.0, false);
+    }
+
+    public Clock getClock() {
+        return clock;
     }
 
     public void addListener(SequencerListener sequencerListener) {
@@ -139,6 +249,7 @@ public class Sequencer {
                     captureInput(new MidiNote(channel, pitch, velocity));
                 }
             });
+            midi.addInputListener(transport);
         }
 
         alloc();
@@ -151,6 +262,7 @@ public class Sequencer {
         };
         worker.setName("sequencer");
         worker.start();
+        clock.attach(worker);
     }
 
     public void destroy() {
@@ -165,9 +277,7 @@ public class Sequencer {
 
         stop();
 
-        synchronized (lock) {
-            lock.notify();
-        }
+        stateWaiter.wakeup();
 
         if (null != worker) {
             worker.interrupt();
@@ -202,6 +312,7 @@ public class Sequencer {
 
     public void rewind() {
         state.rewind();
+        wakeup();
         if (!state.isPlaying()) {
             for (SequencerListener listener : listeners) {
                 listener.onSequencerPositionUpdate(state.getPosition(), true);
@@ -213,6 +324,133 @@ public class Sequencer {
         return state.getMode();
     }
 
+    public void setLookaheadTime(long lookaheadTime) {
+        this.lookaheadTime = Math.max(0, lookaheadTime);
+        notifyStateChange();
+    }
+
+    public long getLookaheadTime() {
+        return lookaheadTime;
+    }
+
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+        notifyStateChange();
+    }
+
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    public void setCatchUpPolicy(int catchUpPolicy) {
+        this.catchUpPolicy = catchUpPolicy;
+    }
+
+    public int getCatchUpPolicy() {
+        return catchUpPolicy;
+    }
+
+    public void setCatchUpThreshold(long catchUpThreshold) {
+        this.catchUpThreshold = Math.max(0, catchUpThreshold);
+    }
+
+    public long getCatchUpThreshold() {
+        return catchUpThreshold;
+    }
+
+    public void setClockSlave(boolean clockSlave) {
+        this.clockSlave = clockSlave;
+        notifyStateChange();
+    }
+
+    public boolean isClockSlave() {
+        return clockSlave;
+    }
+
+    public void setClockMaster(boolean clockMaster) {
+        this.clockMaster = clockMaster;
+    }
+
+    public boolean isClockMaster() {
+        return clockMaster;
+    }
+
+    public void setTimecodeMaster(boolean timecodeMaster) {
+        this.timecodeMaster = timecodeMaster;
+        if (!timecodeMaster) {
+            stopTimecodeMaster();
+        }
+    }
+
+    public boolean isTimecodeMaster() {
+        return timecodeMaster;
+    }
+
+    public void setTimecodeRate(int timecodeRate) {
+        // MidiTimecode.RATE_*, used with the next start
+        this.timecodeRate = timecodeRate & 0x3;
+    }
+
+    public int getTimecodeRate() {
+        return timecodeRate;
+    }
+
+    public void setTimecodeChase(boolean timecodeChase) {
+        this.timecodeChase = timecodeChase;
+        notifyStateChange();
+    }
+
+    public boolean isTimecodeChase() {
+        return timecodeChase;
+    }
+
+    public void setTimecodeOffset(long timecodeOffset) {
+        // timecode of song position 0, NANOSECONDS since 00:00:00:00
+        this.timecodeOffset = timecodeOffset;
+    }
+
+    public long getTimecodeOffset() {
+        return timecodeOffset;
+    }
+
+    public boolean isChasingTimecode() {
+        return chasingTimecode;
+    }
+
+    public void setTransportSlave(boolean transportSlave) {
+        this.transportSlave = transportSlave;
+    }
+
+    public boolean isTransportSlave() {
+        return transportSlave;
+    }
+
+    public long getSlaveStartOffset() {
+        // last slave start: master's start message to the first tick, NANOSECONDS
+        return slaveStartOffset;
+    }
+
+    public boolean isFollowingClock() {
+        // true while tick deadlines come from a locked external clock
+        return followingClock;
+    }
+
+    public void setPrecisionWait(boolean enable) {
+        waiter.setSpinEnabled(enable);
+    }
+
+    public boolean isPrecisionWait() {
+        return waiter.isSpinEnabled();
+    }
+
+    public PrecisionWaiter getWaiter() {
+        return waiter;
+    }
+
+    public void wakeup() {
+        waiter.wakeup();
+    }
+
     public SequencerTrack addTrack(SequencerTrack track) {
         if (null == tracks) {
             tracks = new ArrayList<>();
@@ -345,67 +583,27 @@ public class Sequencer {
         return tracks.get(track);
     }
 
+    void onTransportCommand() {
+        // dispatch thread, the command itself is already queued
+        notifyStateChange();
+    }
+
     private void notifyStateChange() {
-        synchronized (lock) {
-            lock.notify();
-        }
+        stateWaiter.wakeup();
+        wakeup();
     }
 
     private boolean waitStateChange(long timeoutNanos) {
-        long tmWait = timeoutNanos / 1000000;
-        if (tmWait < 1) {
-            return !Thread.interrupted();
-        }
-        synchronized (lock) {
-            try {
-                lock.wait(tmWait);
-            } catch (InterruptedException e) {
-                return false;
-            }
-        }
-        return true;
+        return stateWaiter.waitNanos(timeoutNanos);
     }
 
-    private boolean waitNanos(long waitTime, Object sync) {
-
-        long correctionTime = 0;
-
-        long t = System.nanoTime();
-        long tEnd = t + waitTime - correctionTime;
-
-        if (t >= tEnd) {
-            return !Thread.interrupted();
-        }
-
-        while (t < tEnd) {
-            long remainingWait = tEnd - t;
-            if (null != sync) {
-                synchronized (lock) {
-                    try {
-                        long tmWait = remainingWait / 1000000;
-                        if (tmWait > 0)
-                        {
-                            lock.wait(tmWait);
-                        }
-                    } catch (InterruptedException e) {
-                        return false;
-                    }
-                }
-            } else {
-                LockSupport.parkNanos(remainingWait);
-                if (Thread.interrupted()) {
-                    return false;
-                }
-            }
-            t = System.nanoTime();
-        }
-
-        return true;
-
+    private boolean waitNanos(long waitTime) {
+        return waiter.waitNanos(waitTime);
     }
 
     public void allTracksOff() {
         if (null != midi) {
+            midi.clearScheduledMidiOutput();
             for (SequencerTrack track : tracks) {
                 track.allNotesOff();
             }
@@ -434,7 +632,7 @@ public class Sequencer {
     }
 
     long getTimeNanos() {
-        return System.nanoTime();
+        return clock.nanoTime();
     }
 
     private void sequencerLoop() {
@@ -446,33 +644,100 @@ public class Sequencer {
         long currentStep = -1;
         long lastStepTime = 0;
         long lastTickTime = 0;
-        long nextTickTime = 0;
+        long tempoEpoch = -1;
+        long tempoStartTick = 0;
+
+        timebase.stop();
 
         allTracksOff();
 
         while (!Thread.interrupted()) {
 
+            if (handleTransport() || chaseTimecode(getTimeNanos())) {
+                currentStep = -1;
+                lastStepTime = 0;
+                lastTickTime = 0;
+            }
+
             if (state.isPlaying()) {
 
-                long tickTimeNano = globals.getTickTimeNano();
+                long lookahead = lookaheadTime;
+                boolean eventMode = eventDriven;
 
                 long tmNow = getTimeNanos();
-                if (tmNow < nextTickTime) {
-                    long waitTime = nextTickTime - tmNow;
-                    if (!waitNanos(waitTime, null)) {
+                boolean timebaseStarted = false;
+                if (!timebase.isRunning()) {
+                    stopClockMaster(); // restarts with the first tick
+                    long rampProgress = timebase.getTick() - tempoStartTick;
+                    if (0 != slaveStartTime) {
+                        // first tick on the master's clock pulse
+                        timebase.start(slaveStartTime);
+                        slaveStartTime = 0;
+                    } else {
+                        timebase.start(tmNow + lookahead);
+                        clockAnchorTime = 0;
+                        clockLatency = 0;
+                    }
+                    tempoStartTick = -rampProgress;
+                    followingClock = false;
+                    timebaseStarted = true;
+                }
+
+                // one tempo snapshot per iteration, ramps count ticks from where they were picked up
+                SequencerTempo tempo = globals.getTempo();
+                if (tempo.getEpoch() != tempoEpoch) {
+                    tempoEpoch = tempo.getEpoch();
+                    tempoStartTick = timebase.getTick();
+                }
+                long tempoTicks = timebase.getTick() - tempoStartTick;
+                if (chasingTimecode || !followClock(tmNow)) {
+                    timebase.setTempo(tempo.getBpmScaledAt(tempoTicks));
+                }
+
+                if (timebaseStarted) {
+                    // with the tempo of the first tick
+                    startTimecodeMaster();
+                }
+
+                if (currentStep >= 0 && tmNow - timebase.getTickTime() > catchUpThreshold) {
+                    catchUp(tmNow);
+                    currentStep = state.getPosition().getStep();
+                }
+
+                // in event driven mode, skip over ticks where nothing happens
+                long skipTicks = 0;
+                if (eventMode && currentStep >= 0 && !state.isRewindRequested() && !tempo.isRamping(tempoTicks)) {
+                    skipTicks = ticksUntilNextEvent(state.getPosition()) - 1;
+                    if (clockMasterRunning) {
+                        // never skip the tick that queues the next clock pulse
+                        skipTicks = Math.min(skipTicks, Math.max(0, clockPulsePosition / MidiClock.PULSES_PER_QUARTER - 1 - timebase.getTick()));
+                    }
+                }
+
+                long tmRender = timebase.getTickTime(timebase.getTick() + skipTicks);
+                if (tmNow < tmRender - lookahead) {
+                    // render ahead in blocks: sleep until half of the lookahead window is consumed
+                    long waitTime = tmRender - lookahead / 2 - tmNow;
+                    if (!waitNanos(waitTime)) {
                         break;
                     }
-                } else {
-                    if (0 == nextTickTime ) {
-                        nextTickTime = tmNow;
+                    if (Debug.SHOW_SCHEDULING_STATS) {
+                        stats.addWakeup();
                     }
+                    // transport, tempo or pattern might have changed meanwhile
+                    continue;
                 }
 
-                nextTickTime += tickTimeNano;
-                if (nextTickTime < tmNow) {
-                    nextTickTime = tmNow;
+                if (skipTicks > 0) {
+                    state.skip(skipTicks);
+                    skipTracks(skipTicks);
+                    timebase.advance(skipTicks);
                 }
 
+                long tick = timebase.getTick();
+                long tickDueTime = timebase.getTickTime();
+                timebase.advance(1);
+
                 if (!state.isPlaying()) {
                     continue;
                 }
@@ -483,7 +748,7 @@ public class Sequencer {
                     currentStep = 0;
                     lastStepTime = 0;
                     lastTickTime = 0;
-                    nextTickTime = 0;
+                    timebase.stop();
 
                     for (SequencerListener listener : listeners) {
                         listener.onSequencerPositionUpdate(state.getPosition(), true);
@@ -492,16 +757,26 @@ public class Sequencer {
                     continue;
                 }
 
+                if (slaveStartPending) {
+                    slaveStartPending = false;
+                    slaveStartOffset = tmStart - slaveRequestTime;
+                    Logger.i(LOG_SLAVE_START, (slavePulseTime - slaveRequestTime) / 1000, (tmStart - slavePulseTime) / 1000, clockLatency / 1000);
+                }
+
+                if (clockMaster || clockMasterRunning) {
+                    sendClockPulses(tick);
+                }
+
                 state.increment();
                 SequencerPosition position = state.getPosition();
                 sequenceTick(position);
 
-                if (Debug.SHOW_SCHEDULING_STATS || Debug.SHOW_SCHEDULING_JITTER_WARNINGS) {
+                if ((Debug.SHOW_SCHEDULING_STATS || Debug.SHOW_SCHEDULING_JITTER_WARNINGS) && 0 == lookahead && !eventMode) {
                     long tmElapsed = (lastTickTime > 0) ? tmStart - lastTickTime : 0;
                     lastTickTime = tmStart;
 
                     if (tmElapsed > 0) {
-                        long tickTime = globals.getTickTimeNano();
+                        long tickTime = tempo.getTickTimeNano();
                         long diffTime = tmElapsed - tickTime;
 
                         if (Debug.SHOW_SCHEDULING_STATS) {
@@ -509,7 +784,7 @@ public class Sequencer {
                         }
 
                         if (Math.abs(diffTime) > Debug.SHOW_SCHEDULING_JITTER_TICK_LIMIT) {
-                            Logger.d(TAG, "tick jitter: " + tmElapsed + " / " + tickTime + " / " + diffTime + " (" + diffTime / 1000 + "µs)");
+                            Logger.d(LOG_TICK_JITTER, tmElapsed, tickTime, diffTime);
                         }
                     }
                 }
@@ -519,12 +794,12 @@ public class Sequencer {
 
                 if (step > currentStep || (step != currentStep && state.isOverrun())) {
 
-                    if (Debug.SHOW_SCHEDULING_STATS || Debug.SHOW_SCHEDULING_JITTER_WARNINGS) {
+                    if ((Debug.SHOW_SCHEDULING_STATS || Debug.SHOW_SCHEDULING_JITTER_WARNINGS) && 0 == lookahead) {
                         long tmElapsed = (lastStepTime > 0) ? tmStart - lastStepTime : 0;
                         lastStepTime = tmStart;
 
                         if (tmElapsed > 0) {
-                            long stepTime = globals.getTickTimeNano() * Constants.TICKS_PER_STEP;
+                            long stepTime = tempo.getTickTimeNano() * Constants.TICKS_PER_STEP;
                             long diffTime = tmElapsed - stepTime;
 
                             if (Debug.SHOW_SCHEDULING_STATS) {
@@ -532,7 +807,7 @@ public class Sequencer {
                             }
 
                             if (Math.abs(diffTime) > Debug.SHOW_SCHEDULING_JITTER_STEP_LIMIT) {
-                                Logger.d(TAG, "step jitter: " + tmElapsed + " / " + stepTime + " / " + diffTime + " (" + diffTime / 1000 + "µs)");
+                                Logger.d(LOG_STEP_JITTER, tmElapsed, stepTime, diffTime);
                             }
                         }
                     }
@@ -543,7 +818,11 @@ public class Sequencer {
                 }
 
                 if (null != midi) {
-                    midi.flushMidiOutput();
+                    if (lookahead > 0) {
+                        midi.flushMidiOutput(tickDueTime / 1000);
+                    } else {
+                        midi.flushMidiOutput();
+                    }
                 }
 
                 for (SequencerListener listener : listeners) {
@@ -552,12 +831,14 @@ public class Sequencer {
 
             } else {
                 allTracksOff();
+                stopClockMaster();
+                stopTimecodeMaster();
 
                 //Logger.d(TAG, "sequencer paused");
-                if (!waitStateChange(250000000)) {
+                if (!waitStateChange(timecodeChase ? Constants.SEQUENCER_TIMECODE_POLL_TIME : 250000000)) {
                     break;
                 }
-                nextTickTime = 0; // immediately set active
+                timebase.stop(); // immediately set active
                 currentStep = -1;
             }
         }
@@ -565,6 +846,274 @@ public class Sequencer {
         allTracksOff();
     }
 
+    private boolean followClock(long tmNow) {
+        // slave mode: tick deadlines come from the estimated external clock timeline
+        MidiClock clock = (clockSlave && null != midi) ? midi.getClock() : null;
+        if (null == clock || !clock.getEstimate(clockEstimate, tmNow) || !clockEstimate.isLocked()) {
+            followingClock = false;
+            return false;
+        }
+
+        if (followingClock && clockEstimate.getVersion() == clockVersion) {
+            return true; // no new pulse, the timebase extrapolates
+        }
+        clockVersion = clockEstimate.getVersion();
+
+        double ticksPerPulse = (double) Constants.TICKS_PER_QUARTER_NOTE / MidiClock.PULSES_PER_QUARTER;
+        long tick = timebase.getTick();
+
+        if (!followingClock) {
+            if (0 != clockAnchorTime) {
+                // slave start: timebase tick 0 is the pulse the master started on
+                long anchorPulse = clockEstimate.getPulse() + Math.round((clockAnchorTime - clockEstimate.getPulseTime()) / clockEstimate.getPeriod());
+                clockTickOffset = -anchorPulse * ticksPerPulse;
+            } else {
+                // pick up the clock at the current position, the next tick keeps its deadline
+                double pulseAtTick = clockEstimate.getPulse() + (timebase.getTickTime() - clockEstimate.getPulseTime()) / clockEstimate.getPeriod();
+                clockTickOffset = tick - pulseAtTick * ticksPerPulse;
+            }
+            followingClock = true;
+        }
+
+        timebase.setTempo(clockEstimate.getBpmScaled());
+        timebase.rebase(clockEstimate.getTime((tick - clockTickOffset) / ticksPerPulse) + clockLatency);
+
+        return true;
+    }
+
+    private void sendClockPulses(long tick) {
+        // master mode: 24 pulses per quarter, one every TICKS_PER_QUARTER_NOTE / 24 ticks.
+        // Positions are counted in 24ths of a tick, so the fraction never accumulates,
+        // and each pulse is interpolated between the deadlines of its tick. Pulses are
+        // queued one tick ahead, the clock thread has them before they are due.
+        MidiClockMaster master = (null != midi) ? midi.getClockMaster() : null;
+        if (!clockMaster || null == master || followingClock || 0 != clockAnchorTime) {
+            // disabled, or another device is the clock source
+            stopClockMaster();
+            return;
+        }
+
+        if (!timebase.isRunning()) {
+            return;
+        }
+
+        long tickPulses = tick * MidiClock.PULSES_PER_QUARTER;
+
+        if (!clockMasterRunning) {
+            // start at the first pulse from the current song position the song
+            // position pointer can express (MIDI beats of 6 pulses), the tick
+            // played now is tick + 1, song pulse 0 goes out with it
+            long songTick = state.getPosition().getTick();
+            long songPulse = (songTick * MidiClock.PULSES_PER_QUARTER + Constants.TICKS_PER_QUARTER_NOTE - 1) / Constants.TICKS_PER_QUARTER_NOTE;
+            songPulse = (songPulse + 5) / 6 * 6;
+            clockPulsePosition = Math.max(tickPulses, tickPulses + songPulse * Constants.TICKS_PER_QUARTER_NOTE - (songTick + 1) * MidiClock.PULSES_PER_QUARTER);
+            master.sendStart(songPulse, timebase.getTickTime(tick) / 1000);
+            clockMasterRunning = true;
+        }
+
+        long endPulses = tickPulses + 2 * MidiClock.PULSES_PER_QUARTER;
+        while (clockPulsePosition < endPulses) {
+            long t = Math.max(tick, clockPulsePosition / MidiClock.PULSES_PER_QUARTER);
+            long fraction = clockPulsePosition - t * MidiClock.PULSES_PER_QUARTER;
+            long t0 = timebase.getTickTime(t);
+            long dueTime = t0 + Math.max(0, (timebase.getTickTime(t + 1) - t0) * fraction / MidiClock.PULSES_PER_QUARTER);
+            master.sendClock(dueTime / 1000);
+            clockPulsePosition += Constants.TICKS_PER_QUARTER_NOTE;
+        }
+    }
+
+    private void stopClockMaster() {
+        if (!clockMasterRunning) {
+            return;
+        }
+        clockMasterRunning = false;
+
+        MidiClockMaster master = (null != midi) ? midi.getClockMaster() : null;
+        if (null != master) {
+            master.sendStop();
+        }
+    }
+
+    private void startTimecodeMaster() {
+        // the timecode follows the song position from the first tick on
+        MidiTimecodeMaster master = (null != midi) ? midi.getTimecodeMaster() : null;
+        if (!timecodeMaster || null == master || chasingTimecode) {
+            stopTimecodeMaster();
+            return;
+        }
+
+        // song time on the exact tick grid of the timebase, like the tick deadlines
+        long songTime = timebase.getDuration(state.getPosition().getTick());
+        master.sendStart(timecodeRate, timecodeOffset + songTime, timebase.getTickTime());
+    }
+
+    private void stopTimecodeMaster() {
+        MidiTimecodeMaster master = (null != midi) ? midi.getTimecodeMaster() : null;
+        if (null != master) {
+            master.sendStop();
+        }
+    }
+
+    private boolean chaseTimecode(long tmNow) {
+        // chase mode: start, stop and locate on incoming timecode, returns true if playback (re)started
+        MidiTimecode timecode = (timecodeChase && null != midi) ? midi.getTimecode() : null;
+        if (null == timecode || !timecode.getEstimate(timecodeEstimate, tmNow) || !timecodeEstimate.isRunning()) {
+            if (chasingTimecode) {
+                chasingTimecode = false;
+                state.stop();
+            }
+            return false;
+        }
+
+        if (!chasingTimecode || !state.isPlaying()) {
+            return locateTimecode(tmNow);
+        }
+
+        if (!timebase.isRunning() || timecodeEstimate.getVersion() == timecodeVersion) {
+            return false; // start pending, or no new quarter frame
+        }
+        timecodeVersion = timecodeEstimate.getVersion();
+
+        // song time of the next tick against the timecode at its deadline
+        long patternNanos = timebase.getDuration(globals.getNumTicks());
+        long dueTime = timebase.getTickTime();
+        long error = (timecodeEstimate.getSongTime(dueTime) - timecodeOffset) - timebase.getDuration(state.getPosition().getTick());
+        if (patternNanos > 0) {
+            // the pattern repeats, the timecode runs on
+            error = ((error % patternNanos) + patternNanos + patternNanos / 2) % patternNanos - patternNanos / 2;
+        }
+
+        if (Math.abs(error) > Constants.SEQUENCER_TIMECODE_CHASE_LIMIT) {
+            return locateTimecode(tmNow);
+        }
+
+        // small errors: pull the grid towards the timecode, a quarter per quarter frame
+        timebase.rebase(dueTime - error / 4);
+        return false;
+    }
+
+    private boolean locateTimecode(long tmNow) {
+        // first tick on the grid of the timecode, a constant latency from now
+        long bpmScaled = globals.getTempo().getBpmScaled();
+        if (bpmScaled <= 0) {
+            return false;
+        }
+
+        timebase.stop();
+        timebase.setTempo(bpmScaled);
+
+        long startTime = tmNow + Constants.SEQUENCER_SLAVE_LATENCY + lookaheadTime;
+        long songTime = timecodeEstimate.getSongTime(startTime) - timecodeOffset;
+        long tick = timebase.getTicks(songTime);
+
+        slaveStartTime = startTime + timebase.getDuration(tick) - songTime;
+        slaveStartPending = false;
+        clockAnchorTime = 0;
+        clockLatency = 0;
+        chasingTimecode = true;
+        timecodeVersion = timecodeEstimate.getVersion();
+
+        Logger.d(LOG_TIMECODE_LOCATE, tick, (timebase.getDuration(tick) - songTime) / 1000, (slaveStartTime - tmNow) / 1000);
+
+        allTracksOff();
+        state.locate(tick);
+        state.resume();
+        return true;
+    }
+
+    private boolean handleTransport() {
+        // commands of the master, returns true if playback (re)started
+        boolean started = false;
+
+        while (!transport.isEmpty()) {
+            long tick = (transport.getSongPulse() * Constants.TICKS_PER_QUARTER_NOTE) / MidiClock.PULSES_PER_QUARTER;
+
+            switch (transport.getCommand()) {
+                case SequencerTransport.COMMAND_START: {
+                    // anchored to the clock pulse, a constant latency behind the master
+                    long latency = Constants.SEQUENCER_SLAVE_LATENCY + lookaheadTime;
+                    slavePulseTime = transport.getPulseTime();
+                    slaveRequestTime = transport.getRequestTime();
+                    slaveStartTime = slavePulseTime + latency;
+                    slaveStartPending = true;
+                    clockAnchorTime = slavePulseTime;
+                    clockLatency = latency;
+
+                    allTracksOff();
+                    timebase.stop();
+                    state.locate(tick);
+                    state.resume();
+                    started = true;
+                    break;
+                }
+                case SequencerTransport.COMMAND_STOP: {
+                    state.stop();
+                    break;
+                }
+                case SequencerTransport.COMMAND_LOCATE: {
+                    if (!state.isPlaying()) {
+                        state.locate(tick);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+
+            transport.release();
+        }
+
+        return started;
+    }
+
+    private void catchUp(long tmNow) {
+        // the loop fell behind by more than the threshold (stall, GC, debugger)
+        switch (catchUpPolicy) {
+            case SequencerTimebase.CATCH_UP_SKIP: {
+                // keep the tick due now, drop everything before it
+                long missedTicks = timebase.getTicksDue(tmNow) - 1;
+                if (missedTicks > 0 && !state.isRewindRequested()) {
+                    Logger.d(LOG_SKIPPED, missedTicks);
+                    state.advance(missedTicks);
+                    skipTracks(missedTicks);
+                    timebase.advance(missedTicks);
+                }
+                break;
+            }
+            case SequencerTimebase.CATCH_UP_STRETCH: {
+                Logger.d(LOG_SHIFTED, (tmNow - timebase.getTickTime()) / 1000);
+                timebase.rebase(tmNow);
+                break;
+            }
+            default:
+                // burst: deadlines have passed, missed ticks run back-to-back
+                break;
+        }
+    }
+
+    private long ticksUntilNextEvent(SequencerPosition position) {
+        // next step boundary (note-ons, listener step updates) or earlier note-off
+        long ticks = Constants.TICKS_PER_STEP - position.getTickInStep();
+
+        if (null != tracks) {
+            for (SequencerTrack track : tracks) {
+                ticks = track.ticksUntilNextEvent(ticks);
+            }
+        }
+
+        return Math.max(1, ticks);
+    }
+
+    private void skipTracks(long ticks) {
+        if (null == tracks) {
+            return;
+        }
+
+        for (SequencerTrack track : tracks) {
+            track.skipTicks(ticks);
+        }
+    }
+
     private void sequenceTick(SequencerPosition position) {
         if (null == tracks) {
             return;
@@ -583,7 +1132,7 @@ public class Sequencer {
             return;
         }
 
-        Logger.d(TAG, "sequenceStep " + step);
+        Logger.d(LOG_STEP, step);
 
         double pos = (double) (step * Constants.TICKS_PER_STEP);
 
@@ -27,7 +27,7 @@ public class SequencerControl {
     }
 
     public boolean isValid() {
-        return globals.getBpm() > 0 && globals.getTickTime() > 0;
+        return globals.getTempo().isValid();
     }
 
     public boolean isPlaying() {
@@ -76,10 +76,35 @@ public class SequencerControl {
         }
     }
 
+    synchronized void locate(long tick) {
+        // the next tick played is the one after the given tick
+        rewindRequested = false;
+        rewindDone = false;
+        overrun = false;
+        long numTicks = globals.getNumTicks();
+        position.set((double) (((tick % numTicks) + numTicks) % numTicks));
+    }
+
     synchronized void increment() {
         update(1);
     }
 
+    synchronized void skip(long ticks) {
+        // move forward without passing a step boundary, rewinds are left to increment()
+        if (!isValid() || rewindRequested || ticks < 1) return;
+        position.set((double) (position.getTick() + ticks));
+    }
+
+    synchronized void advance(long ticks) {
+        // jump over dropped ticks, wrapping around at the end of the pattern
+        if (rewindRequested || ticks < 1) return;
+        update(ticks);
+    }
+
+    boolean isRewindRequested() {
+        return rewindRequested;
+    }
+
     private synchronized void update(long elapsedTicks) {
 
         if (!isValid()) return;
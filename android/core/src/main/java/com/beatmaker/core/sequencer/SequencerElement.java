@@ -32,6 +32,7 @@ public class SequencerElement {
 
     public void setActive(boolean active) {
         this.active = active;
+        invalidate();
     }
 
     public void setActive() {
@@ -49,6 +50,7 @@ public class SequencerElement {
     public void clear() {
         active = false;
         config = null;
+        invalidate();
     }
 
     public boolean hasConfig() {
@@ -61,10 +63,19 @@ public class SequencerElement {
 
     public void clearConfig() {
         config = null;
+        invalidate();
     }
 
     public void setConfig(ElementConfig config) {
         this.config = config;
+        invalidate();
+    }
+
+    public void invalidate() {
+        // pattern data changed, let the owning track recompile
+        if (null != parent) {
+            parent.invalidate();
+        }
     }
 
 
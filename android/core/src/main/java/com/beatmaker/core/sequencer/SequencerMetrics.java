@@ -10,13 +10,7 @@ public class SequencerMetrics {
     private final int numQuarters = Constants.NUM_MEASURES * Constants.NUM_QUARTERS_PER_MEASURE;
     private final int numTicks = numQuarters * Constants.TICKS_PER_QUARTER_NOTE;
 
-    private int bpm = 0;
-    private long quarterTime;
-    private long tickTime;
-    private long tickTimeNano;
-    private double tickTimeSec;
-    private long stepTime;
-    private long songTime;
+    private volatile SequencerTempo tempo = SequencerTempo.NONE;
 
     private static SequencerMetrics instance_;
     public static SequencerMetrics instance() {
@@ -30,59 +24,76 @@ public class SequencerMetrics {
         setBpm(Constants.DEFAULT_BPM);
     }
 
-    private void reset() {
-        this.quarterTime = 0;
-        this.tickTime = 0;
-        this.stepTime = 0;
-        this.songTime = 0;
-        this.tickTimeNano = 0;
-        this.tickTimeSec = 0.0;
+    public SequencerTempo getTempo() {
+        // one consistent snapshot, fetch once and use it for the whole tick
+        return tempo;
     }
 
-    private synchronized void update() {
-        if (bpm <= 0.0) {
-            reset();
-            return;
-        }
+    public int getBpm() {
+        return tempo.getBpm();
+    }
 
-        quarterTime = (60000000 / bpm);
-        tickTime = quarterTime / Constants.TICKS_PER_QUARTER_NOTE;
-        stepTime = (quarterTime * Constants.TICKS_PER_STEP) / Constants.TICKS_PER_QUARTER_NOTE;
-        songTime = stepTime * numSteps;
+    public double getBpmExact() {
+        return tempo.getBpmExact();
+    }
 
-        tickTimeNano = 60000000000L / ((long) bpm * Constants.TICKS_PER_QUARTER_NOTE);
-        double quarterTimeSec = 60.0 / bpm;
-        tickTimeSec = quarterTimeSec * (double) Constants.TICKS_PER_QUARTER_NOTE;
+    public long getBpmScaled() {
+        return tempo.getBpmScaled();
     }
 
-    public int getBpm() {
-        return bpm;
+    public void setBpm(int bpm) {
+        setBpmScaled((long) bpm * SequencerTempo.BPM_SCALE);
+    }
+
+    public void setBpm(double bpm) {
+        setBpmScaled(Math.round(bpm * SequencerTempo.BPM_SCALE));
     }
 
-    public synchronized void setBpm(int bpm) {
-        this.bpm = bpm;
-        update();
+    public void setBpmScaled(long bpmScaled) {
+        rampBpmScaled(bpmScaled, 0);
+    }
+
+    public void rampBpm(double bpm, long rampTicks) {
+        rampBpmScaled(Math.round(bpm * SequencerTempo.BPM_SCALE), rampTicks);
+    }
+
+    public void rampBpmScaled(long bpmScaled, long rampTicks) {
+        // writers are serialized, readers never lock
+        synchronized (this) {
+            SequencerTempo current = tempo;
+            long startBpmScaled = current.getBpmScaled();
+            if (startBpmScaled <= 0) {
+                rampTicks = 0;
+            }
+            tempo = new SequencerTempo(current.getEpoch() + 1, startBpmScaled, bpmScaled, rampTicks);
+        }
+
+        // let a sleeping sequencer reschedule with the new tempo
+        Sequencer sequencer = Sequencer.instance();
+        if (null != sequencer) {
+            sequencer.wakeup();
+        }
     }
 
     public long getTickTime() {
-        return tickTime;
+        return tempo.getTickTime();
     }
 
     public long getTickTimeNano() {
-        return tickTimeNano;
+        return tempo.getTickTimeNano();
     }
 
     public double getTickTimeSec() {
-        return tickTimeSec;
+        return tempo.getTickTimeSec();
     }
 
     /*
     public long getQuarterTime() {
-        return quarterTime;
+        return tempo.getQuarterTime();
     }
 
     public long getSongTime() {
-        return songTime;
+        return tempo.getSongTime();
     }
     */
 
@@ -0,0 +1,151 @@
+package com.beatmaker.core.sequencer;
+
+public class SequencerNoteTable {
+
+    public static final int NUM_CHANNELS = 16;
+    public static final int NUM_PITCHES = 128;
+
+    private static final int WORDS_PER_CHANNEL = NUM_PITCHES / 64;
+
+    public interface NoteOffHandler {
+        void onNoteOff(int channel, int pitch);
+    }
+
+    private final long[] activeNotes = new long[NUM_CHANNELS * WORDS_PER_CHANNEL];
+    private int activeChannels; // one bit per channel with sounding notes
+    private int count;
+
+    // pending note-offs keyed by (channel * NUM_PITCHES + pitch)
+    private final SequencerTimingWheel noteOffs = new SequencerTimingWheel(NUM_CHANNELS * NUM_PITCHES);
+    private NoteOffHandler currentHandler;
+
+    private final SequencerTimingWheel.ExpiryHandler expiryHandler = new SequencerTimingWheel.ExpiryHandler() {
+        @Override
+        public void onExpired(int key) {
+            int channel = key / NUM_PITCHES;
+            int pitch = key % NUM_PITCHES;
+            release(channel, pitch);
+            if (null != currentHandler) {
+                currentHandler.onNoteOff(channel, pitch);
+            }
+        }
+    };
+
+    public boolean isEmpty() {
+        return (0 == count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isActive(int channel, int pitch) {
+        int word = channel * WORDS_PER_CHANNEL + (pitch >>> 6);
+        return (activeNotes[word] & (1L << (pitch & 63))) != 0;
+    }
+
+    public long getTick() {
+        return noteOffs.getTick();
+    }
+
+    public long getNoteOffTick(int channel, int pitch) {
+        return noteOffs.getDueTick(channel * NUM_PITCHES + pitch);
+    }
+
+    public void noteOn(int channel, int pitch, int duration) {
+        channel &= 0xf;
+        pitch &= 0x7f;
+
+        int word = channel * WORDS_PER_CHANNEL + (pitch >>> 6);
+        long mask = 1L << (pitch & 63);
+
+        if ((activeNotes[word] & mask) == 0) {
+            activeNotes[word] |= mask;
+            activeChannels |= (1 << channel);
+            count++;
+        }
+
+        // a sounding note is simply rescheduled, long notes cost nothing until due
+        noteOffs.schedule(channel * NUM_PITCHES + pitch, noteOffs.getTick() + Math.max(1, duration));
+    }
+
+    public void noteOff(int channel, int pitch) {
+        channel &= 0xf;
+        pitch &= 0x7f;
+
+        noteOffs.cancel(channel * NUM_PITCHES + pitch);
+        release(channel, pitch);
+    }
+
+    private void release(int channel, int pitch) {
+        int word = channel * WORDS_PER_CHANNEL + (pitch >>> 6);
+        long mask = 1L << (pitch & 63);
+
+        if ((activeNotes[word] & mask) == 0) {
+            return;
+        }
+
+        activeNotes[word] &= ~mask;
+        count--;
+
+        if (!hasActiveNotes(channel)) {
+            activeChannels &= ~(1 << channel);
+        }
+    }
+
+    private boolean hasActiveNotes(int channel) {
+        int ofs = channel * WORDS_PER_CHANNEL;
+        for (int i = 0; i < WORDS_PER_CHANNEL; i++) {
+            if (0 != activeNotes[ofs + i]) return true;
+        }
+        return false;
+    }
+
+    public void update(NoteOffHandler handler) {
+        currentHandler = handler;
+        noteOffs.advance(expiryHandler);
+        currentHandler = null;
+    }
+
+    public void skip(long ticks, NoteOffHandler handler) {
+        currentHandler = handler;
+        noteOffs.advance(ticks, expiryHandler);
+        currentHandler = null;
+    }
+
+    public long ticksUntilNextNoteOff(long limit) {
+        return noteOffs.ticksUntilNextExpiry(limit);
+    }
+
+    public void allNotesOff(NoteOffHandler handler) {
+
+        int channels = activeChannels;
+
+        while (0 != channels) {
+            int channel = Integer.numberOfTrailingZeros(channels);
+            channels &= channels - 1;
+
+            for (int w = 0; w < WORDS_PER_CHANNEL; w++) {
+                long bits = activeNotes[channel * WORDS_PER_CHANNEL + w];
+                while (0 != bits) {
+                    int pitch = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (null != handler) {
+                        handler.onNoteOff(channel, pitch);
+                    }
+                }
+            }
+        }
+
+        clear();
+    }
+
+    public void clear() {
+        for (int i = 0; i < activeNotes.length; i++) {
+            activeNotes[i] = 0;
+        }
+        noteOffs.clear();
+        activeChannels = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,135 @@
+package com.beatmaker.core.sequencer;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiNote;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SequencerPattern {
+
+    /*
+        Packed event layout (64 bits, MSB first):
+
+            TICK (24) | STATUS (8) | DATA1 (8) | DATA2 (8) | DURATION (16)
+
+        The tick occupies the top bits, so sorting the raw values sorts by tick.
+    */
+
+    private static final int TICK_SHIFT = 40;
+    private static final int STATUS_SHIFT = 32;
+    private static final int DATA1_SHIFT = 24;
+    private static final int DATA2_SHIFT = 16;
+
+    public static final long MAX_TICK = 0x7fffffL; // keep packed values positive
+    public static final int MAX_DURATION = 0xffff;
+
+    public static final SequencerPattern EMPTY = new SequencerPattern(new long[0]);
+
+    private final long[] events;
+
+    private SequencerPattern(long[] events) {
+        this.events = events;
+    }
+
+    public static long pack(long tick, int status, int data1, int data2, int duration) {
+        return ((tick & MAX_TICK) << TICK_SHIFT)
+                | ((long) (status & 0xff) << STATUS_SHIFT)
+                | ((long) (data1 & 0xff) << DATA1_SHIFT)
+                | ((long) (data2 & 0xff) << DATA2_SHIFT)
+                | (long) (Math.min(Math.max(duration, 0), MAX_DURATION));
+    }
+
+    public static long getTick(long event) {
+        return event >>> TICK_SHIFT;
+    }
+
+    public static int getStatus(long event) {
+        return (int) (event >>> STATUS_SHIFT) & 0xff;
+    }
+
+    public static int getData1(long event) {
+        return (int) (event >>> DATA1_SHIFT) & 0xff;
+    }
+
+    public static int getData2(long event) {
+        return (int) (event >>> DATA2_SHIFT) & 0xff;
+    }
+
+    public static int getDuration(long event) {
+        return (int) event & MAX_DURATION;
+    }
+
+    public static SequencerPattern compile(SequencerTrack track) {
+
+        int numSteps = track.getNumElements();
+        ElementConfig trackConfig = track.getConfig();
+
+        long[] buffer = new long[numSteps * 4];
+        int count = 0;
+
+        for (int i = 0; i < numSteps; i++) {
+            SequencerStep step = track.getElement(i);
+            if (null == step || !step.isActive()) {
+                continue;
+            }
+
+            ElementConfig config = step.hasConfig() ? step.getConfig() : trackConfig;
+            if (null == config) {
+                continue;
+            }
+
+            List<MidiNote> notes = config.getNotes();
+            if (null == notes) {
+                continue;
+            }
+
+            long tick = (long) i * Constants.TICKS_PER_STEP;
+            int status = 0x90 | (config.getChannel() & 0xf);
+            int duration = config.getDuration();
+
+            for (MidiNote note : notes) {
+                if (count >= buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                buffer[count++] = pack(tick, status, note.getPitch(), note.getVelocity(), duration);
+            }
+        }
+
+        if (0 == count) {
+            return EMPTY;
+        }
+
+        long[] events = Arrays.copyOf(buffer, count);
+        Arrays.sort(events);
+
+        return new SequencerPattern(events);
+    }
+
+    public int size() {
+        return events.length;
+    }
+
+    public boolean isEmpty() {
+        return (0 == events.length);
+    }
+
+    public long get(int index) {
+        return events[index];
+    }
+
+    public int seek(long tick) {
+        // index of the first event at or after the given tick
+        int lo = 0;
+        int hi = events.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getTick(events[mid]) < tick) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
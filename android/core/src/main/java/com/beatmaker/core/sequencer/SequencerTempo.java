@@ -0,0 +1,124 @@
+package com.beatmaker.core.sequencer;
+
+import com.beatmaker.config.Constants;
+
+public final class SequencerTempo {
+
+    /*
+        Immutable tempo snapshot. All derived times belong to the same tempo,
+        readers fetch one snapshot and use it for the whole tick.
+
+        A ramp moves linearly from the start to the target tempo over rampTicks,
+        counted from the tick where the snapshot was picked up. Interpolation
+        is integer only, so a ramp always produces the same tick deadlines.
+    */
+
+    public static final long BPM_SCALE = 1000; // tempo resolution, 1/1000 BPM
+
+    public static final SequencerTempo NONE = new SequencerTempo(0, 0, 0, 0);
+
+    private final long epoch;
+    private final long startBpmScaled;
+    private final long bpmScaled; // target tempo
+    private final long rampTicks;
+
+    private final int bpm;
+    private final long quarterTime; // MICROSECONDS
+    private final long tickTime;
+    private final long stepTime;
+    private final long songTime;
+    private final long tickTimeNano;
+    private final double tickTimeSec;
+
+    SequencerTempo(long epoch, long startBpmScaled, long bpmScaled, long rampTicks) {
+        this.epoch = epoch;
+        this.bpmScaled = Math.max(0, bpmScaled);
+        this.startBpmScaled = (rampTicks > 0) ? Math.max(0, startBpmScaled) : this.bpmScaled;
+        this.rampTicks = (rampTicks > 0) ? rampTicks : 0;
+
+        this.bpm = (int) ((this.bpmScaled + BPM_SCALE / 2) / BPM_SCALE);
+
+        if (this.bpmScaled > 0) {
+            // derived durations are rounded, exact tick deadlines come from SequencerTimebase
+            quarterTime = (60000000L * BPM_SCALE) / this.bpmScaled;
+            tickTime = quarterTime / Constants.TICKS_PER_QUARTER_NOTE;
+            stepTime = (quarterTime * Constants.TICKS_PER_STEP) / Constants.TICKS_PER_QUARTER_NOTE;
+            songTime = stepTime * Constants.NUM_STEPS;
+            tickTimeNano = (60000000000L * BPM_SCALE) / (this.bpmScaled * Constants.TICKS_PER_QUARTER_NOTE);
+            tickTimeSec = (double) tickTimeNano / 1000000000.0;
+        } else {
+            quarterTime = 0;
+            tickTime = 0;
+            stepTime = 0;
+            songTime = 0;
+            tickTimeNano = 0;
+            tickTimeSec = 0.0;
+        }
+    }
+
+    public boolean isValid() {
+        return bpm > 0 && tickTime > 0;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getBpm() {
+        return bpm;
+    }
+
+    public long getBpmScaled() {
+        return bpmScaled;
+    }
+
+    public double getBpmExact() {
+        return (double) bpmScaled / BPM_SCALE;
+    }
+
+    public long getStartBpmScaled() {
+        return startBpmScaled;
+    }
+
+    public long getRampTicks() {
+        return rampTicks;
+    }
+
+    public boolean isRamping(long ticksSinceEpoch) {
+        return ticksSinceEpoch < rampTicks;
+    }
+
+    public long getBpmScaledAt(long ticksSinceEpoch) {
+        if (ticksSinceEpoch >= rampTicks) {
+            return bpmScaled;
+        }
+        if (ticksSinceEpoch <= 0) {
+            return startBpmScaled;
+        }
+        return startBpmScaled + ((bpmScaled - startBpmScaled) * ticksSinceEpoch) / rampTicks;
+    }
+
+    public long getQuarterTime() {
+        return quarterTime;
+    }
+
+    public long getTickTime() {
+        return tickTime;
+    }
+
+    public long getStepTime() {
+        return stepTime;
+    }
+
+    public long getSongTime() {
+        return songTime;
+    }
+
+    public long getTickTimeNano() {
+        return tickTimeNano;
+    }
+
+    public double getTickTimeSec() {
+        return tickTimeSec;
+    }
+}
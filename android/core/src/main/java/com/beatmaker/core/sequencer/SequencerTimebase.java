@@ -0,0 +1,145 @@
+package com.beatmaker.core.sequencer;
+
+import com.beatmaker.config.Constants;
+
+public class SequencerTimebase {
+
+    /*
+        Absolute tick deadlines from an anchor and an exact rational tempo:
+
+            time(k) = anchorTime + (k - anchorTick) * 60e9 * BPM_SCALE / (bpm * BPM_SCALE * TPQ)
+
+        Nothing is accumulated, so rounding errors never add up over a long set.
+        Tempo changes re-anchor at the next tick, the deadline of that tick is kept.
+    */
+
+    public static final int CATCH_UP_BURST = 0;   // play missed ticks back-to-back
+    public static final int CATCH_UP_SKIP = 1;    // drop missed ticks, stay on the grid
+    public static final int CATCH_UP_STRETCH = 2; // shift the grid, nothing is dropped
+
+    private static final long NANOS_PER_MINUTE = 60000000000L;
+
+    private final long ticksPerQuarter;
+
+    private long bpmScaled;
+    private long tickNum; // tick duration = tickNum / tickDen nanoseconds
+    private long tickDen;
+    private long tickQuot;
+    private long tickRem;
+
+    private long anchorTime;
+    private long anchorTick;
+    private long tick;
+    private boolean running;
+
+    public SequencerTimebase() {
+        this(Constants.TICKS_PER_QUARTER_NOTE);
+    }
+
+    public SequencerTimebase(long ticksPerQuarter) {
+        this.ticksPerQuarter = ticksPerQuarter;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start(long time) {
+        anchorTime = time;
+        anchorTick = 0;
+        tick = 0;
+        running = true;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public long getBpmScaled() {
+        return bpmScaled;
+    }
+
+    public boolean setTempo(long bpmScaled) {
+        // tempo as BPM * SequencerTempo.BPM_SCALE
+        if (bpmScaled == this.bpmScaled || bpmScaled <= 0) {
+            return false;
+        }
+
+        if (running) {
+            rebase(getTickTime(tick));
+        }
+
+        this.bpmScaled = bpmScaled;
+        tickNum = NANOS_PER_MINUTE * SequencerTempo.BPM_SCALE;
+        tickDen = bpmScaled * ticksPerQuarter;
+        tickQuot = tickNum / tickDen;
+        tickRem = tickNum % tickDen;
+
+        return true;
+    }
+
+    public void rebase(long time) {
+        // the next tick is due at the given time, following ticks keep the tempo
+        anchorTime = time;
+        anchorTick = tick;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public void advance(long ticks) {
+        tick += ticks;
+    }
+
+    public long getTickTime() {
+        return getTickTime(tick);
+    }
+
+    public long getTickTime(long t) {
+        if (0 == tickDen) {
+            return anchorTime; // no tempo yet
+        }
+        long dt = t - anchorTick;
+        return anchorTime + dt * tickQuot + (dt * tickRem) / tickDen;
+    }
+
+    public long getDuration(long ticks) {
+        // exact time of the given number of ticks at the current tempo, NANOSECONDS
+        if (0 == tickDen) {
+            return 0;
+        }
+        return ticks * tickQuot + (ticks * tickRem) / tickDen;
+    }
+
+    public long getTicks(long duration) {
+        // smallest number of ticks lasting at least duration (NANOSECONDS) at the current tempo
+        if (0 == tickDen || duration <= 0) {
+            return 0;
+        }
+
+        // tickQuot underestimates the tick duration, start above and step down
+        long n = duration / Math.max(1, tickQuot) + 1;
+        while (n > 0 && getDuration(n - 1) >= duration) {
+            n--;
+        }
+
+        return n;
+    }
+
+    public long getTicksDue(long now) {
+        // number of ticks, starting with the next one, whose deadline is not after now
+        long late = now - getTickTime(tick);
+        if (late < 0 || 0 == tickDen) {
+            return 0;
+        }
+
+        // tickQuot underestimates the tick duration, so this never undercounts
+        long n = (tickQuot > 0) ? late / tickQuot + 1 : 1;
+        while (n > 1 && getTickTime(tick + n - 1) > now) {
+            n--;
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,178 @@
+package com.beatmaker.core.sequencer;
+
+import java.util.Arrays;
+
+public class SequencerTimingWheel {
+
+    /*
+        Hashed timing wheel over absolute ticks. Each key (e.g. channel/pitch)
+        owns at most one pending entry, entries are kept in intrusive doubly
+        linked lists per slot. Advancing one tick only visits the due slot,
+        entries scheduled more than one revolution ahead are skipped there.
+    */
+
+    public static final int DEFAULT_SLOTS = 256;
+
+    private static final int NONE = -1;
+
+    public interface ExpiryHandler {
+        void onExpired(int key);
+    }
+
+    private final int slotMask;
+    private final int[] slots;
+    private final int[] next;
+    private final int[] prev;
+    private final long[] dueTicks;
+    private final boolean[] scheduled;
+    private long tick;
+    private int count;
+
+    public SequencerTimingWheel(int numKeys) {
+        this(numKeys, DEFAULT_SLOTS);
+    }
+
+    public SequencerTimingWheel(int numKeys, int numSlots) {
+        if (numSlots < 1 || (numSlots & (numSlots - 1)) != 0) {
+            throw new IllegalArgumentException("number of slots must be a power of two");
+        }
+
+        slotMask = numSlots - 1;
+        slots = new int[numSlots];
+        next = new int[numKeys];
+        prev = new int[numKeys];
+        dueTicks = new long[numKeys];
+        scheduled = new boolean[numKeys];
+
+        Arrays.fill(slots, NONE);
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return (0 == count);
+    }
+
+    public boolean isScheduled(int key) {
+        return scheduled[key];
+    }
+
+    public long getDueTick(int key) {
+        return scheduled[key] ? dueTicks[key] : -1;
+    }
+
+    public void schedule(int key, long dueTick) {
+        if (scheduled[key]) {
+            unlink(key);
+        }
+
+        if (dueTick <= tick) {
+            dueTick = tick + 1;
+        }
+
+        int slot = (int) (dueTick & slotMask);
+        int head = slots[slot];
+
+        dueTicks[key] = dueTick;
+        prev[key] = NONE;
+        next[key] = head;
+        if (NONE != head) {
+            prev[head] = key;
+        }
+        slots[slot] = key;
+        scheduled[key] = true;
+        count++;
+    }
+
+    public void cancel(int key) {
+        if (scheduled[key]) {
+            unlink(key);
+        }
+    }
+
+    private void unlink(int key) {
+        int p = prev[key];
+        int n = next[key];
+
+        if (NONE != p) {
+            next[p] = n;
+        } else {
+            slots[(int) (dueTicks[key] & slotMask)] = n;
+        }
+
+        if (NONE != n) {
+            prev[n] = p;
+        }
+
+        scheduled[key] = false;
+        count--;
+    }
+
+    public void advance(ExpiryHandler handler) {
+
+        tick++;
+
+        if (0 == count) {
+            return;
+        }
+
+        int key = slots[(int) (tick & slotMask)];
+        while (NONE != key) {
+            int n = next[key];
+            if (dueTicks[key] <= tick) {
+                unlink(key);
+                handler.onExpired(key);
+            }
+            key = n;
+        }
+    }
+
+    public void advance(long ticks, ExpiryHandler handler) {
+        if (0 == count) {
+            tick += ticks;
+            return;
+        }
+
+        for (long i = 0; i < ticks; i++) {
+            advance(handler);
+        }
+    }
+
+    public long ticksUntilNextExpiry(long limit) {
+        // number of advance() calls until the next entry expires, at most limit
+        if (0 == count) {
+            return limit;
+        }
+
+        long horizon = Math.min(limit, slots.length);
+        for (long i = 1; i <= horizon; i++) {
+            long t = tick + i;
+            int key = slots[(int) (t & slotMask)];
+            while (NONE != key) {
+                if (dueTicks[key] <= t) {
+                    return i;
+                }
+                key = next[key];
+            }
+        }
+
+        return horizon;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, NONE);
+        Arrays.fill(scheduled, false);
+        count = 0;
+    }
+
+    public void reset() {
+        clear();
+        tick = 0;
+    }
+}
@@ -2,74 +2,27 @@ package com.beatmaker.core.sequencer;
 
 import com.beatmaker.config.Constants;
 import com.beatmaker.core.midi.MidiBase;
-import com.beatmaker.core.midi.MidiData;
-import com.beatmaker.core.midi.MidiNote;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SequencerTrack extends SequencerElement  {
 
     private static final String TAG = "SequencerTrack";
     private String name;
     private SequencerStep[] steps;
-    private Map<Integer, MidiNoteState> playingNotes = new HashMap<>();
+    private final SequencerNoteTable playingNotes = new SequencerNoteTable();
+    private final AtomicReference<SequencerPattern> publishedPattern = new AtomicReference<>();
+    private SequencerPattern pattern = SequencerPattern.EMPTY; // owned by the sequencer thread
+    private int cursor;
+    private long cursorTick = -1;
 
-    private class MidiNoteState extends MidiNote {
-
-        private int duration;
-        private boolean active;
-
-        public MidiNoteState(MidiNote note, int duration) {
-            super(note);
-            this.duration = duration;
-            this.active = true;
-        }
-
-        public MidiNoteState(int channel, int pitch, int velocity, int duration) {
-            super(channel, pitch, velocity);
-            this.duration = duration;
-            this.active = true;
-        }
-
-        public void set(MidiNote note, int duration) {
-            super.set(note);
-            this.duration = duration;
-            this.active = true;
-        }
-
-        public void set(int channel, int note, int velocity, int duration) {
-            super.set(channel, note, velocity);
-            this.duration = duration;
-            this.active = true;
-        }
-
-        public void setActive(boolean active) {
-            this.active = active;
-        }
-
-        public boolean isActive() {
-            return active;
+    private final SequencerNoteTable.NoteOffHandler noteOffHandler = new SequencerNoteTable.NoteOffHandler() {
+        @Override
+        public void onNoteOff(int channel, int pitch) {
+            //Logger.d(TAG, "note off:" +  pitch);
+            MidiBase.instance().enqueueTrackOutput(getIndex(), 0x8, 0x80 | channel, pitch, 0);
         }
-
-        public int getDuration() {
-            return duration;
-        }
-
-        public void setDuration(int duration) {
-            this.duration = duration;
-        }
-
-        public void update() {
-            if (duration > 0) duration--;
-        }
-
-        public boolean isExpired() {
-            return (duration <= 0);
-        }
-    }
+    };
 
     public SequencerTrack() {
         super(null, 0);
@@ -101,6 +54,7 @@ public class SequencerTrack extends SequencerElement  {
         for (int i = 0; i< steps.length; i++) {
             steps[i] = new SequencerStep(this, i);
         }
+        invalidate();
     }
 
     public String getName() {
@@ -132,81 +86,54 @@ public class SequencerTrack extends SequencerElement  {
         return (int) (((long) pos) / Constants.TICKS_PER_STEP);
     }
 
-    public synchronized void notesOn(SequencerElement element) {
-        ElementConfig config = element.getConfig();
-        if (null == config && element.hasParent()) config = element.getParent().getConfig();
-
-        List<MidiNote> notes = config.getNotes();
-        if (null != notes) {
-            for (MidiNote note : notes) {
-
-                int pitch = note.getPitch();
+    @Override
+    public synchronized void invalidate() {
+        // compile on the editing thread, the sequencer picks it up at the next step
+        publishedPattern.set(SequencerPattern.compile(this));
+    }
 
-                // map next midi note to play to current midi channel
-                note.setChannel(config.getChannel());
+    public SequencerPattern getPattern() {
+        SequencerPattern p = publishedPattern.get();
+        return (null != p) ? p : pattern;
+    }
 
-                MidiNoteState noteState = playingNotes.get(pitch);
-                if (null != noteState) {
-                    if (noteState.active) {
-                        //Logger.d(TAG, "(update) note off:" +  noteState.getPitch());
+    private void noteOn(long event) {
 
-                        MidiData m = MidiData.noteOff(noteState);
-                        MidiBase.instance().enqueueMidiOutput(m);
-                    }
+        int channel = SequencerPattern.getStatus(event) & 0xf;
+        int pitch = SequencerPattern.getData1(event);
+        int velocity = SequencerPattern.getData2(event);
+        int duration = SequencerPattern.getDuration(event);
 
-                    // refresh midi note
-                    noteState.set(note, Constants.DEFAULT_NOTE_DURATION);
-                } else {
-                    noteState = new MidiNoteState(note, Constants.DEFAULT_NOTE_DURATION);
-                    playingNotes.put(pitch, noteState);
-                }
+        MidiBase midi = MidiBase.instance();
 
-                //Logger.d(TAG, "note on:" +  noteState.getPitch());
-                MidiData m = MidiData.noteOn(noteState);
-                MidiBase.instance().enqueueMidiOutput(m);
-            }
+        if (playingNotes.isActive(channel, pitch)) {
+            //Logger.d(TAG, "(update) note off:" +  pitch);
+            midi.enqueueTrackOutput(getIndex(), 0x8, 0x80 | channel, pitch, 0);
         }
-    }
-
-    public synchronized void allNotesOff() {
-
-        if (playingNotes.isEmpty()) return;
 
-        for (MidiNoteState noteState : playingNotes.values()) {
-            if (noteState.isActive()) {
-                //Logger.d(TAG, "note off:" +  noteState.getPitch());
-                MidiData m = MidiData.noteOff(noteState);
-                MidiBase.instance().enqueueMidiOutput(m);
-            }
-        }
+        playingNotes.noteOn(channel, pitch, duration);
 
-        playingNotes.clear();
+        //Logger.d(TAG, "note on:" +  pitch);
+        midi.enqueueTrackOutput(getIndex(), 0x9, 0x90 | channel, pitch, velocity);
     }
 
-    private final List<Integer> deleteList = new ArrayList<>();
-
-    public synchronized void updateNotes() {
-
+    public void allNotesOff() {
         if (playingNotes.isEmpty()) return;
+        playingNotes.allNotesOff(noteOffHandler);
+    }
 
-        deleteList.clear();
-
-        for (MidiNoteState noteState : playingNotes.values()) {
-            if (noteState.isActive()) {
-                noteState.update();
-                if (noteState.isExpired()) {
-                    //Logger.d(TAG, "note off:" +  noteState.getPitch());
-                    MidiData m = MidiData.noteOff(noteState);
-                    MidiBase.instance().enqueueMidiOutput(m);
-                    deleteList.add(noteState.getPitch());
-                }
-            }
-        }
+    public void updateNotes() {
+        playingNotes.update(noteOffHandler);
+    }
 
-        for (int pitch : deleteList) {
-            playingNotes.remove(pitch);
-        }
+    public void skipTicks(long ticks) {
+        // nothing is due in between, just move the note-off timeline
+        playingNotes.skip(ticks, noteOffHandler);
+    }
 
+    public long ticksUntilNextEvent(long limit) {
+        // note-ons are bound to steps, only note-offs can happen in between
+        return playingNotes.ticksUntilNextNoteOff(limit);
     }
 
     public SequencerStep getElement(int step) {
@@ -218,16 +145,36 @@ public class SequencerTrack extends SequencerElement  {
         return getElement(idx(pos));
     }
 
-    public synchronized void updateTick(double pos) {
+    public void updateTick(double pos) {
         updateNotes();
     }
 
-    public synchronized void update(double pos) {
-        SequencerElement element = getElementAtPos(pos);
-        if (null == element) return;
+    public void update(double pos) {
+
+        SequencerPattern p = publishedPattern.getAndSet(null);
+        if (null != p) {
+            pattern = p;
+            cursorTick = -1;
+        }
+
+        long startTick = (long) pos;
+        long endTick = startTick + Constants.TICKS_PER_STEP;
+
+        if (startTick != cursorTick) {
+            // position jumped (wrap, rewind or recompiled pattern)
+            cursor = pattern.seek(startTick);
+        }
 
-        if (element.isActive()) {
-            notesOn(element);
+        int size = pattern.size();
+        while (cursor < size) {
+            long event = pattern.get(cursor);
+            if (SequencerPattern.getTick(event) >= endTick) {
+                break;
+            }
+            noteOn(event);
+            cursor++;
         }
+
+        cursorTick = endTick;
     }
 }
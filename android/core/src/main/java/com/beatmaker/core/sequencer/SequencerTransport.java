@@ -0,0 +1,145 @@
+package com.beatmaker.core.sequencer;
+
+import com.beatmaker.core.midi.MidiData;
+import com.beatmaker.core.midi.MidiInputListener;
+import com.beatmaker.core.utils.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SequencerTransport extends MidiInputListener {
+
+    /*
+        Slave transport. Follows the master's realtime messages on the
+        dispatch thread and hands pulse-aligned commands to the sequencer
+        thread through a lock-free single producer / single consumer queue:
+
+            0xFA start      play from 0 with the next clock pulse
+            0xFB continue   play from the song position with the next pulse
+            0xFC stop       stop, keep the song position
+            0xF2 position   locate while stopped (MIDI beats, 6 pulses each)
+
+        Start and continue carry the time of the clock pulse they are aligned
+        to and the time of the start message, the sequencer anchors its first
+        tick to the pulse. Song positions are counted in clock pulses.
+    */
+
+    private static final String TAG = "SequencerTransport";
+
+    public static final int COMMAND_START = 1;
+    public static final int COMMAND_STOP = 2;
+    public static final int COMMAND_LOCATE = 3;
+
+    private static final int PULSES_PER_MIDI_BEAT = 6;
+    private static final int QUEUE_SIZE = 16; // power of two
+
+    private final Sequencer sequencer;
+
+    // queue, one slot per command
+    private final int[] commands = new int[QUEUE_SIZE];
+    private final long[] songPulses = new long[QUEUE_SIZE];
+    private final long[] pulseTimes = new long[QUEUE_SIZE]; // NANOSECONDS
+    private final long[] requestTimes = new long[QUEUE_SIZE]; // NANOSECONDS
+    private final AtomicLong head = new AtomicLong(); // consumer
+    private final AtomicLong tail = new AtomicLong(); // producer
+
+    // dispatch thread only
+    private long songPulse = 0;
+    private boolean running = false;
+    private boolean startPending = false;
+    private long startRequestTime = 0;
+
+    SequencerTransport(Sequencer sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    @Override
+    public boolean onData(MidiData midiData) {
+
+        int status = midiData.getMidi0();
+        if (status < 0xf2 || !sequencer.isTransportSlave()) {
+            return false;
+        }
+
+        long time = midiData.getTimestamp() * 1000;
+
+        switch (status) {
+            case 0xf8: // clock
+                if (startPending) {
+                    startPending = false;
+                    running = true;
+                    post(COMMAND_START, songPulse, time, startRequestTime);
+                }
+                if (running) {
+                    songPulse++;
+                }
+                break;
+            case 0xfa: // start
+                songPulse = 0;
+                startPending = true;
+                startRequestTime = time;
+                break;
+            case 0xfb: // continue
+                startPending = true;
+                startRequestTime = time;
+                break;
+            case 0xfc: // stop
+                running = false;
+                startPending = false;
+                post(COMMAND_STOP, songPulse, time, time);
+                break;
+            case 0xf2: // song position pointer
+                if (!running) {
+                    songPulse = (long) ((midiData.getMidi2() << 7) | midiData.getMidi1()) * PULSES_PER_MIDI_BEAT;
+                    post(COMMAND_LOCATE, songPulse, time, time);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return false;
+    }
+
+    private void post(int command, long songPulse, long pulseTime, long requestTime) {
+        long t = tail.get();
+        if (t - head.get() >= QUEUE_SIZE) {
+            Logger.w(TAG, "transport queue overflow");
+            return;
+        }
+
+        int slot = (int) (t & (QUEUE_SIZE - 1));
+        commands[slot] = command;
+        songPulses[slot] = songPulse;
+        pulseTimes[slot] = pulseTime;
+        requestTimes[slot] = requestTime;
+        tail.lazySet(t + 1);
+
+        sequencer.onTransportCommand();
+    }
+
+    /* sequencer thread */
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int getCommand() {
+        return commands[(int) (head.get() & (QUEUE_SIZE - 1))];
+    }
+
+    long getSongPulse() {
+        return songPulses[(int) (head.get() & (QUEUE_SIZE - 1))];
+    }
+
+    long getPulseTime() {
+        return pulseTimes[(int) (head.get() & (QUEUE_SIZE - 1))];
+    }
+
+    long getRequestTime() {
+        return requestTimes[(int) (head.get() & (QUEUE_SIZE - 1))];
+    }
+
+    void release() {
+        head.lazySet(head.get() + 1);
+    }
+}
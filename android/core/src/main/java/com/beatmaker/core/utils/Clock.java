@@ -0,0 +1,70 @@
+package com.beatmaker.core.utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class Clock {
+
+    /*
+        Time source and timed waits of the sequencer and MIDI threads.
+
+        The default reads System.nanoTime() and parks with LockSupport. Classes
+        take their clock in the constructor (or from instance() when none is
+        given), so a VirtualClock can replace real time for tests and offline
+        rendering. Set it with setInstance() before the sequencer and MIDI
+        objects are created.
+    */
+
+    private static volatile Clock instance_ = new Clock();
+
+    public static Clock instance() {
+        return instance_;
+    }
+
+    public static void setInstance(Clock clock) {
+        instance_ = (null != clock) ? clock : new Clock();
+    }
+
+    public boolean isVirtual() {
+        // virtual time does not pass while a thread spins
+        return false;
+    }
+
+    public void attach(Thread thread) {
+        // owners announce the threads that wait on this clock right after starting them
+    }
+
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public long microTime() {
+        return nanoTime() / 1000;
+    }
+
+    public void parkUntil(Object blocker, long deadline) {
+        // like LockSupport.parkNanos(): returns at the deadline (NANOSECONDS), on unpark(),
+        // on interrupt or spuriously, callers check their condition again
+        long waitTime = deadline - nanoTime();
+        if (waitTime > 0) {
+            LockSupport.parkNanos(blocker, waitTime);
+        }
+    }
+
+    public void unpark(Thread thread) {
+        if (null != thread) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean sleep(long waitTime) {
+        // NANOSECONDS, returns false if interrupted
+        long deadline = nanoTime() + waitTime;
+        while (nanoTime() < deadline) {
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            parkUntil(this, deadline);
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,84 @@
+package com.beatmaker.core.utils;
+
+public class LatencyHistogram {
+
+    public static final long DEFAULT_RESOLUTION = 10; // microseconds per bucket
+    public static final int DEFAULT_BUCKETS = 1000;
+
+    private final long resolution;
+    private final long[] buckets;
+    private long overflow;
+    private long count;
+    private long max;
+    private long sum;
+
+    public LatencyHistogram() {
+        this(DEFAULT_RESOLUTION, DEFAULT_BUCKETS);
+    }
+
+    public LatencyHistogram(long resolution, int numBuckets) {
+        this.resolution = Math.max(1, resolution);
+        this.buckets = new long[numBuckets];
+    }
+
+    public synchronized void add(long value) {
+        if (value < 0) value = -value;
+
+        int idx = (int) Math.min(value / resolution, (long) Integer.MAX_VALUE);
+        if (idx < buckets.length) {
+            buckets[idx]++;
+        } else {
+            overflow++;
+        }
+
+        count++;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getAverage() {
+        return (count > 0) ? sum / count : 0;
+    }
+
+    public synchronized long getPercentile(double percentile) {
+        // upper bound of the bucket containing the given percentile
+        if (0 == count) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0.0), 100.0) / 100.0);
+        if (rank < 1) rank = 1;
+
+        long n = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            n += buckets[i];
+            if (n >= rank) {
+                return Math.min((i + 1) * resolution, max);
+            }
+        }
+
+        return max;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = 0;
+        }
+        overflow = 0;
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    public String format() {
+        return "p50: " + getPercentile(50) + "us, p99: " + getPercentile(99) + "us, max: " + getMax() + "us";
+    }
+}
@@ -1,43 +1,332 @@
 package com.beatmaker.core.utils;
 
+import com.beatmaker.config.Debug;
+
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class Logger {
 
+    /*
+        Asynchronous logger. Callers never format or print: every call writes
+        one fixed-size record (level, format id, up to 3 primitive arguments,
+        nanoTime) into a ring owned by the calling thread. A background thread
+        drains the rings, formats the records and prints them.
+
+        Binary records use formats registered once per call site:
+
+            private static final int LOG_STEP = Logger.register(TAG, "step {}, late {}us");
+            ...
+            Logger.d(LOG_STEP, step, late);
+
+        The text calls (d(tag, text), ...) are kept for non real-time code,
+        they only store the string reference.
+
+        Levels below Debug.LOG_LEVEL return right away, guard expensive
+        arguments with the DEBUG / INFO constants so javac drops them.
+        When a ring is full, records are dropped and counted, callers never
+        wait.
+    */
+
+    public static final int LEVEL_DEBUG = 0;
+    public static final int LEVEL_INFO = 1;
+    public static final int LEVEL_WARN = 2;
+    public static final int LEVEL_ERROR = 3;
+    public static final int LEVEL_FATAL = 4;
+
+    public static final boolean DEBUG = Debug.LOG_LEVEL <= LEVEL_DEBUG;
+    public static final boolean INFO = Debug.LOG_LEVEL <= LEVEL_INFO;
+    public static final boolean WARN = Debug.LOG_LEVEL <= LEVEL_WARN;
+
+    private static final String[] PREFIX = { "D", "I", "W", "E", "F" };
+
+    private static final int RING_SIZE = 1024; // records per thread, power of two
+    private static final int RECORD_SIZE = 5; // header, time, 3 args
+    private static final int MAX_FORMATS = 1024;
+    private static final long DRAIN_INTERVAL = 10000000; // NANOSECONDS
+
+    private static final int TEXT = MAX_FORMATS; // format id of text records
+
+    private static final class Ring {
+        final Thread owner;
+        final long[] records = new long[RING_SIZE * RECORD_SIZE];
+        final String[] tags = new String[RING_SIZE];
+        final String[] texts = new String[RING_SIZE];
+        final AtomicLong head = new AtomicLong(); // consumer
+        final AtomicLong tail = new AtomicLong(); // producer
+        final AtomicLong dropped = new AtomicLong();
+        long reportedDropped = 0; // writer only
+
+        Ring(Thread owner) {
+            this.owner = owner;
+        }
+
+        boolean put(int level, int format, int numArgs, long a0, long a1, long a2, String tag, String text) {
+            long t = tail.get();
+            if (t - head.get() >= RING_SIZE) {
+                dropped.lazySet(dropped.get() + 1); // single writer
+                return false;
+            }
+
+            int slot = (int) (t & (RING_SIZE - 1));
+            int ofs = slot * RECORD_SIZE;
+            records[ofs] = ((long) numArgs << 40) | ((long) level << 32) | format;
+            records[ofs + 1] = System.nanoTime();
+            records[ofs + 2] = a0;
+            records[ofs + 3] = a1;
+            records[ofs + 4] = a2;
+            tags[slot] = tag;
+            texts[slot] = text;
+
+            tail.lazySet(t + 1); // publish
+            return true;
+        }
+    }
+
+    private static final String[] formatTags = new String[MAX_FORMATS];
+    private static final String[] formatPatterns = new String[MAX_FORMATS];
+    private static int formatCount = 0;
+
+    private static final CopyOnWriteArrayList<Ring> rings = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<Ring> threadRing = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            Ring ring = new Ring(Thread.currentThread());
+            rings.add(ring);
+            return ring;
+        }
+    };
+
+    private static final Object drainLock = new Object();
+    private static final long epochOffset = System.currentTimeMillis() * 1000000 - System.nanoTime();
+
+    // writer state, guarded by drainLock
     private static final DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+    private static final Date date = new Date();
+    private static final StringBuilder line = new StringBuilder(256);
+
+    private static final Thread writerThread;
+
+    static {
+        writerThread = new Thread() {
+            @Override
+            public void run() {
+                writerLoop();
+            }
+        };
+        writerThread.setName("logger thread");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    public static int register(String tag, String pattern) {
+        // once per call site, "{}" in the pattern is replaced by the next argument
+        synchronized (formatTags) {
+            if (formatCount >= MAX_FORMATS) {
+                throw new IllegalStateException("too many log formats");
+            }
+            formatTags[formatCount] = tag;
+            formatPatterns[formatCount] = pattern;
+            return formatCount++;
+        }
+    }
+
+    /* text records */
 
     public static void d(String tag, String text) {
-        out("D", tag, text);
+        if (DEBUG) put(LEVEL_DEBUG, tag, text);
     }
 
     public static void i(String tag, String text) {
-        out("I", tag, text);
+        if (INFO) put(LEVEL_INFO, tag, text);
     }
 
     public static void w(String tag, String text) {
-        out("W", tag, text);
+        if (WARN) put(LEVEL_WARN, tag, text);
     }
 
     public static void e(String tag, String text) {
-        out("E", tag, text);
+        put(LEVEL_ERROR, tag, text);
     }
 
     public static void f(String tag, String text) {
-        out("F", tag, text);
+        put(LEVEL_FATAL, tag, text);
+    }
+
+    /* binary records */
+
+    public static void d(int format) {
+        if (DEBUG) put(LEVEL_DEBUG, format, 0, 0, 0, 0);
+    }
+
+    public static void d(int format, long a0) {
+        if (DEBUG) put(LEVEL_DEBUG, format, 1, a0, 0, 0);
+    }
+
+    public static void d(int format, long a0, long a1) {
+        if (DEBUG) put(LEVEL_DEBUG, format, 2, a0, a1, 0);
+    }
+
+    public static void d(int format, long a0, long a1, long a2) {
+        if (DEBUG) put(LEVEL_DEBUG, format, 3, a0, a1, a2);
+    }
+
+    public static void i(int format, long a0) {
+        if (INFO) put(LEVEL_INFO, format, 1, a0, 0, 0);
+    }
+
+    public static void i(int format, long a0, long a1, long a2) {
+        if (INFO) put(LEVEL_INFO, format, 3, a0, a1, a2);
+    }
+
+    public static void w(int format, long a0) {
+        if (WARN) put(LEVEL_WARN, format, 1, a0, 0, 0);
+    }
+
+    public static void w(int format, long a0, long a1, long a2) {
+        if (WARN) put(LEVEL_WARN, format, 3, a0, a1, a2);
+    }
+
+    public static void e(int format, long a0, long a1, long a2) {
+        put(LEVEL_ERROR, format, 3, a0, a1, a2);
+    }
+
+    public static void flush() {
+        // prints everything logged so far on the calling thread
+        synchronized (drainLock) {
+            while (drainOne()) {
+                // continue
+            }
+        }
+    }
+
+    private static void put(int level, String tag, String text) {
+        if (level < Debug.LOG_LEVEL) return;
+        threadRing.get().put(level, TEXT, 0, 0, 0, 0, tag, text);
+        if (level >= LEVEL_ERROR) LockSupport.unpark(writerThread);
+    }
+
+    private static void put(int level, int format, int numArgs, long a0, long a1, long a2) {
+        if (level < Debug.LOG_LEVEL) return;
+        threadRing.get().put(level, format, numArgs, a0, a1, a2, null, null);
+        if (level >= LEVEL_ERROR) LockSupport.unpark(writerThread);
+    }
+
+    private static void writerLoop() {
+        while (true) {
+            synchronized (drainLock) {
+                while (drainOne()) {
+                    // continue
+                }
+                for (Ring ring : rings) {
+                    if (!ring.owner.isAlive() && ring.head.get() == ring.tail.get()) {
+                        rings.remove(ring);
+                    }
+                }
+            }
+            LockSupport.parkNanos(DRAIN_INTERVAL);
+        }
+    }
+
+    private static boolean drainOne() {
+        // prints the oldest pending record of all threads
+        Ring oldest = null;
+        long oldestTime = Long.MAX_VALUE;
+
+        for (Ring ring : rings) {
+            long dropped = ring.dropped.get();
+            if (dropped != ring.reportedDropped) {
+                print(LEVEL_WARN, "Logger", "dropped " + (dropped - ring.reportedDropped) + " records of " + ring.owner.getName(), System.nanoTime());
+                ring.reportedDropped = dropped;
+            }
+
+            long h = ring.head.get();
+            if (h == ring.tail.get()) {
+                continue;
+            }
+
+            long time = ring.records[(int) (h & (RING_SIZE - 1)) * RECORD_SIZE + 1];
+            if (time - oldestTime < 0) {
+                oldest = ring;
+                oldestTime = time;
+            }
+        }
+
+        if (null == oldest) {
+            return false;
+        }
+
+        long h = oldest.head.get();
+        int slot = (int) (h & (RING_SIZE - 1));
+        int ofs = slot * RECORD_SIZE;
+        long header = oldest.records[ofs];
+        int format = (int) (header & 0xffffffffL);
+        int level = (int) ((header >> 32) & 0xff);
+        int numArgs = (int) (header >> 40);
+
+        String text;
+        String tag;
+        if (TEXT == format) {
+            tag = oldest.tags[slot];
+            text = oldest.texts[slot];
+            oldest.tags[slot] = null;
+            oldest.texts[slot] = null;
+        } else {
+            tag = formatTags[format];
+            text = formatPatterns[format];
+        }
+
+        line.setLength(0);
+        appendPrefix(level, tag, oldest.records[ofs + 1]);
+        if (TEXT == format) {
+            line.append(text);
+        } else {
+            appendFormatted(text, oldest.records, ofs + 2, numArgs);
+        }
+
+        oldest.head.lazySet(h + 1);
+
+        System.out.println(line);
+        return true;
     }
 
-    private static String currentTimestamp() {
-        return dateFormat.format(new Date());
+    private static void print(int level, String tag, String text, long time) {
+        line.setLength(0);
+        appendPrefix(level, tag, time);
+        line.append(text);
+        System.out.println(line);
     }
 
-    private static void out(String prefix, String tag, String text) {
-        String timestamp = currentTimestamp();
-        out(timestamp + " " + prefix + "/" + tag + ": " + text);
+    private static void appendPrefix(int level, String tag, long time) {
+        date.setTime((epochOffset + time) / 1000000);
+        line.append(dateFormat.format(date)).append(' ').append(PREFIX[level]).append('/').append(tag).append(": ");
     }
 
-    private static void out(String output) {
-        System.out.println(output);
+    private static void appendFormatted(String pattern, long[] args, int ofs, int numArgs) {
+        int arg = 0;
+        int start = 0;
+        int i;
+        while ((i = pattern.indexOf("{}", start)) >= 0) {
+            line.append(pattern, start, i);
+            if (arg < numArgs) {
+                line.append(args[ofs + arg++]);
+            } else {
+                line.append("{}");
+            }
+            start = i + 2;
+        }
+        line.append(pattern, start, pattern.length());
     }
 }
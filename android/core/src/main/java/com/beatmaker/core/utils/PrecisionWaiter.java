@@ -0,0 +1,187 @@
+package com.beatmaker.core.utils;
+
+import com.beatmaker.config.Constants;
+
+public class PrecisionWaiter {
+
+    /*
+        Parks until a safety margin before the deadline, then spins for the rest.
+        The margin follows the measured oversleep of parkNanos(), bounded by a
+        CPU budget (fraction of wall time that may be spent spinning).
+        Time and parking come from the Clock, on a virtual clock it never spins.
+    */
+
+    private static final long MIN_MARGIN = 20000; // NANOSECONDS
+    private static final long BUDGET_WINDOW = 1000000000L; // NANOSECONDS
+
+    private final Clock clock;
+    private final long maxMargin;
+    private volatile double spinBudget;
+    private volatile boolean spinEnabled;
+
+    private long margin;
+    private long marginLimit;
+
+    private long windowStart;
+    private long windowSpinTime;
+
+    private volatile boolean wakeupRequested;
+    private volatile Thread waitingThread;
+
+    private final LatencyHistogram lateness = new LatencyHistogram();
+
+    public PrecisionWaiter() {
+        this(Constants.PRECISION_WAIT_SPIN_BUDGET, true);
+    }
+
+    public PrecisionWaiter(double spinBudget, boolean spinEnabled) {
+        this(Clock.instance(), spinBudget, spinEnabled);
+    }
+
+    public PrecisionWaiter(Clock clock, double spinBudget, boolean spinEnabled) {
+        this.clock = clock;
+        this.spinBudget = spinBudget;
+        this.spinEnabled = spinEnabled;
+        this.maxMargin = Constants.PRECISION_WAIT_MAX_MARGIN;
+        this.margin = Constants.PRECISION_WAIT_INITIAL_MARGIN;
+        this.marginLimit = maxMargin;
+    }
+
+    protected long nanoTime() {
+        return clock.nanoTime();
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public void setSpinEnabled(boolean spinEnabled) {
+        this.spinEnabled = spinEnabled;
+    }
+
+    public boolean isSpinEnabled() {
+        return spinEnabled;
+    }
+
+    public void setSpinBudget(double spinBudget) {
+        this.spinBudget = Math.max(0.0, Math.min(1.0, spinBudget));
+    }
+
+    public double getSpinBudget() {
+        return spinBudget;
+    }
+
+    public long getMargin() {
+        return margin;
+    }
+
+    public LatencyHistogram getLateness() {
+        return lateness;
+    }
+
+    public void wakeup() {
+        wakeupRequested = true;
+        Thread t = waitingThread;
+        if (null != t) {
+            clock.unpark(t);
+        }
+    }
+
+    public boolean waitNanos(long waitTime) {
+        return waitUntil(nanoTime() + waitTime);
+    }
+
+    // returns false if interrupted, true when the deadline passed or wakeup() was called
+    public boolean waitUntil(long deadline) {
+
+        waitingThread = Thread.currentThread();
+
+        try {
+            boolean spin = spinEnabled && spinBudget > 0.0 && !clock.isVirtual();
+            long parkDeadline = spin ? deadline - margin : deadline;
+
+            long now = nanoTime();
+            boolean waited = (now < deadline);
+            boolean parked = false;
+
+            while (now < parkDeadline) {
+                if (wakeupRequested) {
+                    wakeupRequested = false;
+                    return true;
+                }
+                clock.parkUntil(this, parkDeadline);
+                if (Thread.interrupted()) {
+                    return false;
+                }
+                parked = true;
+                now = nanoTime();
+            }
+
+            if (spin) {
+                if (parked) {
+                    calibrate(now - parkDeadline);
+                }
+
+                long spinStart = now;
+                while (now < deadline) {
+                    if (wakeupRequested) {
+                        wakeupRequested = false;
+                        return true;
+                    }
+                    now = nanoTime();
+                }
+
+                account(now, now - spinStart);
+            }
+
+            if (waited) {
+                lateness.add((now - deadline) / 1000);
+            }
+
+            return !Thread.interrupted();
+
+        } finally {
+            waitingThread = null;
+        }
+    }
+
+    private void calibrate(long oversleep) {
+        // jump up on misses, decay slowly towards the observed oversleep
+        long target = oversleep + oversleep / 4;
+        if (target > margin) {
+            margin = target;
+        } else {
+            margin -= (margin - target) / 16;
+        }
+
+        margin = Math.max(MIN_MARGIN, Math.min(margin, marginLimit));
+    }
+
+    private void account(long now, long spinTime) {
+
+        if (0 == windowStart) {
+            windowStart = now;
+        }
+
+        windowSpinTime += spinTime;
+
+        long elapsed = now - windowStart;
+        if (elapsed < BUDGET_WINDOW) {
+            return;
+        }
+
+        double usage = (double) windowSpinTime / (double) elapsed;
+        double budget = spinBudget;
+
+        if (usage > budget) {
+            marginLimit = Math.max(MIN_MARGIN, (long) (margin * budget / usage));
+        } else if (usage < budget / 2) {
+            marginLimit = Math.min(maxMargin, marginLimit + marginLimit / 4 + 1);
+        }
+
+        margin = Math.min(margin, marginLimit);
+
+        windowStart = now;
+        windowSpinTime = 0;
+    }
+}
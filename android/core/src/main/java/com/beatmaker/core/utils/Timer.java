@@ -1,5 +1,7 @@
 package com.beatmaker.core.utils;
 
+import com.beatmaker.config.Constants;
+
 public class Timer implements Runnable {
 
     private static final String TAG = "Timer";
@@ -16,7 +18,8 @@ public class Timer implements Runnable {
     private boolean manualStats;
     private String name;
 
-    private final Object lock = new Object();
+    private Clock clock;
+    private PrecisionWaiter waiter;
 
     public class Stats {
 
@@ -65,20 +68,26 @@ public class Timer implements Runnable {
     private final Stats stats = new Stats();
 
     public Timer() {
-        initialize(0, PRIORITY_UNDEFINED);
+        initialize(0, PRIORITY_UNDEFINED, Clock.instance());
     }
 
     public Timer(long interval) {
-        initialize(interval, PRIORITY_UNDEFINED);
+        initialize(interval, PRIORITY_UNDEFINED, Clock.instance());
     }
 
     public Timer(long interval, int priority) {
-        initialize(interval, priority);
+        initialize(interval, priority, Clock.instance());
+    }
+
+    public Timer(long interval, int priority, Clock clock) {
+        initialize(interval, priority, clock);
     }
 
-    private void initialize(long interval, int priority) {
+    private void initialize(long interval, int priority, Clock clock) {
         this.interval = interval;
         this.priority = priority;
+        this.clock = clock;
+        this.waiter = new PrecisionWaiter(clock, Constants.PRECISION_WAIT_SPIN_BUDGET, false);
     }
 
     public boolean isRunning() {
@@ -125,6 +134,7 @@ public class Timer implements Runnable {
         }
 
         thread.start();
+        clock.attach(thread);
     }
 
     public synchronized void stop() {
@@ -151,15 +161,21 @@ public class Timer implements Runnable {
         this.passive = passive;
     }
 
+    public void setPrecisionWait(boolean enable) {
+        waiter.setSpinEnabled(enable);
+    }
+
+    public PrecisionWaiter getWaiter() {
+        return waiter;
+    }
+
     public void trigger() {
-        synchronized (lock) {
-            triggered = true;
-            lock.notify();
-        }
+        triggered = true;
+        waiter.wakeup();
     }
 
     private long getTimeMicro() {
-        return System.nanoTime()/1000;
+        return clock.microTime();
     }
 
     private boolean timerLoopActive() {
@@ -189,21 +205,13 @@ public class Timer implements Runnable {
             long tmNow = getTimeMicro();
 
             if (tmNow < tmNext) {
-                long tmWait = tmNext - tmNow;
-                synchronized (lock) {
-                    try {
-                        lock.wait(tmWait / 1000);
-                    } catch (InterruptedException ignored) {}
-                }
+                waiter.waitUntil(tmNext * 1000);
 
                 if (!timerLoopActive()) {
                     break;
                 }
             } else if (minLoopDelay > 0) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(minLoopDelay / 1000);
-                } catch (InterruptedException ignored) {
+                if (!clock.sleep(minLoopDelay * 1000)) {
                     break;
                 }
             }
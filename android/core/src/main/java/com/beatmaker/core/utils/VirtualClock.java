@@ -0,0 +1,184 @@
+package com.beatmaker.core.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class VirtualClock extends Clock {
+
+    /*
+        Simulated time for deterministic, faster than real time runs.
+
+        Time stands still while any participating thread is running. When all
+        of them wait in parkUntil(), time jumps to the earliest deadline and
+        wakes the threads due then, so an hour of sequencer and MIDI output
+        takes only as long as the work in between.
+
+        Threads participate from attach(), which their owners call right after
+        starting them, or from their first wait on, until they end (or
+        detach()). They must not block outside the clock for long, time only
+        moves while they wait here: use the PARK wait strategy for ring
+        buffers and keep spinning disabled (PrecisionWaiter does).
+    */
+
+    private static final long CHECK_INTERVAL = 10; // MILLISECONDS, real time, finds threads that ended
+
+    private static final class Participant {
+        boolean waiting = false;
+        boolean permit = false;
+        long deadline = Long.MAX_VALUE;
+    }
+
+    private final Object lock = new Object();
+    private final Map<Thread, Participant> participants = new HashMap<>();
+    private volatile long now; // written under lock
+
+    public VirtualClock() {
+        this(0);
+    }
+
+    public VirtualClock(long startTime) {
+        // NANOSECONDS, time 0 means "no timestamp" in some places, start later
+        this.now = Math.max(startTime, 1000000000L);
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void attach() {
+        // the calling thread holds time until it waits
+        attach(Thread.currentThread());
+    }
+
+    @Override
+    public void attach(Thread thread) {
+        synchronized (lock) {
+            participant(thread);
+        }
+    }
+
+    public void detach() {
+        synchronized (lock) {
+            participants.remove(Thread.currentThread());
+            advance();
+        }
+    }
+
+    public void advanceTo(long time) {
+        // moves time forward from outside, waiting threads due until then are woken
+        synchronized (lock) {
+            if (time > now) {
+                now = time;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        Thread thread = Thread.currentThread();
+
+        synchronized (lock) {
+            Participant p = participant(thread);
+
+            if (p.permit) {
+                p.permit = false;
+                return;
+            }
+
+            if (deadline <= now || thread.isInterrupted()) {
+                return;
+            }
+
+            p.waiting = true;
+            p.deadline = deadline;
+
+            try {
+                advance();
+                while (p.waiting && now < deadline) {
+                    lock.wait(CHECK_INTERVAL);
+                    if (p.waiting && now < deadline) {
+                        advance();
+                    }
+                }
+            } catch (InterruptedException e) {
+                thread.interrupt();
+            } finally {
+                p.waiting = false;
+                p.permit = false;
+                p.deadline = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        if (null == thread) {
+            return;
+        }
+
+        synchronized (lock) {
+            Participant p = participants.get(thread);
+            if (null == p) {
+                return; // not waiting here
+            }
+            if (p.waiting) {
+                p.waiting = false;
+                lock.notifyAll();
+            } else {
+                p.permit = true;
+            }
+        }
+    }
+
+    private Participant participant(Thread thread) {
+        // guarded by lock
+        Participant p = participants.get(thread);
+        if (null == p) {
+            p = new Participant();
+            participants.put(thread, p);
+        }
+        return p;
+    }
+
+    private void advance() {
+        // guarded by lock: when every participant waits, jump to the earliest deadline
+        long next = Long.MAX_VALUE;
+
+        Iterator<Map.Entry<Thread, Participant>> it = participants.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Thread, Participant> entry = it.next();
+            if (!entry.getKey().isAlive()) {
+                it.remove();
+                continue;
+            }
+            Participant p = entry.getValue();
+            if (!p.waiting) {
+                return; // someone is still running
+            }
+            next = Math.min(next, p.deadline);
+        }
+
+        if (next != Long.MAX_VALUE && next > now) {
+            now = next;
+            lock.notifyAll();
+        }
+    }
+
+    public int getNumParticipants() {
+        synchronized (lock) {
+            Iterator<Thread> it = participants.keySet().iterator();
+            while (it.hasNext()) {
+                if (!it.next().isAlive()) it.remove();
+            }
+            return participants.size();
+        }
+    }
+}
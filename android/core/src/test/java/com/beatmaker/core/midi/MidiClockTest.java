@@ -0,0 +1,165 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class MidiClockTest {
+
+    private static final long PERIOD_120 = 60000000000L / (120 * MidiClock.PULSES_PER_QUARTER); // NANOSECONDS
+    private static final long PERIOD_140 = 60000000000L / (140 * MidiClock.PULSES_PER_QUARTER); // NANOSECONDS
+    private static final long JITTER = 250000; // NANOSECONDS, either way
+    private static final int LOCK_PULSES = 8; // locked after at most this many pulses
+
+    private VirtualClock clock;
+    private MidiClock midiClock;
+    private final MidiClock.Estimate estimate = new MidiClock.Estimate();
+    private final Random random = new Random(1);
+
+    // external timeline
+    private long startTime;
+    private long period;
+    private long pulse;
+
+    private int lastBpm = 0;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+
+        midiClock = new MidiClock(clock) {
+            @Override
+            protected void onBpmChanged(int bpm) {
+                lastBpm = bpm;
+            }
+        };
+
+        startTime = clock.nanoTime();
+        period = PERIOD_120;
+        pulse = 0;
+    }
+
+    private long pulseTime(long pulse) {
+        return startTime + pulse * period;
+    }
+
+    private void send(long time) {
+        clock.advanceTo(time);
+        midiClock.update(time / 1000);
+    }
+
+    private void sendPulses(int count) {
+        // jittered pulses on the external grid
+        for (int i = 0; i < count; i++) {
+            long jitter = random.nextInt((int) (2 * JITTER + 1)) - JITTER;
+            send(pulseTime(pulse++) + jitter);
+        }
+    }
+
+    private boolean update() {
+        return midiClock.getEstimate(estimate, clock.nanoTime());
+    }
+
+    @Test
+    public void locksWithinAFewPulses() {
+
+        int pulses = 0;
+        do {
+            sendPulses(1);
+            pulses++;
+        } while (pulses < 2 * LOCK_PULSES && !(update() && estimate.isLocked()));
+
+        assertTrue("locked after " + pulses + " pulses", pulses <= LOCK_PULSES);
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+        assertTrue("estimate", update());
+        assertTrue("locked", estimate.isLocked());
+
+        // the filtered phase stays within the jitter of the true grid
+        assertEquals("pulse", pulse - 1, estimate.getPulse());
+        assertEquals("phase", (double) pulseTime(pulse - 1), (double) estimate.getPulseTime(), JITTER);
+        assertEquals("phase error", 0.0, (double) estimate.getPhaseError(), 2 * JITTER);
+        assertEquals("bpm", 120.0, estimate.getBpmExact(), 0.1);
+        assertEquals("integer bpm", 120, lastBpm);
+        assertEquals("outliers", 0, midiClock.getOutlierCount());
+    }
+
+    @Test
+    public void singleOutlierIsIgnored() {
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+        assertTrue("estimate", update());
+        double lockedPeriod = estimate.getPeriod();
+
+        // one pulse half a period late
+        send(pulseTime(pulse++) + period / 2);
+        sendPulses(1);
+
+        assertTrue("estimate", update());
+        assertEquals("outliers", 1, midiClock.getOutlierCount());
+        assertTrue("locked", estimate.isLocked());
+        assertEquals("pulse", pulse - 1, estimate.getPulse());
+        assertEquals("phase", (double) pulseTime(pulse - 1), (double) estimate.getPulseTime(), JITTER);
+        assertEquals("period", lockedPeriod, estimate.getPeriod(), period * 0.01);
+    }
+
+    @Test
+    public void tempoJumpReacquires() {
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+
+        // 140 bpm from the next pulse on
+        startTime = pulseTime(pulse - 1) - (pulse - 1) * PERIOD_140;
+        period = PERIOD_140;
+
+        sendPulses(2);
+        assertTrue("estimate", update());
+        assertFalse("lock lost", estimate.isLocked());
+
+        sendPulses(LOCK_PULSES);
+        assertTrue("estimate", update());
+        assertTrue("locked again", estimate.isLocked());
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+        assertTrue("estimate", update());
+        assertEquals("pulse", pulse - 1, estimate.getPulse());
+        assertEquals("phase", (double) pulseTime(pulse - 1), (double) estimate.getPulseTime(), JITTER);
+        assertEquals("bpm", 140.0, estimate.getBpmExact(), 0.1);
+        assertEquals("integer bpm", 140, lastBpm);
+    }
+
+    @Test
+    public void missingPulsesAreCounted() {
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+
+        // two pulses lost in transport
+        pulse += 2;
+        sendPulses(1);
+
+        assertTrue("estimate", update());
+        assertEquals("outliers", 0, midiClock.getOutlierCount());
+        assertTrue("locked", estimate.isLocked());
+        assertEquals("pulse", pulse - 1, estimate.getPulse());
+        assertEquals("phase", (double) pulseTime(pulse - 1), (double) estimate.getPulseTime(), JITTER);
+    }
+
+    @Test
+    public void stopsAfterTimeout() {
+
+        sendPulses(4 * MidiClock.PULSES_PER_QUARTER);
+        assertTrue("estimate", update());
+
+        clock.advanceTo(pulseTime(pulse) + 2 * Constants.MIDI_CLOCK_TIMEOUT);
+        assertFalse("stopped", update());
+        assertFalse("locked", estimate.isLocked());
+    }
+}
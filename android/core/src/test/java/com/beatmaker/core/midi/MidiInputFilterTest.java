@@ -0,0 +1,104 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MidiInputFilterTest {
+
+    private static long onCable(int cable, long event) {
+        return MidiEvent.setCable(event, cable);
+    }
+
+    @Test
+    public void acceptsEverythingByDefault() {
+        MidiInputFilter filter = new MidiInputFilter();
+
+        for (int cable = 0; cable < 16; cable++) {
+            assertTrue(filter.isCableAccepted(cable));
+            assertTrue(filter.accept(onCable(cable, MidiEvent.noteOn(15, 60, 100))));
+            assertTrue(filter.accept(onCable(cable, MidiEvent.pack(0xf, 0xfe, 0, 0))));
+        }
+    }
+
+    @Test
+    public void filtersCables() {
+        MidiInputFilter filter = new MidiInputFilter();
+        filter.setCable(MidiInputFilter.ALL_CABLES, false);
+        filter.setCable(2, true);
+
+        assertFalse(filter.accept(MidiEvent.noteOn(0, 60, 100)));
+        assertTrue(filter.accept(onCable(2, MidiEvent.noteOn(0, 60, 100))));
+        assertFalse(filter.isCableAccepted(0));
+        assertTrue(filter.isCableAccepted(2));
+    }
+
+    @Test
+    public void filtersChannelsOfChannelMessagesOnly() {
+        MidiInputFilter filter = new MidiInputFilter();
+        filter.setChannel(0, 9, false);
+
+        assertFalse(filter.accept(MidiEvent.noteOn(9, 36, 100)));
+        assertFalse(filter.accept(MidiEvent.controlChange(9, 7, 100)));
+        assertTrue(filter.accept(MidiEvent.noteOn(8, 36, 100)));
+        assertTrue("other cable", filter.accept(onCable(1, MidiEvent.noteOn(9, 36, 100))));
+
+        // system messages have no channel, 0xF9 is not channel 9
+        assertTrue(filter.accept(MidiEvent.pack(0xf, 0xf9, 0, 0)));
+        assertTrue(filter.accept(MidiEvent.pack(0xf, 0xf8, 0, 0)));
+    }
+
+    @Test
+    public void filtersStatusBytes() {
+        MidiInputFilter filter = new MidiInputFilter();
+
+        // a channel message class on all channels, a single system message
+        filter.setStatus(MidiInputFilter.ALL_CABLES, 0xd0, false);
+        filter.setStatus(MidiInputFilter.ALL_CABLES, 0xfe, false);
+
+        for (int channel = 0; channel < 16; channel++) {
+            assertFalse(filter.accept(MidiEvent.pack(0xd, 0xd0 | channel, 64, 0)));
+        }
+        assertTrue(filter.accept(MidiEvent.pack(0xe, 0xe0, 0, 64)));
+        assertFalse(filter.accept(MidiEvent.pack(0xf, 0xfe, 0, 0)));
+        assertTrue(filter.accept(MidiEvent.pack(0xf, 0xff, 0, 0)));
+
+        filter.setStatus(3, 0xfe, true);
+        assertTrue(filter.accept(onCable(3, MidiEvent.pack(0xf, 0xfe, 0, 0))));
+    }
+
+    @Test
+    public void sysexContinuationsFollowTheStartByte() {
+        MidiInputFilter filter = new MidiInputFilter();
+
+        // continuation and end packets start with data bytes, they count as 0xF0
+        long start = MidiEvent.pack(0x4, 0xf0, 0x7e, 0x7f);
+        long continuation = MidiEvent.pack(0x4, 0x06, 0x01, 0x02);
+        long end = MidiEvent.pack(0x6, 0x03, 0xf7, 0);
+        assertTrue(filter.accept(continuation));
+
+        filter.setStatus(MidiInputFilter.ALL_CABLES, 0xf0, false);
+        assertFalse(filter.accept(start));
+        assertFalse(filter.accept(continuation));
+        assertFalse(filter.accept(end));
+    }
+
+    @Test
+    public void filtersControllers() {
+        MidiInputFilter filter = new MidiInputFilter();
+        filter.setController(MidiInputFilter.ALL_CABLES, 1, false);
+        filter.setController(MidiInputFilter.ALL_CABLES, 100, false);
+
+        assertFalse(filter.accept(MidiEvent.controlChange(0, 1, 64)));
+        assertFalse(filter.accept(MidiEvent.controlChange(5, 100, 64)));
+        assertTrue(filter.accept(MidiEvent.controlChange(0, 7, 64)));
+        assertTrue(filter.accept(MidiEvent.controlChange(0, 101, 64)));
+
+        // controller numbers only apply to control changes
+        assertTrue(filter.accept(MidiEvent.noteOn(0, 1, 64)));
+
+        filter.acceptAll();
+        assertTrue(filter.accept(MidiEvent.controlChange(0, 1, 64)));
+    }
+}
@@ -0,0 +1,112 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MidiPacketDecoderTest {
+
+    private static final long TIMESTAMP = 123456;
+
+    private static byte[] transfer(int... bytes) {
+        byte[] buffer = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            buffer[i] = (byte) bytes[i];
+        }
+        return buffer;
+    }
+
+    @Test
+    public void validatesAgainstTheCodeIndexNumber() {
+
+        // reserved CINs
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x0, 0x90, 60, 100)));
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x1, 0x90, 60, 100)));
+
+        // channel messages: status must match the CIN, data bytes below 0x80
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x9, 0x80, 60, 100)));
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x9, 0x90, 0x80, 100)));
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x9, 0x90, 60, 0xff)));
+        assertEquals(MidiEvent.noteOn(3, 60, 100), MidiPacketDecoder.validate(MidiEvent.noteOn(3, 60, 100)));
+
+        // system common with data bytes
+        assertEquals(-1, MidiPacketDecoder.validate(MidiEvent.pack(0x2, 0xf8, 0, 0)));
+        assertEquals(MidiEvent.pack(0x2, 0xf1, 0x25, 0), MidiPacketDecoder.validate(MidiEvent.pack(0x2, 0xf1, 0x25, 0x7f)));
+
+        // bytes beyond the message length are cleared
+        assertEquals(MidiEvent.pack(0xc, 0xc0, 5, 0), MidiPacketDecoder.validate(MidiEvent.pack(0xc, 0xc0, 5, 9)));
+        assertEquals(MidiEvent.pack(0xf, 0xf8, 0, 0), MidiPacketDecoder.validate(MidiEvent.pack(0xf, 0xf8, 1, 2)));
+        assertEquals(MidiEvent.pack(0x5, 0xf7, 0, 0), MidiPacketDecoder.validate(MidiEvent.pack(0x5, 0xf7, 1, 2)));
+
+        // sysex data is not checked byte by byte
+        assertEquals(MidiEvent.pack(0x4, 0xf0, 0x7e, 0x7f), MidiPacketDecoder.validate(MidiEvent.pack(0x4, 0xf0, 0x7e, 0x7f)));
+    }
+
+    @Test
+    public void decodesWholeTransfers() {
+        MidiRingBuffer ring = new MidiRingBuffer(16);
+        MidiPacketDecoder decoder = new MidiPacketDecoder();
+
+        byte[] buffer = transfer(
+                0x09, 0x90, 60, 100,    // note on
+                0x00, 0x00, 0x00, 0x00, // padding
+                0x19, 0x80, 60, 100,    // note on CIN, note off status: invalid
+                0x0f, 0xf8, 0x00, 0x00, // clock
+                0x1b, 0xb2, 7, 99,      // control change on cable 1
+                0x0f, 0xfe);            // truncated
+
+        assertEquals(3, decoder.decode(buffer, buffer.length, ring, TIMESTAMP));
+        assertEquals(2, decoder.getInvalidPackets());
+        assertEquals(0, decoder.getDroppedPackets());
+
+        assertEquals(3, ring.available());
+        assertEquals(MidiEvent.noteOn(0, 60, 100), ring.getEvent(0));
+        assertEquals(MidiEvent.pack(0xf, 0xf8, 0, 0), ring.getEvent(1));
+        assertEquals(MidiEvent.pack(0, 1, 0xb, 0xb2, 7, 99), ring.getEvent(2));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TIMESTAMP, ring.getTimestamp(i));
+        }
+
+        decoder.reset();
+        assertEquals(0, decoder.getInvalidPackets());
+    }
+
+    @Test
+    public void countsEventsTheRingHasNoRoomFor() {
+        MidiRingBuffer ring = new MidiRingBuffer(2);
+        MidiPacketDecoder decoder = new MidiPacketDecoder();
+
+        byte[] buffer = transfer(
+                0x09, 0x90, 60, 100,
+                0x09, 0x90, 61, 100,
+                0x09, 0x90, 62, 100);
+
+        assertEquals(2, decoder.decode(buffer, buffer.length, ring, TIMESTAMP));
+        assertEquals(1, decoder.getDroppedPackets());
+        assertEquals(MidiEvent.noteOn(0, 61, 100), ring.getEvent(1));
+    }
+
+    @Test
+    public void filteredEventsAreNotPublished() {
+        MidiRingBuffer ring = new MidiRingBuffer(16);
+        MidiInputFilter filter = new MidiInputFilter();
+        filter.setStatus(MidiInputFilter.ALL_CABLES, 0xfe, false);
+        MidiPacketDecoder decoder = new MidiPacketDecoder(filter);
+
+        byte[] buffer = transfer(
+                0x0f, 0xfe, 0x00, 0x00, // active sensing
+                0x09, 0x90, 60, 100,
+                0x0f, 0xfe, 0x00, 0x00);
+
+        // unused claims are handed back, the ring stays consistent
+        assertEquals(1, decoder.decode(buffer, buffer.length, ring, TIMESTAMP));
+        assertEquals(2, decoder.getFilteredPackets());
+        assertEquals(1, ring.available());
+        assertEquals(MidiEvent.noteOn(0, 60, 100), ring.getEvent(0));
+        ring.release(1);
+
+        assertEquals(1, decoder.decode(buffer, buffer.length, ring, TIMESTAMP + 1));
+        assertEquals(1, ring.available());
+        assertEquals(TIMESTAMP + 1, ring.getTimestamp(0));
+    }
+}
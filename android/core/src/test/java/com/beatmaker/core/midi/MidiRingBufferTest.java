@@ -0,0 +1,150 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MidiRingBufferTest {
+
+    private static long event(int i) {
+        return MidiEvent.noteOn(i & 0xf, (i >> 4) & 0x7f, 1 + ((i >> 11) & 0x3f));
+    }
+
+    @Test
+    public void capacityIsAPowerOfTwo() {
+        assertEquals(8, new MidiRingBuffer(5).capacity());
+        assertEquals(8, new MidiRingBuffer(8).capacity());
+        assertEquals(2, new MidiRingBuffer(0).capacity());
+    }
+
+    @Test
+    public void emptyAndFull() {
+        MidiRingBuffer ring = new MidiRingBuffer(8);
+
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.available());
+        assertFalse("no data", ring.waitForData(0));
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue("offer " + i, ring.offer(event(i), 1000 + i));
+        }
+        assertFalse("full", ring.offer(event(8), 1008));
+        assertEquals(0, ring.claim(1));
+        assertEquals(8, ring.length());
+        assertEquals(8, ring.available());
+        assertTrue(ring.waitForData(0));
+
+        // one slot free again
+        ring.release(1);
+        assertTrue(ring.offer(event(8), 1008));
+        assertFalse(ring.offer(event(9), 1009));
+
+        // the consumer sees the new event once it read what it saw before
+        assertEquals(7, ring.available());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(event(i + 1), ring.getEvent(i));
+            assertEquals(1001 + i, ring.getTimestamp(i));
+        }
+        ring.release(7);
+        assertEquals(1, ring.available());
+        assertEquals(event(8), ring.getEvent(0));
+        ring.release(1);
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void wrapsAround() {
+        MidiRingBuffer ring = new MidiRingBuffer(8);
+
+        int next = 0;
+        int expected = 0;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 3; i++, next++) {
+                assertTrue(ring.offer(event(next), next));
+            }
+            int n = ring.available();
+            assertEquals(3, n);
+            for (int i = 0; i < n; i++, expected++) {
+                assertEquals(event(expected), ring.getEvent(i));
+                assertEquals(expected, ring.getTimestamp(i));
+            }
+            ring.release(n);
+        }
+    }
+
+    @Test
+    public void batchOfferKeepsDeltasAndStopsWhenFull() {
+        MidiRingBuffer ring = new MidiRingBuffer(4);
+
+        long[] events = new long[6];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = MidiEvent.setDelta(event(i), 10 * i);
+        }
+
+        assertEquals(4, ring.offer(events, 1, 5, 5000));
+        for (int i = 0; i < 4; i++) {
+            // delta bits are not stored, the timestamp is absolute
+            assertEquals(event(i + 1), ring.getEvent(i));
+            assertEquals(5000 + 10 * (i + 1), ring.getTimestamp(i));
+        }
+    }
+
+    @Test
+    public void claimedSlotsPublishTogether() {
+        MidiRingBuffer ring = new MidiRingBuffer(8);
+
+        assertEquals(4, ring.claim(4));
+        ring.set(0, event(0), 100);
+        ring.set(1, event(1), 101);
+        assertEquals("not published", 0, ring.available());
+
+        ring.unclaim(2);
+        ring.publish();
+        assertEquals(2, ring.available());
+        assertEquals(event(1), ring.getEvent(1));
+
+        // the unused claims are free again
+        assertEquals(6, ring.claim(8));
+        ring.unclaim(6);
+        ring.publish();
+        assertEquals(2, ring.available());
+
+        ring.clear();
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void producerAndConsumerThreads() throws InterruptedException {
+        final MidiRingBuffer ring = new MidiRingBuffer(64);
+        final int count = 100000;
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; ) {
+                    if (ring.offer(event(i), i)) {
+                        i++;
+                    }
+                }
+            }
+        };
+        producer.start();
+
+        int expected = 0;
+        while (expected < count) {
+            assertTrue("data", ring.waitForData(1000));
+            int n = ring.available();
+            for (int i = 0; i < n; i++, expected++) {
+                assertEquals(event(expected), ring.getEvent(i));
+                assertEquals(expected, ring.getTimestamp(i));
+            }
+            ring.release(n);
+        }
+
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+}
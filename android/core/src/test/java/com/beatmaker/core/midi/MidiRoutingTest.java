@@ -0,0 +1,148 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MidiRoutingTest {
+
+    private static class Packet {
+        final MidiPortBase port;
+        final long event;
+
+        Packet(MidiPortBase port, long event) {
+            this.port = port;
+            this.event = event;
+        }
+    }
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private MidiOutputPort output0;
+    private MidiOutputPort output1;
+
+    private final List<Packet> sent = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach();
+
+        midi = new MockMidiBase(clock, new MockMidiInterface("test.interface.0", "Test Interface") {
+            @Override
+            public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
+                onSend(port, buffer, length);
+                return length;
+            }
+        });
+        midi.getInterface().addPort(new MockMidiPort(MidiPortBase.OUTPUT));
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        output0 = midi.getOutputPort(midi.getInterface(), 0);
+        output1 = midi.getOutputPort(midi.getInterface(), 1);
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        midi.destroy();
+    }
+
+    private synchronized void onSend(MidiPortBase port, byte[] buffer, int length) {
+        for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+            sent.add(new Packet(port, MidiEvent.deserialize(buffer, ofs, 0)));
+        }
+    }
+
+    private Packet sendFromTrack(int track) {
+        sent.clear();
+        midi.enqueueTrackOutput(track, MidiEvent.noteOn(0, 60, 100), clock.microTime());
+        midi.flushMidiOutput();
+        assertEquals("packets", 1, sent.size());
+        return sent.get(0);
+    }
+
+    @Test
+    public void unroutedTracksUseTheDefaultOutput() {
+        int track = Constants.NUM_TRACKS + 4;
+
+        assertNull(midi.getTrackRoute(track));
+        Packet packet = sendFromTrack(track);
+        assertSame("port", output0.getPort(), packet.port);
+        assertEquals("cable", 0, MidiEvent.getCable(packet.event));
+    }
+
+    @Test
+    public void routesTracksBeyondTheInitialCount() {
+        int track = Constants.NUM_TRACKS + 4;
+        MidiRoute route = new MidiRoute(null, 1, 5);
+
+        midi.setTrackRoute(track, route);
+        assertSame(route, midi.getTrackRoute(track));
+
+        Packet packet = sendFromTrack(track);
+        assertSame("port", output1.getPort(), packet.port);
+        assertEquals("cable", 5, MidiEvent.getCable(packet.event));
+
+        // the tracks in between keep the default output
+        packet = sendFromTrack(Constants.NUM_TRACKS);
+        assertSame("port", output0.getPort(), packet.port);
+
+        // and so do the ones routed before the routes grew
+        midi.setTrackRoute(1, new MidiRoute(null, 1, 2));
+        midi.setTrackRoute(2 * track, new MidiRoute(null, 1, 3));
+        packet = sendFromTrack(1);
+        assertSame("port", output1.getPort(), packet.port);
+        assertEquals("cable", 2, MidiEvent.getCable(packet.event));
+        packet = sendFromTrack(track);
+        assertEquals("cable", 5, MidiEvent.getCable(packet.event));
+        packet = sendFromTrack(2 * track);
+        assertEquals("cable", 3, MidiEvent.getCable(packet.event));
+    }
+
+    @Test
+    public void inputRoutesMustPointAtTheConnectedInput() {
+        final int[] notes = new int[16];
+
+        // only the default input of the connected interface is read
+        assertFalse("other interface", midi.addInputListener(new NoteCounter(notes), new MidiRoute("Other Interface", 0, 1)));
+        assertFalse("other port", midi.addInputListener(new NoteCounter(notes), new MidiRoute(null, 1, 1)));
+        assertTrue("connected interface", midi.addInputListener(new NoteCounter(notes), new MidiRoute("Test Interface", 0, 2)));
+        assertTrue("default interface", midi.addInputListener(new NoteCounter(notes), new MidiRoute(null, 0, 3)));
+
+        for (int cable = 0; cable < 4; cable++) {
+            midi.receive(MidiEvent.setCable(MidiEvent.noteOn(0, cable, 100), cable), clock.microTime());
+        }
+        assertEquals("rejected route", 0, notes[1]);
+        assertEquals("cable 2", 1, notes[2]);
+        assertEquals("cable 3", 1, notes[3]);
+    }
+
+    private static class NoteCounter extends MidiInputListener {
+        // a listener is registered for a single cable, one per route
+        private final int[] notes;
+
+        NoteCounter(int[] notes) {
+            this.notes = notes;
+        }
+
+        @Override
+        public void onNoteOn(int midiChannel, int pitch, int velocity) {
+            notes[pitch]++;
+        }
+    }
+}
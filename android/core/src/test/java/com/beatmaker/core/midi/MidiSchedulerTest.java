@@ -0,0 +1,203 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MidiSchedulerTest {
+
+    private static final long MILLISECOND = 1000; // MICROSECONDS
+
+    private static class Transfer {
+        final MidiPortBase port;
+        final long time; // MICROSECONDS
+        final List<Long> events = new ArrayList<>(); // packets
+
+        Transfer(MidiPortBase port, long time) {
+            this.port = port;
+            this.time = time;
+        }
+    }
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private MidiScheduler scheduler;
+    private MidiOutputPort output0;
+    private MidiOutputPort output1;
+
+    private final List<Transfer> transfers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        midi = new MockMidiBase(clock, new MockMidiInterface("test.interface.0", "Test Interface") {
+            @Override
+            public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
+                onTransfer(port, buffer, length);
+                return length;
+            }
+        });
+        midi.getInterface().addPort(new MockMidiPort(MidiPortBase.OUTPUT));
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        scheduler = midi.midiScheduler;
+        output0 = midi.getOutputPort(midi.getInterface(), 0);
+        output1 = midi.getOutputPort(midi.getInterface(), 1);
+        assertNotNull(output1);
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        midi.destroy();
+    }
+
+    private synchronized void onTransfer(MidiPortBase port, byte[] buffer, int length) {
+        Transfer transfer = new Transfer(port, clock.microTime());
+        for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+            transfer.events.add(MidiEvent.deserialize(buffer, ofs, 0));
+        }
+        transfers.add(transfer);
+    }
+
+    private synchronized List<Transfer> getTransfers() {
+        return new ArrayList<>(transfers);
+    }
+
+    private static long note(int pitch) {
+        return MidiEvent.noteOn(0, pitch, 100);
+    }
+
+    private static long numbered(int i) {
+        // distinct note-on for every i below 16384
+        return MidiEvent.noteOn(0, i & 0x7f, 1 + (i >> 7));
+    }
+
+    @Test
+    public void sendsByDueTimeThenScheduleOrder() {
+
+        long now = clock.microTime();
+        scheduler.schedule(output0, note(1), now + 30 * MILLISECOND);
+        scheduler.schedule(output0, note(2), now + 10 * MILLISECOND);
+        scheduler.schedule(output0, note(3), now + 20 * MILLISECOND);
+        scheduler.schedule(output0, note(4), now + 10 * MILLISECOND);
+        scheduler.schedule(output0, note(5), now + 10 * MILLISECOND);
+
+        clock.sleep(50 * MILLISECOND * 1000);
+
+        List<Transfer> t = getTransfers();
+        assertEquals("transfers", 3, t.size());
+
+        // events sharing a deadline keep their order and leave together
+        assertEquals("time", now + 10 * MILLISECOND, t.get(0).time);
+        assertEquals("batch", 3, t.get(0).events.size());
+        assertEquals(note(2), (long) t.get(0).events.get(0));
+        assertEquals(note(4), (long) t.get(0).events.get(1));
+        assertEquals(note(5), (long) t.get(0).events.get(2));
+        assertEquals("time", now + 20 * MILLISECOND, t.get(1).time);
+        assertEquals(note(3), (long) t.get(1).events.get(0));
+        assertEquals("time", now + 30 * MILLISECOND, t.get(2).time);
+        assertEquals(note(1), (long) t.get(2).events.get(0));
+        assertEquals("pending", 0, scheduler.length());
+    }
+
+    @Test
+    public void heapKeepsOrderBeyondItsInitialCapacity() {
+
+        long now = clock.microTime();
+        Random random = new Random(1);
+
+        // few distinct deadlines, many events sharing each
+        int count = 3000;
+        long[] dueTimes = new long[count];
+        for (int i = 0; i < count; i++) {
+            dueTimes[i] = now + (1 + random.nextInt(20)) * MILLISECOND;
+            scheduler.schedule(output0, numbered(i), dueTimes[i]);
+        }
+        assertEquals("pending", count, scheduler.length());
+
+        clock.sleep(50 * MILLISECOND * 1000);
+
+        // stable order: by deadline, then by the order scheduled
+        List<Long> expected = new ArrayList<>();
+        for (long t = now; t <= now + 20 * MILLISECOND; t += MILLISECOND) {
+            for (int i = 0; i < count; i++) {
+                if (dueTimes[i] == t) {
+                    expected.add(numbered(i));
+                }
+            }
+        }
+
+        List<Long> sent = new ArrayList<>();
+        long lastTime = 0;
+        for (Transfer transfer : getTransfers()) {
+            assertTrue("in time", transfer.time >= lastTime);
+            lastTime = transfer.time;
+            sent.addAll(transfer.events);
+        }
+        assertEquals("events", expected, sent);
+    }
+
+    @Test
+    public void batchesPerPort() {
+
+        long now = clock.microTime();
+        long dueTime = now + 10 * MILLISECOND;
+        scheduler.schedule(output0, new long[]{ note(1), note(2), note(3) }, 3, dueTime);
+        scheduler.schedule(output1, new long[]{ note(4), note(5) }, 2, dueTime);
+
+        clock.sleep(20 * MILLISECOND * 1000);
+
+        List<Transfer> t = getTransfers();
+        assertEquals("transfers", 2, t.size());
+        assertSame("port", output0.getPort(), t.get(0).port);
+        assertEquals("batch", 3, t.get(0).events.size());
+        assertSame("port", output1.getPort(), t.get(1).port);
+        assertEquals("batch", 2, t.get(1).events.size());
+        assertEquals("time", dueTime, t.get(0).time);
+        assertEquals("time", dueTime, t.get(1).time);
+    }
+
+    @Test
+    public void clearSendsPendingNoteOffs() {
+
+        long now = clock.microTime();
+        scheduler.schedule(output0, note(1), now + 10 * MILLISECOND);
+        scheduler.schedule(output0, MidiEvent.noteOff(0, 1), now + 20 * MILLISECOND);
+        scheduler.schedule(output0, MidiEvent.controlChange(0, 7, 100), now + 20 * MILLISECOND);
+        scheduler.schedule(output1, MidiEvent.noteOn(1, 2, 0), now + 30 * MILLISECOND); // note-off as velocity 0
+        scheduler.schedule(output0, MidiEvent.noteOff(0, 3), now + 40 * MILLISECOND);
+
+        scheduler.clear();
+        assertEquals("pending", 0, scheduler.length());
+
+        // note-offs right away, one batch per port, nothing else ever
+        List<Transfer> t = getTransfers();
+        assertEquals("transfers", 2, t.size());
+        assertSame("port", output0.getPort(), t.get(0).port);
+        assertEquals("time", now, t.get(0).time);
+        assertEquals("batch", 2, t.get(0).events.size());
+        assertEquals(MidiEvent.noteOff(0, 1), (long) t.get(0).events.get(0));
+        assertEquals(MidiEvent.noteOff(0, 3), (long) t.get(0).events.get(1));
+        assertSame("port", output1.getPort(), t.get(1).port);
+        assertEquals(MidiEvent.noteOn(1, 2, 0), (long) t.get(1).events.get(0));
+
+        clock.sleep(50 * MILLISECOND * 1000);
+        assertEquals("transfers", 2, getTransfers().size());
+    }
+}
@@ -0,0 +1,228 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class MidiSysexAssemblerTest {
+
+    private static final int MAX_SIZE = 256; // BYTES per chunk
+    private static final long MESSAGE_LIMIT = 1024; // BYTES
+
+    private static class Delivered {
+        // copy, the buffer goes back to the pool after delivery
+        final int cable;
+        final byte[] data;
+        final boolean first;
+        final boolean last;
+        final boolean aborted;
+        final boolean complete;
+
+        Delivered(MidiSysexAssembler.Buffer buffer) {
+            cable = buffer.getCable();
+            data = Arrays.copyOf(buffer.getData(), buffer.getLength());
+            first = buffer.isFirst();
+            last = buffer.isLast();
+            aborted = buffer.isAborted();
+            complete = buffer.isComplete();
+        }
+    }
+
+    private final LinkedBlockingQueue<Delivered> delivered = new LinkedBlockingQueue<>();
+
+    private final MidiSysexAssembler assembler = new MidiSysexAssembler(new MidiSysexAssembler.Consumer() {
+        @Override
+        public void onSysex(MidiSysexAssembler.Buffer buffer) {
+            delivered.add(new Delivered(buffer));
+        }
+    }, MAX_SIZE, MESSAGE_LIMIT);
+
+    @After
+    public void tearDown() {
+        assembler.stop();
+    }
+
+    private static byte[] message(int length, int seed) {
+        // F0, data bytes, F7
+        byte[] message = new byte[length];
+        message[0] = (byte) 0xf0;
+        for (int i = 1; i < length - 1; i++) {
+            message[i] = (byte) ((seed + i) & 0x7f);
+        }
+        message[length - 1] = (byte) 0xf7;
+        return message;
+    }
+
+    private void send(int cable, byte[] message, int from, int to) {
+        // USB-MIDI packets for bytes from - to of the message: CIN 0x4 while more
+        // than 3 bytes remain, then 0x5 - 0x7 with the last 1 - 3 bytes
+        for (int i = from; i < to; i += 3) {
+            int remaining = message.length - i;
+            int cin = (remaining > 3) ? 0x4 : 0x4 + remaining;
+            int midi1 = (i + 1 < message.length && (remaining > 1)) ? message[i + 1] & 0xff : 0;
+            int midi2 = (i + 2 < message.length && (remaining > 2)) ? message[i + 2] & 0xff : 0;
+            assembler.add(cable, cin, message[i] & 0xff, midi1, midi2);
+        }
+    }
+
+    private void send(int cable, byte[] message) {
+        send(cable, message, 0, message.length);
+    }
+
+    private Delivered next() throws InterruptedException {
+        Delivered d = delivered.poll(2, TimeUnit.SECONDS);
+        assertNotNull("delivered", d);
+        return d;
+    }
+
+    private void assertNothingMore() throws InterruptedException {
+        assertNull("nothing more", delivered.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void assemblesMessagesSplitAcrossPackets() throws InterruptedException {
+
+        for (int length = 2; length <= 8; length++) {
+            byte[] message = message(length, length);
+            send(0, message);
+
+            Delivered d = next();
+            assertTrue("complete", d.complete);
+            assertArrayEquals("length " + length, message, d.data);
+        }
+        assertNothingMore();
+    }
+
+    @Test
+    public void keepsCablesApart() throws InterruptedException {
+
+        byte[] a = message(10, 1);
+        byte[] b = message(7, 2);
+
+        // interleaved packets of two cables
+        send(0, a, 0, 6);
+        send(3, b, 0, 3);
+        send(0, a, 6, a.length);
+        send(3, b, 3, b.length);
+
+        Delivered d = next();
+        assertEquals(0, d.cable);
+        assertArrayEquals(a, d.data);
+        d = next();
+        assertEquals(3, d.cable);
+        assertArrayEquals(b, d.data);
+    }
+
+    @Test
+    public void streamsLongMessagesInChunks() throws InterruptedException {
+
+        byte[] message = message(600, 3);
+        send(0, message);
+
+        byte[] received = new byte[0];
+        Delivered d;
+        int chunks = 0;
+        do {
+            d = next();
+            assertEquals("first", 0 == chunks, d.first);
+            assertFalse("aborted", d.aborted);
+            assertTrue("chunk size", d.data.length <= MAX_SIZE);
+            received = concat(received, d.data);
+            chunks++;
+        } while (!d.last);
+
+        assertEquals("chunks", 3, chunks);
+        assertFalse("complete", d.complete);
+        assertArrayEquals(message, received);
+    }
+
+    @Test
+    public void abortsMessagesOverTheLimit() throws InterruptedException {
+
+        byte[] tooLong = message(2000, 4);
+        send(0, tooLong);
+
+        // the chunks before the limit, then an empty aborted end
+        int chunks = 0;
+        Delivered d;
+        do {
+            d = next();
+            chunks++;
+        } while (!d.last);
+
+        assertTrue("aborted", d.aborted);
+        assertEquals("aborted buffer", 0, d.data.length);
+        assertFalse("complete", d.complete);
+        assertEquals("full chunks before the limit", 3, chunks - 1);
+
+        // the rest was skipped, the next message is fine again
+        byte[] message = message(20, 5);
+        send(0, message);
+        d = next();
+        assertTrue("complete", d.complete);
+        assertArrayEquals(message, d.data);
+        assertNothingMore();
+    }
+
+    @Test
+    public void nextStartInterruptsAMessage() throws InterruptedException {
+
+        // short message: never delivered, nothing to abort
+        byte[] cut = message(20, 6);
+        send(0, cut, 0, 9);
+        byte[] message = message(12, 7);
+        send(0, message);
+
+        Delivered d = next();
+        assertTrue("complete", d.complete);
+        assertArrayEquals(message, d.data);
+        assertNothingMore();
+
+        // streamed message: the chunks already delivered are followed by an abort
+        byte[] cutLong = message(600, 8);
+        send(0, cutLong, 0, 300);
+        send(0, message);
+
+        d = next();
+        assertTrue("first chunk", d.first && !d.last);
+        d = next();
+        assertTrue("aborted", d.aborted && d.last);
+        d = next();
+        assertTrue("complete", d.complete);
+        assertArrayEquals(message, d.data);
+        assertNothingMore();
+    }
+
+    @Test
+    public void resetDropsPartialMessages() throws InterruptedException {
+
+        byte[] message = message(20, 9);
+        send(0, message, 0, 9);
+        assembler.reset();
+
+        // continuation without start is ignored
+        send(0, message, 9, message.length);
+        assertNothingMore();
+
+        send(0, message);
+        Delivered d = next();
+        assertTrue("complete", d.complete);
+        assertArrayEquals(message, d.data);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+}
@@ -0,0 +1,153 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MidiTimecodeMasterTest {
+
+    private static final long QUARTER_FRAME_25 = 10000000; // NANOSECONDS at 25 fps
+    private static final long START_DELAY = 50000000; // NANOSECONDS
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private MidiTimecodeMaster master;
+    private MidiTimecode chase; // reads the quarter frames sent, timecode thread
+
+    // packets seen on the output: time, cin, midi0, midi1, midi2
+    private final List<long[]> packets = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        midi = new MockMidiBase(clock, new MockMidiInterface("test.interface.0", "Test Interface") {
+            @Override
+            public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
+                for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+                    onPacket(buffer[ofs] & 0xf, buffer[ofs + 1] & 0xff, buffer[ofs + 2] & 0xff, buffer[ofs + 3] & 0xff);
+                }
+                return length;
+            }
+        });
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        master = midi.getTimecodeMaster();
+        chase = new MidiTimecode(clock);
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        midi.destroy();
+    }
+
+    private synchronized void onPacket(int cin, int midi0, int midi1, int midi2) {
+        packets.add(new long[]{ clock.nanoTime(), cin, midi0, midi1, midi2 });
+        if (0x2 == cin && 0xf1 == midi0) {
+            chase.update(midi1, clock.microTime());
+        }
+    }
+
+    private synchronized List<long[]> getPackets() {
+        return new ArrayList<>(packets);
+    }
+
+    @Test
+    public void startAtZeroSendsFrameZero() {
+
+        long startTime = clock.nanoTime() + START_DELAY;
+        master.sendStart(MidiTimecode.RATE_25, 0, startTime);
+        clock.sleep(START_DELAY + 8 * QUARTER_FRAME_25);
+        master.sendStop();
+
+        List<long[]> p = getPackets();
+        assertTrue("packets", p.size() >= 4 + 8);
+
+        // full frame 00:00:00:00 first, rate in the hours byte
+        assertEquals("full frame start", 0x4, p.get(0)[1]);
+        assertEquals("full frame hours", MidiTimecode.RATE_25 << 5, p.get(1)[4]);
+        assertEquals("full frame minutes", 0, p.get(2)[2]);
+        assertEquals("full frame seconds", 0, p.get(2)[3]);
+        assertEquals("full frame frames", 0, p.get(2)[4]);
+        assertEquals("full frame end", 0x5, p.get(3)[1]);
+
+        // then the quarter frames of frame 0, the first one right at the start
+        for (int piece = 0; piece < 8; piece++) {
+            long[] qf = p.get(4 + piece);
+            int value = (7 == piece) ? MidiTimecode.RATE_25 << 1 : 0;
+            assertEquals("quarter frame status", 0xf1, qf[2]);
+            assertEquals("quarter frame " + piece, (piece << 4) | value, qf[3]);
+            assertEquals("quarter frame time " + piece, startTime + piece * QUARTER_FRAME_25, qf[0]);
+        }
+    }
+
+    @Test
+    public void startBetweenFramesWaitsForTheNextFrameEdge() {
+
+        // one nanosecond into frame 1, frame 2 is the first complete one
+        long songTime = 4 * QUARTER_FRAME_25 + 1;
+        long startTime = clock.nanoTime() + START_DELAY;
+        master.sendStart(MidiTimecode.RATE_25, songTime, startTime);
+        clock.sleep(START_DELAY + 16 * QUARTER_FRAME_25);
+        master.sendStop();
+
+        List<long[]> p = getPackets();
+        assertTrue("packets", p.size() >= 4 + 8);
+
+        assertEquals("full frame frames", 2, p.get(2)[4]);
+        assertEquals("first quarter frame", 0x02, p.get(4)[3]);
+        assertEquals("first quarter frame time", startTime + 8 * QUARTER_FRAME_25 - songTime, p.get(4)[0]);
+    }
+
+    @Test
+    public void quarterFramesStayOnTheGrid() {
+
+        // 29.97 drop frame from 00:00:59;00 over two minute boundaries
+        int r = MidiTimecode.RATE_2997;
+        long songTime = MidiTimecode.quarterFramesToNanos(r, 4 * MidiTimecode.toFrames(r, 0, 0, 59, 0));
+        long startTime = clock.nanoTime() + START_DELAY;
+        long runTime = 125L * 1000000000L;
+
+        master.sendStart(r, songTime, startTime);
+        clock.sleep(START_DELAY + runTime);
+
+        long now = clock.nanoTime();
+        MidiTimecode.Estimate estimate = new MidiTimecode.Estimate();
+        synchronized (this) {
+            assertTrue("chase", chase.getEstimate(estimate, now));
+            assertTrue("running", estimate.isRunning());
+            assertEquals("jumps", 0, chase.getJumpCount());
+            assertEquals("song time", (double) (songTime + now - startTime), (double) estimate.getSongTime(now), 1000.0);
+        }
+        master.sendStop();
+
+        // every quarter frame due from its index, never accumulated. The song time is
+        // a frame edge, the first block starts right there
+        long quarterFrame = 4 * MidiTimecode.toFrames(r, 0, 0, 59, 0);
+        int count = 0;
+        for (long[] p : getPackets()) {
+            if (0x2 != p[1]) {
+                continue;
+            }
+            int piece = count & 7;
+            assertEquals("piece", piece, p[3] >> 4);
+            assertEquals("value", MidiEvent.getMidi1(MidiTimecode.quarterFrame(r, (quarterFrame - piece) / 4, piece)), p[3]);
+            assertEquals("time " + count, startTime + MidiTimecode.quarterFramesToNanos(r, quarterFrame) - songTime, p[0]);
+            quarterFrame++;
+            count++;
+        }
+        assertTrue("quarter frames", count >= runTime / 1000000000L * 4 * 29);
+    }
+}
@@ -0,0 +1,181 @@
+package com.beatmaker.core.midi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MidiTimecodeTest {
+
+    private static final long QUARTER_FRAME_25 = 10000; // MICROSECONDS at 25 fps
+
+    private VirtualClock clock;
+    private MidiTimecode timecode;
+    private final MidiTimecode.Estimate estimate = new MidiTimecode.Estimate();
+
+    private long time; // MICROSECONDS
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        timecode = new MidiTimecode(clock);
+        time = clock.microTime();
+    }
+
+    private void sendQuarterFrames(int rate, long frames, int firstPiece, int lastPiece) {
+        // quarter frames of the two-frame block starting at the given frame, one every 10ms
+        for (int piece = firstPiece; piece <= lastPiece; piece++) {
+            time += QUARTER_FRAME_25;
+            clock.advanceTo(time * 1000);
+            timecode.update(MidiEvent.getMidi1(MidiTimecode.quarterFrame(rate, frames, piece)), time);
+        }
+    }
+
+    private static int label(int hours, int minutes, int seconds, int frames) {
+        return (hours << 24) | (minutes << 16) | (seconds << 8) | frames;
+    }
+
+    @Test
+    public void dropFrameLabelsSkipTwoFramesPerMinute() {
+
+        int r = MidiTimecode.RATE_2997;
+
+        // 00:00:59;29 is followed by 00:01:00;02, except every ten minutes
+        assertEquals(1799, MidiTimecode.toFrames(r, 0, 0, 59, 29));
+        assertEquals(1800, MidiTimecode.toFrames(r, 0, 1, 0, 2));
+        assertEquals(label(0, 1, 0, 2), MidiTimecode.toLabel(r, 1800));
+        assertEquals(17981, MidiTimecode.toFrames(r, 0, 9, 59, 29));
+        assertEquals(17982, MidiTimecode.toFrames(r, 0, 10, 0, 0));
+        assertEquals(label(0, 10, 0, 0), MidiTimecode.toLabel(r, 17982));
+        assertEquals(label(1, 0, 0, 0), MidiTimecode.toLabel(r, 6 * 17982));
+
+        // every real frame of the first 20 minutes has a label that converts back to it
+        for (long frames = 0; frames < 2 * 17982; frames++) {
+            int l = MidiTimecode.toLabel(r, frames);
+            int minutes = (l >> 16) & 0xff;
+            int seconds = (l >> 8) & 0xff;
+            int f = l & 0xff;
+            assertFalse("skipped label " + frames, 0 == seconds && f < 2 && 0 != minutes % 10);
+            assertEquals("frame " + frames, frames, MidiTimecode.toFrames(r, (l >> 24) & 0xff, minutes, seconds, f));
+        }
+    }
+
+    @Test
+    public void nonDropLabelsCountWholeSeconds() {
+        assertEquals(90000, MidiTimecode.toFrames(MidiTimecode.RATE_25, 1, 0, 0, 0));
+        assertEquals(label(1, 0, 0, 0), MidiTimecode.toLabel(MidiTimecode.RATE_25, 90000));
+        assertEquals(label(0, 0, 1, 23), MidiTimecode.toLabel(MidiTimecode.RATE_24, 47));
+        assertEquals(label(0, 1, 0, 0), MidiTimecode.toLabel(MidiTimecode.RATE_30, 1800));
+    }
+
+    @Test
+    public void conversionsRoundDown() {
+
+        assertEquals(0, MidiTimecode.nanosToQuarterFrames(MidiTimecode.RATE_25, 0));
+        assertEquals(-1, MidiTimecode.nanosToQuarterFrames(MidiTimecode.RATE_25, -1));
+        assertEquals(0, MidiTimecode.nanosToQuarterFrames(MidiTimecode.RATE_25, 9999999));
+        assertEquals(1, MidiTimecode.nanosToQuarterFrames(MidiTimecode.RATE_25, 10000000));
+
+        // 29.97 fps: 30000 frames every 1001 seconds, exact after a day
+        int r = MidiTimecode.RATE_2997;
+        assertEquals(1001000000000L, MidiTimecode.quarterFramesToNanos(r, 4 * 30000));
+        long day = 86400L * 1000000000L;
+        long quarterFrames = MidiTimecode.nanosToQuarterFrames(r, day);
+        assertTrue(MidiTimecode.quarterFramesToNanos(r, quarterFrames) <= day);
+        assertTrue(MidiTimecode.quarterFramesToNanos(r, quarterFrames + 1) > day);
+    }
+
+    @Test
+    public void quarterFramesAssembleTheTimecode() {
+
+        long frames = MidiTimecode.toFrames(MidiTimecode.RATE_25, 1, 2, 3, 4);
+
+        sendQuarterFrames(MidiTimecode.RATE_25, frames, 0, 6);
+        assertFalse("incomplete", timecode.getEstimate(estimate, time * 1000));
+
+        sendQuarterFrames(MidiTimecode.RATE_25, frames, 7, 7);
+        assertTrue("complete", timecode.getEstimate(estimate, time * 1000));
+        assertTrue("running", estimate.isRunning());
+        assertEquals("rate", MidiTimecode.RATE_25, estimate.getRate());
+        assertEquals("position", frames * 4 + 7, estimate.getQuarterFrame());
+        assertEquals("time", time * 1000, estimate.getTime());
+
+        // from here on every quarter frame moves the position
+        sendQuarterFrames(MidiTimecode.RATE_25, frames + 2, 0, 2);
+        assertTrue(timecode.getEstimate(estimate, time * 1000));
+        assertEquals("position", (frames + 2) * 4 + 2, estimate.getQuarterFrame());
+        assertEquals("song time", MidiTimecode.quarterFramesToNanos(MidiTimecode.RATE_25, (frames + 2) * 4 + 2) + 5000000,
+                estimate.getSongTime(time * 1000 + 5000000));
+        assertEquals("jumps", 0, timecode.getJumpCount());
+    }
+
+    @Test
+    public void acquiresFromPieceZero() {
+
+        // joined in the middle of a block: nothing until a whole block came in
+        sendQuarterFrames(MidiTimecode.RATE_25, 100, 4, 7);
+        sendQuarterFrames(MidiTimecode.RATE_25, 102, 0, 6);
+        assertFalse(timecode.getEstimate(estimate, time * 1000));
+
+        sendQuarterFrames(MidiTimecode.RATE_25, 102, 7, 7);
+        assertTrue(timecode.getEstimate(estimate, time * 1000));
+        assertEquals("position", 102 * 4 + 7, estimate.getQuarterFrame());
+    }
+
+    @Test
+    public void detectsJumps() {
+
+        sendQuarterFrames(MidiTimecode.RATE_25, 100, 0, 7);
+        sendQuarterFrames(MidiTimecode.RATE_25, 102, 0, 7);
+        assertEquals("jumps", 0, timecode.getJumpCount());
+
+        // the master located while running
+        sendQuarterFrames(MidiTimecode.RATE_25, 500, 0, 7);
+        assertEquals("jumps", 1, timecode.getJumpCount());
+        assertTrue(timecode.getEstimate(estimate, time * 1000));
+        assertEquals("position", 500 * 4 + 7, estimate.getQuarterFrame());
+    }
+
+    @Test
+    public void stopsWithoutQuarterFrames() {
+
+        sendQuarterFrames(MidiTimecode.RATE_25, 100, 0, 7);
+        assertTrue(timecode.getEstimate(estimate, time * 1000 + 50000000));
+        assertTrue("running", estimate.isRunning());
+
+        assertTrue(timecode.getEstimate(estimate, time * 1000 + 200000000));
+        assertFalse("stopped", estimate.isRunning());
+    }
+
+    @Test
+    public void fullFrameLocates() {
+
+        int r = MidiTimecode.RATE_2997;
+        long frames = MidiTimecode.toFrames(r, 1, 2, 3, 4);
+
+        long[] packets = new long[4];
+        assertEquals(4, MidiTimecode.fullFrame(r, frames, packets));
+
+        // USB-MIDI packets back into the sysex message
+        byte[] message = new byte[12];
+        int length = 0;
+        for (long packet : packets) {
+            int size = (0x5 == MidiEvent.getCodeIndexNumber(packet)) ? 1 : 3;
+            int[] bytes = { MidiEvent.getMidi0(packet), MidiEvent.getMidi1(packet), MidiEvent.getMidi2(packet) };
+            for (int i = 0; i < size; i++) {
+                message[length++] = (byte) bytes[i];
+            }
+        }
+        assertEquals(10, length);
+
+        timecode.updateFullFrame(message, length);
+        assertTrue(timecode.getEstimate(estimate, clock.nanoTime()));
+        assertFalse("running", estimate.isRunning());
+        assertEquals("rate", r, estimate.getRate());
+        assertEquals("position", frames * 4, estimate.getQuarterFrame());
+    }
+}
@@ -0,0 +1,47 @@
+package com.beatmaker.core.midi;
+
+import com.beatmaker.config.Settings;
+import com.beatmaker.core.utils.Clock;
+
+public class MockMidiBase extends MidiBase {
+
+    /*
+        MidiBase with a mock interface connected as output, without device
+        update, input or dispatch threads. Output goes through the same
+        ports, scheduler and transfers as with a real device, input is
+        dispatched on the thread calling receive().
+    */
+
+    private final MidiInterfaceBase midiInterface;
+    private final MidiData inputData = new MidiData();
+
+    public MockMidiBase(Clock clock, MidiInterfaceBase midiInterface) {
+        super(clock);
+
+        if (null == Settings.instance()) {
+            new Settings();
+        }
+
+        this.midiInterface = midiInterface;
+        midiInterface.addPort(new MockMidiPort(MidiPortBase.OUTPUT));
+    }
+
+    public MockMidiBase(Clock clock) {
+        this(clock, new MockMidiInterface("test.interface.0", "Test Interface"));
+    }
+
+    public MidiInterfaceBase getInterface() {
+        return midiInterface;
+    }
+
+    public void connectOutput() {
+        midiInterface.open();
+        currentInterface = midiInterface;
+        getDefaultOutputPort();
+    }
+
+    public void receive(long midiEvent, long timestamp) {
+        // timestamp in MICROSECONDS, like the input thread's
+        dispatcher.dispatch(MidiEvent.toMidiData(midiEvent, timestamp, inputData));
+    }
+}
@@ -0,0 +1,211 @@
+package com.beatmaker.core.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiClock;
+import com.beatmaker.core.midi.MidiClockMaster;
+import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.midi.MidiPortBase;
+import com.beatmaker.core.midi.MockMidiBase;
+import com.beatmaker.core.midi.MockMidiInterface;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SequencerClockMasterTest {
+
+    private static final long SESSION_TIME = 600L * 1000000000L; // NANOSECONDS
+    private static final long QUARTER_TIME = 60000000000L / Constants.DEFAULT_BPM; // NANOSECONDS, truncated
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private Sequencer sequencer;
+
+    // handed to the clock master by the sequencer thread
+    private final List<Long> clockDueTimes = new ArrayList<>(); // MICROSECONDS
+    private long startSongPulse = -1;
+    private long startDueTime = 0; // MICROSECONDS
+
+    // realtime messages on the output: status, time (NANOSECONDS)
+    private final List<long[]> transmitted = new ArrayList<>();
+
+    // first tick played, sequencer thread
+    private long firstTick = -1;
+    private long firstTickTime = 0;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        SequencerMetrics.instance().setBpm(Constants.DEFAULT_BPM);
+
+        MockMidiInterface midiInterface = new MockMidiInterface("test.interface.0", "Test Interface") {
+            @Override
+            public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
+                for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+                    if ((buffer[ofs + 1] & 0xff) >= 0xf8) {
+                        onTransmit(buffer[ofs + 1] & 0xff);
+                    }
+                }
+                return length;
+            }
+        };
+
+        midi = new MockMidiBase(clock, midiInterface) {
+            @Override
+            public synchronized void create() {
+                super.create();
+                midiClockMaster = new MidiClockMaster(this) {
+                    @Override
+                    public void sendStart(long songPulse, long dueTime) {
+                        onStart(songPulse, dueTime);
+                        super.sendStart(songPulse, dueTime);
+                    }
+
+                    @Override
+                    public void sendClock(long dueTime) {
+                        onClock(dueTime);
+                        super.sendClock(dueTime);
+                    }
+                };
+            }
+        };
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        sequencer = new Sequencer(clock);
+        sequencer.create();
+        sequencer.setClockSlave(false);
+        sequencer.setTransportSlave(false);
+
+        sequencer.addListener(new SequencerListener() {
+            @Override
+            public void onSequencerPositionUpdate(SequencerPosition position, boolean stepChange) {
+                synchronized (SequencerClockMasterTest.this) {
+                    if (firstTick < 0) {
+                        firstTick = position.getTick();
+                        firstTickTime = clock.nanoTime();
+                    }
+                }
+            }
+
+            @Override
+            public void onSequencerCaptureFinished(List<MidiNote> capturedNotes) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        sequencer.destroy();
+        midi.destroy();
+    }
+
+    private synchronized void onStart(long songPulse, long dueTime) {
+        startSongPulse = songPulse;
+        startDueTime = dueTime;
+    }
+
+    private synchronized void onClock(long dueTime) {
+        clockDueTimes.add(dueTime);
+    }
+
+    private synchronized void onTransmit(int status) {
+        transmitted.add(new long[]{ status, clock.nanoTime() });
+    }
+
+    private static long pulseOffset(long pulses) {
+        // NANOSECONDS from the first pulse, exact up to rounding
+        return pulses * 60000000000L / (Constants.DEFAULT_BPM * MidiClock.PULSES_PER_QUARTER);
+    }
+
+    @Test
+    public void pulsesStayOnTheGrid() {
+
+        sequencer.setClockMaster(true);
+        sequencer.start();
+        clock.sleep(SESSION_TIME);
+        sequencer.stop();
+
+        synchronized (this) {
+            assertEquals("first tick", 1, firstTick);
+            assertEquals("song pulse", 0, startSongPulse);
+            assertEquals("start due time", firstTickTime / 1000, startDueTime);
+
+            // 24 per quarter for the whole session, every one on the exact grid
+            long numPulses = clockDueTimes.size();
+            assertEquals("pulses", (double) (SESSION_TIME * MidiClock.PULSES_PER_QUARTER / QUARTER_TIME), (double) numPulses, 2.0);
+
+            for (int k = 0; k < numPulses; k++) {
+                long expected = (firstTickTime + pulseOffset(k)) / 1000;
+                assertEquals("pulse " + k, (double) expected, (double) clockDueTimes.get(k), 1.0);
+            }
+        }
+    }
+
+    @Test
+    public void startFromSongPositionWaitsForTheNextBeat() {
+
+        // the first tick played is 222: pulse 20.8, the next MIDI beat is pulse 24
+        sequencer.setClockMaster(true);
+        sequencer.getState().locate(221);
+        sequencer.getState().resume();
+        clock.sleep(10 * QUARTER_TIME);
+        sequencer.stop();
+
+        synchronized (this) {
+            assertEquals("first tick", 222, firstTick);
+            assertEquals("song pulse", 24, startSongPulse);
+
+            // position pointer and continue go out with the first tick, pulse 24 is song
+            // tick 256, 34 ticks later
+            assertEquals("start due time", firstTickTime / 1000, startDueTime);
+            long firstPulseTime = firstTickTime + 34 * QUARTER_TIME / Constants.TICKS_PER_QUARTER_NOTE;
+            assertTrue("pulses", clockDueTimes.size() > 24);
+            for (int k = 0; k < clockDueTimes.size(); k++) {
+                long expected = (firstPulseTime + pulseOffset(k)) / 1000;
+                assertEquals("pulse " + k, (double) expected, (double) clockDueTimes.get(k), 1.0);
+            }
+        }
+    }
+
+    @Test
+    public void stopDropsQueuedPulses() {
+
+        MidiClockMaster master = midi.getClockMaster();
+        long pulseTime = pulseOffset(1);
+        long startTime = clock.nanoTime() + pulseTime;
+
+        master.sendStart(0, startTime / 1000);
+        for (int k = 0; k < 24; k++) {
+            master.sendClock((startTime + pulseOffset(k)) / 1000);
+        }
+
+        // three pulses out, then stop
+        clock.sleep(startTime + pulseOffset(2) + pulseTime / 2 - clock.nanoTime());
+        master.sendStop();
+        long stopTime = clock.nanoTime();
+        clock.sleep(QUARTER_TIME);
+
+        synchronized (this) {
+            assertEquals("messages", 5, transmitted.size());
+            assertEquals("start", 0xfa, transmitted.get(0)[0]);
+            for (int k = 0; k < 3; k++) {
+                assertEquals("clock", 0xf8, transmitted.get(1 + k)[0]);
+                assertEquals("clock time", (double) (startTime + pulseOffset(k)), (double) transmitted.get(1 + k)[1], 1000.0);
+            }
+            assertEquals("stop", 0xfc, transmitted.get(4)[0]);
+            assertEquals("stop time", stopTime, transmitted.get(4)[1]);
+        }
+    }
+}
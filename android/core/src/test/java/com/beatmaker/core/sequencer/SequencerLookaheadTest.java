@@ -0,0 +1,101 @@
+package com.beatmaker.core.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.core.midi.MidiPortBase;
+import com.beatmaker.core.midi.MockMidiBase;
+import com.beatmaker.core.midi.MockMidiInterface;
+import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequencerLookaheadTest {
+
+    private static final long LOOKAHEAD = 1000000000L; // NANOSECONDS
+    private static final int CHANNEL = 0;
+    private static final int PITCH = 60;
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private Sequencer sequencer;
+
+    // note-ons and note-offs seen on the output
+    private int noteOns = 0;
+    private int noteOffs = 0;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        midi = new MockMidiBase(clock, new MockMidiInterface("test.interface.0", "Test Interface") {
+            @Override
+            public int send(MidiPortBase port, byte[] buffer, int length, int timeout) {
+                for (int ofs = 0; ofs + 4 <= length; ofs += 4) {
+                    onPacket(buffer[ofs] & 0xf, buffer[ofs + 1] & 0xff, buffer[ofs + 2] & 0xff, buffer[ofs + 3] & 0xff);
+                }
+                return length;
+            }
+        });
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        sequencer = new Sequencer(clock);
+        sequencer.create();
+        sequencer.setLookaheadTime(LOOKAHEAD);
+
+        ElementConfig config = new ElementConfig();
+        config.setChannel(CHANNEL);
+        config.setNotes(new MidiNote[]{ new MidiNote(CHANNEL, PITCH, 100) });
+
+        SequencerTrack track = sequencer.getTrack(0);
+        track.setConfig(config);
+        track.getElement(0).setActive();
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        sequencer.destroy();
+        midi.destroy();
+    }
+
+    private synchronized void onPacket(int cin, int status, int pitch, int velocity) {
+        if ((status & 0xf) != CHANNEL || pitch != PITCH) {
+            return;
+        }
+        if (0x9 == cin && velocity > 0) {
+            noteOns++;
+        } else if (0x8 == cin || 0x9 == cin) {
+            noteOffs++;
+        }
+    }
+
+    @Test
+    public void stopSendsNoteOffsRenderedAhead() {
+
+        sequencer.start();
+
+        // the first note is on, its note-off is rendered but not due yet
+        long noteLength = SequencerMetrics.instance().getTempo().getTickTimeNano() * new ElementConfig().getDuration();
+        clock.sleep(LOOKAHEAD + noteLength / 2);
+
+        synchronized (this) {
+            assertEquals("note-ons before stop", 1, noteOns);
+            assertEquals("note-offs before stop", 0, noteOffs);
+        }
+
+        sequencer.stop();
+        clock.sleep(LOOKAHEAD);
+
+        synchronized (this) {
+            assertTrue("note-ons after stop", noteOns >= 1);
+            assertEquals("note-offs after stop", noteOns, noteOffs);
+        }
+    }
+}
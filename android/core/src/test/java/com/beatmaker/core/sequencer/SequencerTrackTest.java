@@ -0,0 +1,124 @@
+package com.beatmaker.core.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.midi.MockMidiBase;
+import com.beatmaker.core.utils.Clock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+public class SequencerTrackTest {
+
+    private static final int NUM_TRACKS = 8;
+    private static final int NUM_TICKS = Constants.NUM_STEPS * Constants.TICKS_PER_STEP;
+
+    private MockMidiBase midi;
+    private SequencerTrack[] tracks;
+
+    @Before
+    public void setUp() {
+        // output goes all the way to the (mock) device transfers
+        midi = new MockMidiBase(Clock.instance());
+        midi.connectOutput();
+
+        tracks = new SequencerTrack[NUM_TRACKS];
+        for (int i = 0; i < NUM_TRACKS; i++) {
+            SequencerTrack track = new SequencerTrack(i, "Track" + i);
+
+            ElementConfig config = new ElementConfig();
+            config.setChannel(i);
+            config.setNotes(new MidiNote[]{
+                    new MidiNote(i, 36 + i, 100),
+                    new MidiNote(i, 48 + i, 100),
+                    new MidiNote(i, 60 + i, 100),
+                    new MidiNote(i, 100 + i, 100)
+            });
+            track.setConfig(config);
+
+            for (int j = 0; j < track.getNumElements(); j++) {
+                track.getElement(j).setActive();
+            }
+
+            tracks[i] = track;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        midi.destroy();
+    }
+
+    private void play(int numTicks) {
+        for (int t = 0; t < numTicks; t++) {
+            double pos = (double) (t % NUM_TICKS);
+            for (SequencerTrack track : tracks) {
+                track.updateTick(pos);
+            }
+            if (0 == (t % Constants.TICKS_PER_STEP)) {
+                for (SequencerTrack track : tracks) {
+                    track.update(pos);
+                }
+            }
+            midi.flushMidiOutput();
+        }
+    }
+
+    private static long[] getOutputThreadIds() {
+        // this thread, and the port threads when output runs asynchronously
+        ArrayList<Long> ids = new ArrayList<>();
+        ids.add(Thread.currentThread().getId());
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("midi output thread")) {
+                ids.add(thread.getId());
+            }
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    private static long getAllocatedBytes(com.sun.management.ThreadMXBean bean, long[] threadIds) {
+        long bytes = 0;
+        for (long threadId : threadIds) {
+            bytes += Math.max(0, bean.getThreadAllocatedBytes(threadId));
+        }
+        return bytes;
+    }
+
+    @Test
+    public void densePlaybackDoesNotAllocate() {
+
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        assertNotNull("output port", midi.getDefaultOutputPort());
+
+        // warm up: compile patterns and let the JIT settle
+        play(NUM_TICKS * 32);
+
+        long[] threadIds = getOutputThreadIds();
+
+        // background compilation may still finish while measuring and allocate a
+        // few bytes once, a per-tick allocation would show up in every window
+        long numTicks = NUM_TICKS * 16;
+        long allocated = Long.MAX_VALUE;
+
+        for (int i = 0; i < 5 && allocated > 0; i++) {
+            long before = getAllocatedBytes(bean, threadIds);
+            play((int) numTicks);
+            long after = getAllocatedBytes(bean, threadIds);
+            allocated = after - before;
+        }
+
+        assertEquals("bytes allocated in " + numTicks + " ticks", 0, allocated);
+    }
+}
@@ -0,0 +1,160 @@
+package com.beatmaker.core.sequencer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiEvent;
+import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.midi.MockMidiBase;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SequencerTransportTest {
+
+    private static final int BPM = 125;
+    private static final long PULSE_TIME = 20000000; // NANOSECONDS at 125 bpm, whole microseconds
+    private static final int TICKS_PER_MIDI_BEAT = Constants.TICKS_PER_QUARTER_NOTE / 4; // 6 of 24 pulses
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private Sequencer sequencer;
+
+    private long nextPulseTime;
+
+    // first tick played after a start or continue, sequencer thread
+    private long firstTick = -1;
+    private long firstTickTime = 0;
+
+    @Before
+    public void setUp() {
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        SequencerMetrics.instance().setBpm(BPM);
+
+        midi = new MockMidiBase(clock);
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        sequencer = new Sequencer(clock);
+        sequencer.create();
+        sequencer.setTransportSlave(true);
+        sequencer.setClockSlave(true);
+        sequencer.setClockMaster(false);
+
+        sequencer.addListener(new SequencerListener() {
+            @Override
+            public void onSequencerPositionUpdate(SequencerPosition position, boolean stepChange) {
+                synchronized (SequencerTransportTest.this) {
+                    if (firstTick < 0) {
+                        firstTick = position.getTick();
+                        firstTickTime = clock.nanoTime();
+                    }
+                }
+            }
+
+            @Override
+            public void onSequencerCaptureFinished(List<MidiNote> capturedNotes) {
+            }
+        });
+
+        nextPulseTime = clock.nanoTime() + PULSE_TIME;
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        sequencer.destroy();
+        midi.destroy();
+    }
+
+    private void sendPulses(int count) {
+        // the master's clock, on the exact grid
+        for (int i = 0; i < count; i++) {
+            clock.sleep(nextPulseTime - clock.nanoTime());
+            midi.receive(MidiEvent.pack(0xf, 0xf8, 0, 0), nextPulseTime / 1000);
+            nextPulseTime += PULSE_TIME;
+        }
+    }
+
+    private void send(int cin, int midi0, int midi1, int midi2) {
+        // between two pulses
+        long time = nextPulseTime - PULSE_TIME / 2;
+        clock.sleep(time - clock.nanoTime());
+        midi.receive(MidiEvent.pack(cin, midi0, midi1, midi2), time / 1000);
+    }
+
+    private synchronized void resetFirstTick() {
+        firstTick = -1;
+        firstTickTime = 0;
+    }
+
+    @Test
+    public void startPlaysFromZeroOnTheNextPulse() {
+
+        // the master's clock runs while stopped, the slave locks to it
+        sendPulses(2 * 24);
+        assertFalse("stopped", sequencer.getState().isPlaying());
+
+        send(0xf, 0xfa, 0, 0);
+        long startPulseTime = nextPulseTime;
+        sendPulses(24);
+
+        assertTrue("playing", sequencer.getState().isPlaying());
+        synchronized (this) {
+            // located to tick 0, the first tick played is the one after it
+            assertEquals("first tick", 1, firstTick);
+            assertEquals("first tick time", startPulseTime + Constants.SEQUENCER_SLAVE_LATENCY, firstTickTime);
+        }
+    }
+
+    @Test
+    public void continuePlaysFromTheSongPosition() {
+
+        sendPulses(2 * 24);
+        send(0xf, 0xfa, 0, 0);
+        sendPulses(24);
+
+        send(0xf, 0xfc, 0, 0);
+        sendPulses(2);
+        assertFalse("stopped", sequencer.getState().isPlaying());
+
+        // 10 MIDI beats of 6 pulses each
+        send(0x3, 0xf2, 10, 0);
+        sendPulses(2);
+        assertFalse("stopped", sequencer.getState().isPlaying());
+        assertEquals("located", 10 * TICKS_PER_MIDI_BEAT, sequencer.getState().getPosition().getTick());
+
+        resetFirstTick();
+        send(0xf, 0xfb, 0, 0);
+        long continuePulseTime = nextPulseTime;
+        sendPulses(24);
+
+        assertTrue("playing", sequencer.getState().isPlaying());
+        synchronized (this) {
+            assertEquals("first tick", 10 * TICKS_PER_MIDI_BEAT + 1, firstTick);
+            assertEquals("first tick time", continuePulseTime + Constants.SEQUENCER_SLAVE_LATENCY, firstTickTime);
+        }
+    }
+
+    @Test
+    public void songPositionUsesBothDataBytes() {
+
+        sendPulses(24);
+
+        // 129 MIDI beats, wraps around the pattern
+        send(0x3, 0xf2, 1, 1);
+        sendPulses(2);
+
+        long tick = 129 * TICKS_PER_MIDI_BEAT % SequencerMetrics.instance().getNumTicks();
+        assertEquals("located", tick, sequencer.getState().getPosition().getTick());
+    }
+}
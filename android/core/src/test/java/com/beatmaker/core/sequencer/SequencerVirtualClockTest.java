@@ -0,0 +1,109 @@
+package com.beatmaker.core.sequencer;
+
+import static org.junit.Assert.assertEquals;
+
+import com.beatmaker.config.Constants;
+import com.beatmaker.core.midi.MidiNote;
+import com.beatmaker.core.midi.MidiWaitStrategy;
+import com.beatmaker.core.midi.MockMidiBase;
+import com.beatmaker.core.utils.VirtualClock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SequencerVirtualClockTest {
+
+    private static final long SESSION_TIME = 3600L * 1000000000L; // NANOSECONDS
+
+    private VirtualClock clock;
+    private MockMidiBase midi;
+    private Sequencer sequencer;
+
+    // sequencer thread
+    private long numTicks = 0;
+    private long numSteps = 0;
+    private long lastStepTime = 0;
+    private long maxStepInterval = 0;
+
+    @Before
+    public void setUp() {
+        // time only passes while every thread parks on the clock
+        assertEquals("queue wait strategy", MidiWaitStrategy.PARK, Constants.MIDI_QUEUE_WAIT_STRATEGY);
+
+        clock = new VirtualClock();
+        clock.attach(); // time stands still while setting up
+
+        SequencerMetrics.instance().setBpm(Constants.DEFAULT_BPM);
+
+        midi = new MockMidiBase(clock);
+        midi.create();
+        midi.connectOutput();
+        midi.start();
+
+        sequencer = new Sequencer(clock);
+        sequencer.create();
+        sequencer.setClockSlave(false);
+        sequencer.setTransportSlave(false);
+
+        for (int i = 0; i < Constants.NUM_TRACKS; i++) {
+            ElementConfig config = new ElementConfig();
+            config.setChannel(i);
+            config.setNotes(new MidiNote[]{ new MidiNote(i, 36 + i, 100) });
+
+            SequencerTrack track = sequencer.getTrack(i);
+            track.setConfig(config);
+            for (int j = i % 2; j < track.getNumElements(); j += 2) {
+                track.getElement(j).setActive();
+            }
+        }
+
+        sequencer.addListener(new SequencerListener() {
+            @Override
+            public void onSequencerPositionUpdate(SequencerPosition position, boolean stepChange) {
+                numTicks++;
+                if (stepChange) {
+                    long now = clock.nanoTime();
+                    if (numSteps > 0) {
+                        maxStepInterval = Math.max(maxStepInterval, now - lastStepTime);
+                    }
+                    lastStepTime = now;
+                    numSteps++;
+                }
+            }
+
+            @Override
+            public void onSequencerCaptureFinished(List<MidiNote> capturedNotes) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        clock.detach();
+        sequencer.destroy();
+        midi.destroy();
+    }
+
+    @Test
+    public void oneHourSessionIsDeterministic() {
+
+        long startTime = clock.nanoTime();
+
+        sequencer.start();
+        clock.sleep(SESSION_TIME);
+        sequencer.stop();
+
+        assertEquals("virtual time", SESSION_TIME, clock.nanoTime() - startTime);
+
+        // 110 BPM, 256 ticks per quarter: one tick every 2130681.8ns, the first one right at the start
+        assertEquals("ticks", 1689601, numTicks);
+        assertEquals("steps", 26401, numSteps);
+
+        // steps on the grid, at most one tick late
+        long stepTime = SequencerMetrics.instance().getTickTimeNano() * Constants.TICKS_PER_STEP;
+        assertEquals("max. step interval", stepTime, maxStepInterval, SequencerMetrics.instance().getTickTimeNano() + 1);
+    }
+}
@@ -8,12 +8,15 @@ import javax.sound.midi.MidiDevice;
 import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
 import java.util.HashMap;
-import java.util.Iterator;
 
 public class JavaMidi extends MidiBase implements MidiApiProvider {
 
     private static final String TAG = "Midi";
 
+    private static final int LOG_OUTPUT_LATENCY = Logger.register(TAG, "max. output latency: {}");
+
+    private final Object midiInputProducerLock = new Object();
+
     public JavaMidi() {
         super();
     }
@@ -51,7 +54,7 @@ public class JavaMidi extends MidiBase implements MidiApiProvider {
                 MidiInterfaceBase midiInterface = interfaces.get(deviceId);
 
                 if (null == midiInterface) {
-                    midiInterface = new JavaMidiInterface(isInput ? device : null, isOutput ? device : null);
+                    midiInterface = new JavaMidiInterface(isInput ? device : null, isOutput ? device : null, getTimeClock());
                     interfaces.put(midiInterface.getId(), midiInterface);
                 } else {
                     JavaMidiInterface intf = (JavaMidiInterface) midiInterface;
@@ -78,15 +81,15 @@ public class JavaMidi extends MidiBase implements MidiApiProvider {
         }
 
         if (null == midiInputQueue) {
-            midiInputQueue = new MidiQueue(MidiQueue.DEFAULT_SIZE);
+            midiInputQueue = new MidiRingBuffer(MidiRingBuffer.DEFAULT_SIZE);
         } else {
             midiInputQueue.clear();
         }
 
         midiInterface.addListener(new MidiInterfaceListener() {
             @Override
-            public void onData(MidiData midiData) {
-                enqueueMidiInput(midiData);
+            public void onData(long midiEvent, long timestamp) {
+                enqueueMidiInput(midiEvent, timestamp);
             }
         });
 
@@ -94,60 +97,44 @@ public class JavaMidi extends MidiBase implements MidiApiProvider {
     }
 
     @Override
-    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, MidiData midiData) {
-        if (null == midiInterface || null == midiPort || null == midiData) {
-            return -1;
-        }
-
-        return midiPort.send(midiData);
-    }
-
-    @Override
-    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, Iterator<MidiData> it) {
-        if (null == midiInterface || null == midiPort || null == it) {
+    protected int send(MidiInterfaceBase midiInterface, MidiPortBase midiPort, long[] midiEvents, int count, long baseTime, byte[] packetBuffer) {
+        if (null == midiInterface || null == midiPort || null == midiEvents) {
             return -1;
         }
 
-        int maxPacketSize = midiPort.getMaxPacketSize();
-        byte[] packetBuffer = new byte[maxPacketSize];
-
         int transferCount = 0;
 
-        long maxLatency = 0;
-        long earliestTime = 0;
-
-        while (it.hasNext()) {
-            MidiData m = it.next();
-
-            long timestamp = m.getTimestamp();
-            if (earliestTime == 0 || (timestamp < earliestTime && timestamp != 0)) {
-                earliestTime = timestamp;
-            }
-
-            int res = midiInterface.send(midiPort, m);
-            if (res <= 0) {
+        // Java Sound takes one message at a time
+        for (int i = 0; i < count; i++) {
+            int res = midiInterface.send(midiPort, midiEvents[i]);
+            if (res < 0) {
                 Logger.e(TAG, "output I/O error");
                 return res;
             }
 
-            transferCount++;
-
-            // update latency measurement
-            long now = getTimeMicros();
-            long latency = (0 != earliestTime) ? now - earliestTime : 0;
-            if (latency > maxLatency) maxLatency = latency;
-            earliestTime = 0;
+            transferCount += res;
         }
 
-        if (Debug.SHOW_LATENCIES) {
-            Logger.d(TAG, "max. output latency: " + maxLatency);
+        if (Debug.SHOW_LATENCIES && 0 != baseTime) {
+            Logger.d(LOG_OUTPUT_LATENCY, getTimeMicros() - baseTime);
         }
 
         return transferCount;
     }
 
-    private void enqueueMidiInput(MidiData midiData) {
-        midiInputQueue.add(midiData);
+    private void enqueueMidiInput(long midiEvent, long timestamp) {
+        // same checks as packets from USB devices
+        midiEvent = MidiPacketDecoder.validate(midiEvent);
+        if (midiEvent < 0 || !midiInputFilter.accept(midiEvent)) {
+            return;
+        }
+
+        // every connected interface has its own transmitter thread
+        synchronized (midiInputProducerLock) {
+            if (!midiInputQueue.offer(midiEvent, timestamp)) {
+                Logger.d(TAG, "input queue overflow");
+            }
+        }
     }
 
 
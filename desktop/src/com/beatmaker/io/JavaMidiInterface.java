@@ -1,8 +1,9 @@
 package com.beatmaker.io;
 
-import com.beatmaker.core.midi.MidiData;
+import com.beatmaker.core.midi.MidiEvent;
 import com.beatmaker.core.midi.MidiInterfaceBase;
 import com.beatmaker.core.midi.MidiInterfaceListener;
+import com.beatmaker.core.utils.Clock;
 import com.beatmaker.core.utils.Logger;
 
 import javax.sound.midi.*;
@@ -12,6 +13,7 @@ public class JavaMidiInterface extends MidiInterfaceBase {
 
     private static final String TAG = "MidiInterface";
 
+    private final Clock clock; // time base of the owning MidiBase
     private MidiDevice inputDevice;
     private MidiDevice outputDevice;
 
@@ -29,11 +31,18 @@ public class JavaMidiInterface extends MidiInterfaceBase {
 
     public JavaMidiInterface() {
         super();
+        this.clock = Clock.instance();
     }
 
     public JavaMidiInterface(MidiDevice inputDevice, MidiDevice outputDevice) {
+        this(inputDevice, outputDevice, Clock.instance());
+    }
+
+    public JavaMidiInterface(MidiDevice inputDevice, MidiDevice outputDevice, Clock clock) {
         super();
 
+        this.clock = clock;
+
         if (null != inputDevice) this.id = getDeviceId(inputDevice);
         if (null != outputDevice) this.id = getDeviceId(outputDevice);
         this.inputDevice = inputDevice;
@@ -175,28 +184,55 @@ public class JavaMidiInterface extends MidiInterfaceBase {
 
         //Log.d(TAG, "receive message");
 
-        byte[] rawData = midiMessage.getMessage();
+        long timestamp = clock.microTime(); // MICROSECONDS, same base as MidiBase.getTimeMicros()
 
-        int len = rawData.length;
+        if (midiMessage instanceof ShortMessage) {
+            // status and data straight from the message, getMessage() would clone the bytes
+            ShortMessage msg = (ShortMessage) midiMessage;
 
-        if (null == rawData || len < 1) return -1;
+            long midiEvent = MidiEvent.fromMessage(0, msg.getStatus(), msg.getData1(), msg.getData2());
+            if (midiEvent < 0) return -1;
 
-        long timestamp = System.nanoTime();
+            forward(midiEvent, timestamp);
 
-        //Log.d(TAG, StringUtils.hexformat(rawData, 0, len));
+            return msg.getLength();
+        }
 
-        int midi0 = rawData[0] & 0xff;
-        int midi1 = (len >= 2) ? rawData[1] & 0xff : 0x0;
-        int midi2 = (len >= 3) ? rawData[2] & 0xff : 0x0;
+        if (midiMessage instanceof SysexMessage) {
+            // rare, split into USB-MIDI sysex packets
+            byte[] rawData = midiMessage.getMessage();
+            int len = rawData.length;
+            int ofs = ((rawData[0] & 0xff) == 0xf7) ? 1 : 0; // continuation carries no data in its status
+            boolean complete = (len > ofs) && ((rawData[len - 1] & 0xff) == 0xf7);
+
+            while (ofs < len) {
+                int n = Math.min(3, len - ofs);
+                boolean last = (ofs + n >= len);
+
+                int cin = 0x4; // starts or continues
+                if (last && complete) {
+                    cin = 0x4 + n; // ends with 1, 2 or 3 bytes
+                }
 
-        int codeIndexNumber = (midi0 >> 4) & 0xff;
+                int midi0 = rawData[ofs] & 0xff;
+                int midi1 = (n > 1) ? rawData[ofs + 1] & 0xff : 0x0;
+                int midi2 = (n > 2) ? rawData[ofs + 2] & 0xff : 0x0;
 
-        MidiData midiData = new MidiData(timestamp, 0, codeIndexNumber, midi0, midi1, midi2);
-        for (MidiInterfaceListener listener : listeners) {
-            listener.onData(midiData);
+                forward(MidiEvent.pack(cin, midi0, midi1, midi2), timestamp);
+
+                ofs += n;
+            }
+
+            return len;
         }
 
-        return len;
+        return -1;
+    }
+
+    private void forward(long midiEvent, long timestamp) {
+        for (MidiInterfaceListener listener : listenerArray) {
+            listener.onData(midiEvent, timestamp);
+        }
     }
 
 }
@@ -1,6 +1,8 @@
 package com.beatmaker.io;
 
 import com.beatmaker.core.midi.MidiData;
+import com.beatmaker.core.midi.MidiEvent;
+import com.beatmaker.core.midi.MidiPacketDecoder;
 import com.beatmaker.core.midi.MidiPortBase;
 
 import javax.sound.midi.InvalidMidiDataException;
@@ -13,6 +15,9 @@ public class JavaMidiPort extends MidiPortBase {
     private Receiver receiver;
     private Transmitter transmitter;
 
+    // reused for every event, senders are serialized by the output port
+    private final ShortMessage message = new ShortMessage();
+
     public JavaMidiPort() {
         super();
     }
@@ -31,21 +36,27 @@ public class JavaMidiPort extends MidiPortBase {
 
     @Override
     public int send(MidiData midiData) {
+        return send(MidiEvent.fromMidiData(midiData, 0));
+    }
+
+    @Override
+    public int send(long midiEvent) {
         if (null == receiver || JavaMidiPort.OUTPUT != direction) {
             return -1;
         }
 
-        int command = (midiData.getMidi0() & 0xF0);
-        int channel = (midiData.getMidi0() & 0x0F);
+        int cin = MidiEvent.getCodeIndexNumber(midiEvent);
+        if (cin >= 0x4 && cin <= 0x7 || 0 == MidiPacketDecoder.getMessageLength(cin)) {
+            return 0; // sysex fragments and reserved packets have no short message form
+        }
 
-        ShortMessage msg = null;
         try {
-            msg = new ShortMessage(command, channel, midiData.getMidi1(), midiData.getMidi2());
+            message.setMessage(MidiEvent.getMidi0(midiEvent), MidiEvent.getMidi1(midiEvent), MidiEvent.getMidi2(midiEvent));
         } catch (InvalidMidiDataException e) {
             return -1;
         }
 
-        receiver.send(msg, -1);
+        receiver.send(message, -1);
 
         return 4;
     }